@@ -33,9 +33,12 @@
  * $Log$
 */
 
-import java.io.FileReader;
 import java.io.BufferedReader;
-import java.util.*;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
 
 /**
  *  This class is an implementation of the main/subroutine architectural solution 
@@ -83,13 +86,15 @@ public class KWIC {
    */
 
   /**
-   * Input characters
+   * Input characters (the array may be longer than the input; the input ends at the
+   * last element of line_index_)
    */
 
   private char[] chars_;
 
   /**
-   * Array that keeps line indices (line index is the index of the first character of a line)
+   * Array that keeps line indices (line index is the index of the first character of a line).
+   * The last element is the index after the last character of the last line.
    */
 
   private int[] line_index_;
@@ -109,8 +114,28 @@ public class KWIC {
 
   private int[][] alphabetized_;
 
-  private LinkedList<String> input = new LinkedList<>();
-  private LinkedList<String> result = new LinkedList<>();
+  /*
+   * Constants
+   *
+   */
+
+  /**
+   * Size of the buffers used to read the input and to write the output
+   */
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * Ranges of circular shifts smaller than this are sorted by insertion sort
+   */
+
+  private static final int INSERTION_CUTOFF = 16;
+
+  /**
+   * Character at the end of a circular shift, sorts before all other characters
+   */
+
+  private static final int END = -1;
 
 //----------------------------------------------------------------------
 /**
@@ -138,23 +163,61 @@ public class KWIC {
    * following way. All line separators are removed from the data, all horizontal tabulation
    * word delimiters are replaced by a single space character, and all multiple word
    * delimiters are replaced by a single space character. Then the parsed data is represented
-   * in the core as two arrays: chars_ array and line_index_ array.
+   * in the core as two arrays: chars_ array and line_index_ array. Delimiters at the
+   * start and the end of a line are dropped, and lines without words are skipped, so
+   * that neither empty words nor empty shifts arise. The file is parsed in a single pass over its characters, and the
+   * chars_ array is sized by the length of the file, which is enough unless the
+   * file is decoded to more characters than it has bytes.
    *
    * @param file Name of input file
    */
 
   public void input(String file) {
-    try {
-      FileReader fr = new FileReader(file);
-      BufferedReader br = new BufferedReader(fr);
-
-      String line;
-      while ((line = br.readLine()) != null) {
-        input.add(line);
+    try (BufferedReader reader = new BufferedReader(new FileReader(file), BUFFER_SIZE)) {
+      chars_ = new char[(int) Math.min(new File(file).length() + 2, Integer.MAX_VALUE - 8)];
+      line_index_ = new int[64];
+      int char_count = 0;
+      int line_count = 0;
+      boolean line_start = true; // no word in the current line yet
+      boolean word_end = false;  // a delimiter follows the last word
+      char[] buffer = new char[BUFFER_SIZE];
+      int count;
+      while ((count = reader.read(buffer)) >= 0) {
+        for (int i = 0; i < count; ++i) {
+          char c = buffer[i];
+          if (c == '\n' || c == '\r') {
+            line_start = true;
+          } else if (c == ' ' || c == '\t' || c == '\f' || c == '\u000B') {
+            word_end = true;
+          } else {
+            if (char_count + 1 >= chars_.length) {
+              chars_ = Arrays.copyOf(chars_, chars_.length * 2);
+            }
+            if (line_start) {
+              if (line_count + 2 > line_index_.length) {
+                line_index_ = Arrays.copyOf(line_index_, line_index_.length * 2);
+              }
+              line_index_[line_count++] = char_count;
+            } else if (word_end) {
+              chars_[char_count++] = ' ';
+            }
+            chars_[char_count++] = c;
+            line_start = false;
+            word_end = false;
+          }
+        }
       }
-      br.close();
-    } catch (Exception ex) {
-      ex.printStackTrace();
+      line_index_[line_count] = char_count;
+      line_index_ = Arrays.copyOf(line_index_, line_count + 1);
+
+    } catch (FileNotFoundException exc) {
+      exc.printStackTrace();
+      System.err.println("KWIC Error: Could not open " + file + " file.");
+      System.exit(1);
+    } catch (IOException exc) {
+      exc.printStackTrace();
+      System.err.println("KWIC Error: Could not read " + file + " file.");
+      System.exit(1);
     }
   }
 
@@ -173,19 +236,29 @@ public class KWIC {
    */
 
   public void circularShift() {
-    for (String line : input) {
-      String[] words = line.split("[\\s]+");
-      String[] target = words.clone();
-
-      int count = 0;
-      while (count < words.length) {
-        String st = target[0];
-        System.arraycopy(target, 1, target, 0, words.length - 1);
-        target[words.length - 1] = st;
-        count++;
-        result.add(String.join(" ", target));
+    int line_count = line_index_.length - 1;
+    int shift_count = 0;
+    for (int line = 0; line < line_count; ++line) {
+      shift_count++;
+      for (int i = line_index_[line]; i < line_index_[line + 1]; ++i) {
+        if (chars_[i] == ' ') {
+          shift_count++;
+        }
       }
     }
+
+    circular_shifts_ = new int[2][shift_count];
+    int shift = 0;
+    for (int line = 0; line < line_count; ++line) {
+      for (int i = line_index_[line]; i < line_index_[line + 1]; ++i) {
+        if (chars_[i] == ' ') {
+          circular_shifts_[0][shift] = line;
+          circular_shifts_[1][shift++] = i + 1;
+        }
+      }
+      circular_shifts_[0][shift] = line;
+      circular_shifts_[1][shift++] = line_index_[line];
+    }
   }
 
 //----------------------------------------------------------------------
@@ -193,12 +266,64 @@ public class KWIC {
   /**
    * This function sorts circular shifts lines alphabetically. The sorted shifts
    * are represented in the same way as the unsorted shifts with the only difference
-   * that now they are ordered alphabetically. This function implements binary search
-   * to sort the shifts.
+   * that now they are ordered alphabetically. The columns of the circular_shifts_
+   * array are sorted in place by a multikey quicksort (Bentley and Sedgewick), which
+   * reads the characters of the shifts straight from the chars_ array, and the
+   * alphabetized_ array refers to the sorted array. The ranges still to be sorted
+   * are kept on an explicit stack, so long equal shifts do not deepen the call stack.
    */
 
   public void alphabetizing() {
-    Collections.sort(result);
+    int[] lines = circular_shifts_[0];
+    int[] starts = circular_shifts_[1];
+    int[] stack = new int[3 * 64];
+    int top = 0;
+    stack[top++] = 0;
+    stack[top++] = lines.length;
+    stack[top++] = 0;
+    while (top > 0) {
+      int depth = stack[--top];
+      int hi = stack[--top];
+      int lo = stack[--top];
+      if (hi - lo < INSERTION_CUTOFF) {
+        for (int i = lo + 1; i < hi; ++i) {
+          for (int j = i; j > lo && compare(lines[j - 1], starts[j - 1], lines[j], starts[j], depth) > 0; --j) {
+            swap(j - 1, j);
+          }
+        }
+        continue;
+      }
+
+      int pivot = charAt(lines[(lo + hi) >>> 1], starts[(lo + hi) >>> 1], depth);
+      int lt = lo;
+      int gt = hi;
+      for (int i = lo; i < gt; ) {
+        int c = charAt(lines[i], starts[i], depth);
+        if (c < pivot) {
+          swap(lt++, i++);
+        } else if (c > pivot) {
+          swap(i, --gt);
+        } else {
+          i++;
+        }
+      }
+
+      if (top + 9 > stack.length) {
+        stack = Arrays.copyOf(stack, stack.length * 2);
+      }
+      stack[top++] = lo;
+      stack[top++] = lt;
+      stack[top++] = depth;
+      if (pivot != END) {
+        stack[top++] = lt;
+        stack[top++] = gt;
+        stack[top++] = depth + 1;
+      }
+      stack[top++] = gt;
+      stack[top++] = hi;
+      stack[top++] = depth;
+    }
+    alphabetized_ = circular_shifts_;
   }
 
 //----------------------------------------------------------------------
@@ -208,9 +333,97 @@ public class KWIC {
    */
 
   public void output() {
-    for (String res : result) {
-      System.out.println(res);
+    String separator = System.lineSeparator();
+    StringBuilder buffer = new StringBuilder(BUFFER_SIZE);
+    for (int shift = 0; shift < alphabetized_[0].length; ++shift) {
+      int line = alphabetized_[0][shift];
+      int start = alphabetized_[1][shift];
+      int line_start = line_index_[line];
+      int line_end = line_index_[line + 1];
+      buffer.append(chars_, start, line_end - start);
+      if (start > line_start) {
+        buffer.append(' ').append(chars_, line_start, start - 1 - line_start);
+      }
+      buffer.append(separator);
+      if (buffer.length() >= BUFFER_SIZE) {
+        System.out.print(buffer);
+        buffer.setLength(0);
+      }
     }
+    System.out.print(buffer);
+    System.out.flush();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets a character of a circular shift. The shift consists of the words
+   * from its starting word to the end of its line, a space character, and
+   * the words from the start of the line to the starting word; it has as
+   * many characters as its line.
+   *
+   * @param line  index of the original line
+   * @param start index of the starting word in the chars_ array
+   * @param depth index of the character in the shift
+   * @return the character, or END if the shift is shorter
+   */
+
+  private int charAt(int line, int start, int depth) {
+    int line_end = line_index_[line + 1];
+    int first = line_end - start;
+    if (depth < first) {
+      return chars_[start + depth];
+    }
+    int line_start = line_index_[line];
+    if (depth >= line_end - line_start) {
+      return END;
+    }
+    return (depth == first) ? ' ' : chars_[line_start + depth - first - 1];
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Compares two circular shifts that are equal up to the specified depth.
+   *
+   * @param line_a  index of the original line of the first shift
+   * @param start_a index of the starting word of the first shift
+   * @param line_b  index of the original line of the second shift
+   * @param start_b index of the starting word of the second shift
+   * @param depth   index of the first character to compare
+   * @return a negative number, zero, or a positive number if the first
+   *         shift sorts before, is the same as, or sorts after the second
+   */
+
+  private int compare(int line_a, int start_a, int line_b, int start_b, int depth) {
+    while (true) {
+      int c_a = charAt(line_a, start_a, depth);
+      int c_b = charAt(line_b, start_b, depth);
+      if (c_a != c_b || c_a == END) {
+        return c_a - c_b;
+      }
+      depth++;
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Swaps two columns of the circular_shifts_ array.
+   *
+   * @param i index of the first column
+   * @param j index of the second column
+   */
+
+  private void swap(int i, int j) {
+    int[] lines = circular_shifts_[0];
+    int[] starts = circular_shifts_[1];
+    int line = lines[i];
+    int start = starts[i];
+    lines[i] = lines[j];
+    starts[i] = starts[j];
+    lines[j] = line;
+    starts[j] = start;
   }
 
 //----------------------------------------------------------------------
@@ -219,11 +432,11 @@ public class KWIC {
    * This function controls all other functions in the system. It implements
    * the sequence of calls to other functions to obtain the desired functionality
    * of the system. Before any other function is called, main function checks the
-   * command line arguments. The program expects exactly one command line argument
-   * specifying the name of the file that contains the data. If the program have
-   * not been started with proper command line arguments, main function exits
-   * with an error message. Otherwise, the input function is called first to read the
-   * data from the file. After that the circularShift and alphabetizing
+   * command line arguments. The program expects one command line argument
+   * specifying the name of the file that contains the data; without it, the file
+   * Test_Case2.txt is read. The input function is called first to read the data
+   * from the file; if the file cannot be read, it exits with an error message and
+   * status 1. After that the circularShift and alphabetizing
    * functions are called to produce and sort the shifts respectively. Finally, the output
    * function prints the sorted shifts at the standard output.
    *
@@ -232,7 +445,7 @@ public class KWIC {
 
   public static void main(String[] args) {
     KWIC kwic = new KWIC();
-    kwic.input("Test_Case2.txt");
+    kwic.input((args.length > 0) ? args[0] : "Test_Case2.txt");
     kwic.circularShift();
     kwic.alphabetizing();
     kwic.output();
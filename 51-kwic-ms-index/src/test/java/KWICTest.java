@@ -70,4 +70,46 @@ public class KWICTest {
 		}
 		assertEquals(bytes.toString(), new String(data));
 	}
-}
\ No newline at end of file
+
+	@org.junit.Test
+	public void testDelimiters() throws IOException {
+		File file = File.createTempFile("kwic", ".txt");
+		file.deleteOnExit();
+		try (Writer writer = new FileWriter(file)) {
+			writer.write("  b\ta   c \r\n\n\t\nd\r");
+		}
+		kwic.input(file.getPath());
+		kwic.circularShift();
+		kwic.alphabetizing();
+		kwic.output();
+		assertEquals("a c b" + lineBreak + "b a c" + lineBreak + "c b a" + lineBreak + "d" + lineBreak,
+				bytes.toString());
+	}
+
+	@org.junit.Test
+	public void testMainArgument() throws IOException {
+		File file = File.createTempFile("kwic", ".txt");
+		file.deleteOnExit();
+		try (Writer writer = new FileWriter(file)) {
+			writer.write("b a\n");
+		}
+		KWIC.main(new String[] {file.getPath()});
+		assertEquals("a b" + lineBreak + "b a" + lineBreak, bytes.toString());
+	}
+
+	@org.junit.Test
+	public void testMissingFile() throws Exception {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "KWIC",
+				"no-such-file.txt").redirectErrorStream(true).start();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (InputStream in = process.getInputStream()) {
+			byte[] buffer = new byte[4096];
+			for (int n; (n = in.read(buffer)) > 0; ) {
+				output.write(buffer, 0, n);
+			}
+		}
+		assertEquals(1, process.waitFor());
+		assertTrue(output.toString().contains("KWIC Error: Could not open no-such-file.txt file."));
+	}
+}
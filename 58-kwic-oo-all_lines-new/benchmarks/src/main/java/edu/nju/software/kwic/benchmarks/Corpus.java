@@ -0,0 +1,129 @@
+// -*- Java -*-
+/*
+ * <copyright>
+ *
+ *  Copyright (c) 2026 agent
+ *
+ * </copyright>
+ *
+ * <file>
+ *
+ *  Name:    Corpus.java
+ *
+ *  Purpose: Generates synthetic KWIC input files
+ *
+ *  Created: 17 Oct 2026
+ *
+ *  $Id$
+ *
+ *  Description:
+ *    Generates synthetic KWIC input files
+ * </file>
+*/
+
+package edu.nju.software.kwic.benchmarks;
+
+/*
+ * $Log$
+*/
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Random;
+
+/**
+ *  Corpus writes a synthetic KWIC input file. The vocabulary consists of random words of
+ *  1 to 12 letters; each line has between 1 and 2 * words - 1 words, i.e., words on
+ *  average, drawn uniformly from the vocabulary. The same parameters always produce
+ *  the same file.
+ *  @author  agent
+ *  @version $Id$
+*/
+
+public class Corpus {
+
+//----------------------------------------------------------------------
+/**
+ * Fields
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Letters of the generated words
+   */
+
+  private static final String LETTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+//----------------------------------------------------------------------
+/**
+ * Constructors
+ *
+ */
+//----------------------------------------------------------------------
+
+  private Corpus() {
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Methods
+ *
+ */
+//----------------------------------------------------------------------
+
+//----------------------------------------------------------------------
+
+  /**
+   * Writes a corpus to a new temporary file, which is deleted on exit.
+   *
+   * @param lines      number of lines
+   * @param words      average number of words per line
+   * @param vocabulary number of distinct words
+   * @param seed       seed of the random numbers
+   * @return the file
+   * @throws IOException if the file cannot be written
+   */
+
+  public static File create(int lines, int words, int vocabulary, long seed) throws IOException {
+    Random random = new Random(seed);
+    LinkedHashSet<String> distinct = new LinkedHashSet<>();
+    StringBuilder word = new StringBuilder();
+    while (distinct.size() < vocabulary) {
+      word.setLength(0);
+      int length = 1 + random.nextInt(12);
+      for (int i = 0; i < length; ++i) {
+        word.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+      }
+      distinct.add(word.toString());
+    }
+    String[] vocabulary_words = distinct.toArray(new String[0]);
+
+    File file = File.createTempFile("kwic", ".txt");
+    file.deleteOnExit();
+    try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+      for (int line = 0; line < lines; ++line) {
+        int count = 1 + random.nextInt(2 * words - 1);
+        for (int i = 0; i < count; ++i) {
+          if (i > 0) {
+            writer.write(' ');
+          }
+          writer.write(vocabulary_words[random.nextInt(vocabulary_words.length)]);
+        }
+        writer.newLine();
+      }
+    }
+    return file;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Inner classes
+ *
+ */
+//----------------------------------------------------------------------
+
+}
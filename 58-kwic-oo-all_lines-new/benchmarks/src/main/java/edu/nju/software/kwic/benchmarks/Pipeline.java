@@ -0,0 +1,324 @@
+// -*- Java -*-
+/*
+ * <copyright>
+ *
+ *  Copyright (c) 2026 agent
+ *
+ * </copyright>
+ *
+ * <file>
+ *
+ *  Name:    Pipeline.java
+ *
+ *  Purpose: Gives the benchmarks access to the KWIC classes
+ *
+ *  Created: 17 Oct 2026
+ *
+ *  $Id$
+ *
+ *  Description:
+ *    Gives the benchmarks access to the KWIC classes
+ * </file>
+*/
+
+package edu.nju.software.kwic.benchmarks;
+
+/*
+ * $Log$
+*/
+
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.function.Supplier;
+
+/**
+ *  Pipeline creates and drives the KWIC objects for the benchmarks. The KWIC classes live
+ *  in the unnamed package, which cannot be imported, while JMH requires benchmarks in a
+ *  named package, so the classes are reached through method handles. The handles are
+ *  looked up once; a call costs a few nanoseconds, which is negligible against the
+ *  stages being measured.
+ *  @author  agent
+ *  @version $Id$
+*/
+
+public class Pipeline {
+
+//----------------------------------------------------------------------
+/**
+ * Fields
+ *
+ */
+//----------------------------------------------------------------------
+
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+  private static final Class<?> LINE_STORAGE = type("LineStorage");
+
+  private static final Class<?> SHIFTER = type("CircularShifter");
+
+  private static final Class<?> ALPHABETIZER = type("Alphabetizer");
+
+  private static final Class<?> OUTPUT = type("Output");
+
+  private static final Class<?> KWIC = type("KWIC");
+
+  private static final Class<?> STRATEGY = type("Alphabetizer$SortStrategy");
+
+  private static final MethodHandle FOR_NAME = method(STRATEGY, "forName", true, STRATEGY, String.class);
+
+  private static final MethodHandle NEW_INPUT = constructor(type("Input"));
+
+  private static final MethodHandle PARSE = method(type("Input"), "parse", false, void.class,
+                                                   String.class, LINE_STORAGE);
+
+  private static final MethodHandle NEW_SHIFTER = constructor(SHIFTER);
+
+  private static final MethodHandle SETUP = method(SHIFTER, "setup", false, void.class, LINE_STORAGE);
+
+  private static final MethodHandle NEW_ALPHABETIZER = constructor(ALPHABETIZER, STRATEGY);
+
+  private static final MethodHandle ALPHA = method(ALPHABETIZER, "alpha", false, void.class, SHIFTER);
+
+  private static final MethodHandle NEW_OUTPUT = constructor(OUTPUT, OutputStream.class);
+
+  private static final MethodHandle PRINT = method(OUTPUT, "print", false, void.class, ALPHABETIZER);
+
+  private static final MethodHandle NEW_KWIC = constructor(KWIC);
+
+  private static final MethodHandle SET_SORT = method(KWIC, "setSortStrategy", false, void.class, STRATEGY);
+
+  private static final MethodHandle SET_STORAGE = method(KWIC, "setLineStorage", false, void.class,
+                                                         Supplier.class);
+
+  private static final MethodHandle SET_OUTPUT = method(KWIC, "setOutput", false, void.class, OUTPUT);
+
+  private static final MethodHandle EXECUTE = method(KWIC, "execute", false, void.class, String.class);
+
+  /**
+   * Creates the LineStorage objects
+   */
+
+  private final MethodHandle new_storage_;
+
+  /**
+   * Sort strategy of the Alphabetizer
+   */
+
+  private final Object strategy_;
+
+//----------------------------------------------------------------------
+/**
+ * Constructors
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Creates a Pipeline.
+   *
+   * @param storage LineStorage implementation: "dictionary", "packed" or "list"
+   * @param sort    name of the sort strategy
+   */
+
+  public Pipeline(String storage, String sort) {
+    switch (storage) {
+      case "dictionary":
+        new_storage_ = constructor(type("DictionaryLineStorage"));
+        break;
+      case "packed":
+        new_storage_ = constructor(type("PackedLineStorage"));
+        break;
+      case "list":
+        new_storage_ = constructor(LINE_STORAGE);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown line storage: " + storage);
+    }
+    strategy_ = call(() -> FOR_NAME.invoke(sort));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Methods
+ *
+ */
+//----------------------------------------------------------------------
+
+//----------------------------------------------------------------------
+
+  /**
+   * Parses a file into a new LineStorage.
+   *
+   * @param file name of the input file
+   * @return the LineStorage
+   */
+
+  public Object parse(String file) {
+    return call(() -> {
+      Object storage = new_storage_.invoke();
+      PARSE.invoke(NEW_INPUT.invoke(), file, storage);
+      return storage;
+    });
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Produces the circular shifts of the lines.
+   *
+   * @param storage a LineStorage
+   * @return the CircularShifter
+   */
+
+  public Object shift(Object storage) {
+    return call(() -> {
+      Object shifter = NEW_SHIFTER.invoke();
+      SETUP.invoke(shifter, storage);
+      return shifter;
+    });
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Sorts the circular shifts.
+   *
+   * @param shifter a CircularShifter
+   * @return the Alphabetizer
+   */
+
+  public Object alpha(Object shifter) {
+    return call(() -> {
+      Object alphabetizer = NEW_ALPHABETIZER.invoke(strategy_);
+      ALPHA.invoke(alphabetizer, shifter);
+      return alphabetizer;
+    });
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Prints the sorted shifts to a stream.
+   *
+   * @param alphabetizer an Alphabetizer
+   * @param stream       the sink
+   */
+
+  public void print(Object alphabetizer, OutputStream stream) {
+    call(() -> {
+      PRINT.invoke(NEW_OUTPUT.invoke(stream), alphabetizer);
+      return null;
+    });
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Runs the whole KWIC system on a file.
+   *
+   * @param file   name of the input file
+   * @param stream the sink
+   */
+
+  public void execute(String file, OutputStream stream) {
+    call(() -> {
+      Object kwic = NEW_KWIC.invoke();
+      SET_SORT.invoke(kwic, strategy_);
+      Supplier<Object> storage = () -> call(new_storage_::invoke);
+      SET_STORAGE.invoke(kwic, storage);
+      SET_OUTPUT.invoke(kwic, NEW_OUTPUT.invoke(stream));
+      EXECUTE.invoke(kwic, file);
+      return null;
+    });
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets a KWIC class.
+   *
+   * @param name class name
+   * @return Class
+   */
+
+  private static Class<?> type(String name) {
+    try {
+      return Class.forName(name);
+    } catch (ClassNotFoundException exc) {
+      throw new IllegalStateException("KWIC class " + name + " not found", exc);
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets a handle to a public constructor.
+   *
+   * @param type       the class
+   * @param parameters parameter types
+   * @return MethodHandle
+   */
+
+  private static MethodHandle constructor(Class<?> type, Class<?>... parameters) {
+    return call(() -> LOOKUP.findConstructor(type, MethodType.methodType(void.class, parameters)));
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets a handle to a public method.
+   *
+   * @param type       the class
+   * @param name       method name
+   * @param is_static  true for a static method
+   * @param result     result type
+   * @param parameters parameter types
+   * @return MethodHandle
+   */
+
+  private static MethodHandle method(Class<?> type, String name, boolean is_static, Class<?> result,
+                                     Class<?>... parameters) {
+    MethodType signature = MethodType.methodType(result, parameters);
+    return call(() -> is_static ? LOOKUP.findStatic(type, name, signature)
+                                : LOOKUP.findVirtual(type, name, signature));
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Calls a method handle, rethrowing checked exceptions unchecked.
+   *
+   * @param call the call
+   * @return the result of the call
+   */
+
+  private static <T> T call(Call<T> call) {
+    try {
+      return call.invoke();
+    } catch (RuntimeException | Error exc) {
+      throw exc;
+    } catch (Throwable exc) {
+      throw new IllegalStateException(exc);
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Inner classes
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * A method handle call.
+   */
+
+  private interface Call<T> {
+    T invoke() throws Throwable;
+  }
+
+//----------------------------------------------------------------------
+
+}
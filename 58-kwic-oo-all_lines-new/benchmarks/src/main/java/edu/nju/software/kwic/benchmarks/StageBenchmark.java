@@ -0,0 +1,218 @@
+// -*- Java -*-
+/*
+ * <copyright>
+ *
+ *  Copyright (c) 2026 agent
+ *
+ * </copyright>
+ *
+ * <file>
+ *
+ *  Name:    StageBenchmark.java
+ *
+ *  Purpose: Measures each stage of the KWIC pipeline
+ *
+ *  Created: 17 Oct 2026
+ *
+ *  $Id$
+ *
+ *  Description:
+ *    Measures each stage of the KWIC pipeline
+ * </file>
+*/
+
+package edu.nju.software.kwic.benchmarks;
+
+/*
+ * $Log$
+*/
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *  StageBenchmark measures the average time of each stage of the KWIC pipeline
+ *  (Input.parse, CircularShifter.setup, Alphabetizer.alpha and Output.print) and of
+ *  KWIC.execute as a whole, over a synthetic corpus. Each stage gets the result of the
+ *  previous stages, prepared once per trial. Output goes to a stream that discards it.
+ *  The corpus size, the LineStorage implementation and the sort strategy are JMH
+ *  parameters, e.g.:
+ *  <pre>
+ *  java -jar target/benchmarks.jar StageBenchmark -p lines=100000 -p words=10 -p vocabulary=50000
+ *  </pre>
+ *  @author  agent
+ *  @version $Id$
+*/
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class StageBenchmark {
+
+//----------------------------------------------------------------------
+/**
+ * Fields
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Number of lines of the corpus
+   */
+
+  @Param("20000")
+  public int lines;
+
+  /**
+   * Average number of words per line
+   */
+
+  @Param("8")
+  public int words;
+
+  /**
+   * Number of distinct words
+   */
+
+  @Param("10000")
+  public int vocabulary;
+
+  /**
+   * LineStorage implementation: "dictionary", "packed" or "list"
+   */
+
+  @Param("dictionary")
+  public String storage;
+
+  /**
+   * Sort strategy: "comparison", "radix", "multikey", "prefix" or "parallel"
+   */
+
+  @Param("comparison")
+  public String sort;
+
+  /**
+   * Discards everything written to it
+   */
+
+  private static final OutputStream DISCARD = new OutputStream() {
+    @Override
+    public void write(int b) {
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+    }
+  };
+
+  private Pipeline pipeline_;
+
+  private File corpus_;
+
+  private Object line_storage_;
+
+  private Object shifter_;
+
+  private Object alphabetizer_;
+
+//----------------------------------------------------------------------
+/**
+ * Constructors
+ *
+ */
+//----------------------------------------------------------------------
+
+//----------------------------------------------------------------------
+/**
+ * Methods
+ *
+ */
+//----------------------------------------------------------------------
+
+//----------------------------------------------------------------------
+
+  /**
+   * Writes the corpus and runs the pipeline once, so that each stage can be
+   * measured on its own.
+   *
+   * @throws IOException if the corpus cannot be written
+   */
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    pipeline_ = new Pipeline(storage, sort);
+    corpus_ = Corpus.create(lines, words, vocabulary, 42);
+    line_storage_ = pipeline_.parse(corpus_.getPath());
+    shifter_ = pipeline_.shift(line_storage_);
+    alphabetizer_ = pipeline_.alpha(shifter_);
+  }
+
+//----------------------------------------------------------------------
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    corpus_.delete();
+  }
+
+//----------------------------------------------------------------------
+
+  @Benchmark
+  public Object parse() {
+    return pipeline_.parse(corpus_.getPath());
+  }
+
+//----------------------------------------------------------------------
+
+  @Benchmark
+  public Object shift() {
+    return pipeline_.shift(line_storage_);
+  }
+
+//----------------------------------------------------------------------
+
+  @Benchmark
+  public Object alpha() {
+    return pipeline_.alpha(shifter_);
+  }
+
+//----------------------------------------------------------------------
+
+  @Benchmark
+  public void print() {
+    pipeline_.print(alphabetizer_, DISCARD);
+  }
+
+//----------------------------------------------------------------------
+
+  @Benchmark
+  public void execute() {
+    pipeline_.execute(corpus_.getPath(), DISCARD);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Inner classes
+ *
+ */
+//----------------------------------------------------------------------
+
+}
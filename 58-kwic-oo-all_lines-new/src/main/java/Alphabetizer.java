@@ -29,8 +29,16 @@
  * $Log$
 */
 
+import java.text.CollationKey;
+import java.text.Collator;
+import java.text.Normalizer;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Pattern;
 
 /**
  *  An object of the Alphabetizer class sorts all lines, that it gets
@@ -39,25 +47,7 @@ import java.util.Collections;
  *  @version $Id$
 */
 
-class Sorter implements Comparable<Sorter>{
-  String line;
-  int index;
-
-  Sorter(String line, int index) {
-    this.index = index;
-    this.line = line;
-  }
-
-  @Override
-  public int compareTo(Sorter o) {
-    if (line.compareTo(o.line) == 0) {
-      return (index < o.index) ? -1 : 1;
-    }
-    return line.compareTo(o.line);
-  }
-}
-
-public class Alphabetizer {
+public class Alphabetizer implements Output.Listing {
 
 //----------------------------------------------------------------------
 /**
@@ -78,7 +68,17 @@ public class Alphabetizer {
 
   private CircularShifter shifter_;
 
-  private ArrayList<Sorter> sorter = new ArrayList<>();
+  /**
+   * Strategy used to sort the lines
+   */
+
+  private SortStrategy strategy_;
+
+  /**
+   * Number of shift comparisons made by the last call to alpha, or -1
+   */
+
+  private long comparisons_ = -1;
 
 //----------------------------------------------------------------------
 /**
@@ -87,6 +87,24 @@ public class Alphabetizer {
  */
 //----------------------------------------------------------------------
 
+  /**
+   * Creates an Alphabetizer that sorts with the comparison sort.
+   */
+
+  public Alphabetizer() {
+    this(new ComparisonSort());
+  }
+
+  /**
+   * Creates an Alphabetizer that sorts with the given strategy.
+   *
+   * @param strategy sort strategy
+   */
+
+  public Alphabetizer(SortStrategy strategy) {
+    strategy_ = strategy;
+  }
+
 //----------------------------------------------------------------------
 /**
  * Methods
@@ -105,43 +123,178 @@ public class Alphabetizer {
   public void alpha(CircularShifter shifter) {
     shifter_ = shifter;
     sorted_ = new int[shifter.getLineCount()];
-/*
-      for (int i = 0 ; i < shifter.getLineCount(); ++i) {
-      String line = shifter.getLineAsString(i);
-      int count = 0;
-      for (int j = 0; j < shifter.getLineCount(); ++j) {
-        if (j == i) {
-          continue;
-        }
-        String other = shifter.getLineAsString(j);
-        int cmp = line.compareTo(other);
-        if (cmp > 0) {
-          count++;
-        }
-      }
-      sorted_[count] = i;
+    for (int i = 0; i < sorted_.length; ++i) {
+      sorted_[i] = i;
     }
-    */
-    for (int i = 0; i < shifter.getLineCount(); ++i) {
-      sorter.add(new Sorter(shifter.getLineAsString(i), i));
+    strategy_.sort(sorted_, shifter);
+    comparisons_ = strategy_.getComparisonCount();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Sorts one page of the lines from the shifter: afterwards, the
+   * Alphabetizer holds the lines that a full sort would put at the
+   * positions [offset, offset + limit), in order. The lines are selected
+   * without sorting the others; the sort strategy is not used.
+   *
+   * @param shifter the source of lines
+   * @param offset  position of the first line of the page
+   * @param limit   maximum number of lines of the page
+   * @see PageSelector
+   */
+
+  public void alpha(CircularShifter shifter, int offset, int limit) {
+    if (offset < 0 || limit < 0) {
+      throw new IllegalArgumentException("Invalid page: offset " + offset + ", limit " + limit);
     }
-    Collections.sort(sorter);
-    for (int i = 0; i < shifter.getLineCount(); ++i) {
-      sorted_[i] = sorter.get(i).index;
+    if (!strategy_.isStringOrder()) {
+      throw new IllegalArgumentException("Pages are selected in String order only");
     }
+    ShiftComparator comparator = new ShiftComparator(shifter);
+    shifter_ = shifter;
+    sorted_ = PageSelector.select(shifter.getLineCount(), offset, limit, comparator);
+    comparisons_ = comparator.getComparisonCount();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the number of shift comparisons made by the last call to alpha.
+   *
+   * @return the number, or -1 if the sort strategy does not compare whole
+   *         shifts
+   * @see SortStrategy#getComparisonCount
+   */
+
+  public long getComparisonCount() {
+    return comparisons_;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Sets the strategy used by subsequent calls to alpha.
+   *
+   * @param strategy sort strategy
+   * @see SortStrategy#forName
+   */
+
+  public void setSortStrategy(SortStrategy strategy) {
+    strategy_ = strategy;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the strategy used to sort the lines.
+   *
+   * @return SortStrategy
+   */
+
+  public SortStrategy getSortStrategy() {
+    return strategy_;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the character from the specified position in the specified word
+   * in a particular line.
+   *
+   * @param position character index in the word
+   * @param word     word index in the line
+   * @param line     line index
+   * @return char
+   */
+
+  public char getChar(int position, int word, int line) {
+    return shifter_.getChar(position, word, sorted_[line]);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the number of characters in this particular word.
+   *
+   * @param word word index in the line
+   * @param line line index
+   * @return int
+   */
+
+  public int getCharCount(int word, int line) {
+    return shifter_.getCharCount(word, sorted_[line]);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the word from the specified position in a particular line
+   * String representing the word is returned.
+   *
+   * @param word word index in the line
+   * @param line line index
+   * @return String
+   */
+
+  public String getWord(int word, int line) {
+    return shifter_.getWord(word, sorted_[line]);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the dictionary id of the word from the specified position in a
+   * particular line. Only available if the lines are kept in a dictionary.
+   *
+   * @param word word index in the line
+   * @param line line index
+   * @return int
+   * @see #getDictionary
+   */
+
+  public int getWordId(int word, int line) {
+    return shifter_.getWordId(word, sorted_[line]);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Tells whether the words have dictionary ids, i.e., whether the lines
+   * implement WordIds.
+   *
+   * @return boolean
+   * @see #getWordId
+   */
+
+  public boolean hasWordIds() {
+    return shifter_.hasWordIds();
   }
 
 //----------------------------------------------------------------------
 
   /**
-   * This method builds and reconstructs the heap for the heap sort algorithm.
+   * Gets the number of words in this particular line.
    *
-   * @param root   heap root
-   * @param bottom heap bottom
+   * @param line line index
+   * @return int
    */
 
-  private void siftDown(int root, int bottom) {
+  public int getWordCount(int line) {
+    return shifter_.getWordCount(sorted_[line]);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the dictionary holding the words of the lines, or null if the
+   * words are kept as separate strings.
+   *
+   * @return WordDictionary
+   */
 
+  public WordDictionary getDictionary() {
+    return shifter_.getDictionary();
   }
 
 //----------------------------------------------------------------------
@@ -183,7 +336,7 @@ public class Alphabetizer {
    */
 
   public int getLineCount() {
-    return shifter_.getLineCount();
+    return sorted_.length;
   }
 
 //----------------------------------------------------------------------
@@ -193,4 +346,1416 @@ public class Alphabetizer {
  */
 //----------------------------------------------------------------------
 
+  /**
+   * A SortStrategy sorts an array of line indices of a CircularShifter. After
+   * sorting, the lines are in the order of their String representation
+   * (String.compareTo), unless isStringOrder says otherwise, and equal lines
+   * keep the order of their indices.
+   */
+
+  public interface SortStrategy {
+
+    /**
+     * Sorts the line indices. The array holds each index of the shifter
+     * exactly once, in ascending order.
+     *
+     * @param lines   line indices to sort
+     * @param shifter the source of lines
+     */
+
+    void sort(int[] lines, CircularShifter shifter);
+
+    /**
+     * Gets the number of shift comparisons made by the last sort.
+     *
+     * @return the number, or -1 if the strategy does not compare whole shifts
+     */
+
+    default long getComparisonCount() {
+      return -1;
+    }
+
+    /**
+     * Tells whether the lines are sorted by String.compareTo. Merging sorted
+     * runs, selecting pages and searching an index rely on this order.
+     *
+     * @return boolean
+     */
+
+    default boolean isStringOrder() {
+      return true;
+    }
+
+    /**
+     * Gets the strategy with the specified name: "comparison", "radix",
+     * "multikey", "prefix", "parallel" or "collation". The parallel sort
+     * uses one thread per available processor, the collation sort the
+     * rules of the default locale.
+     *
+     * @param name strategy name
+     * @return SortStrategy
+     */
+
+    static SortStrategy forName(String name) {
+      switch (name) {
+        case "comparison":
+          return new ComparisonSort();
+        case "radix":
+          return new RadixSort();
+        case "multikey":
+          return new MultikeyQuicksort();
+        case "prefix":
+          return new PrefixKeySort();
+        case "parallel":
+          return new ParallelSort(Runtime.getRuntime().availableProcessors());
+        case "collation":
+          return new CollationSort(Locale.getDefault());
+        default:
+          throw new IllegalArgumentException("Unknown sort strategy: " + name);
+      }
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Comparison sort of the line indices. The indices are sorted by a merge
+   * sort on a primitive array; lines are compared by a ShiftComparator,
+   * so neither objects nor Strings are created per line.
+   */
+
+  public static class ComparisonSort implements SortStrategy {
+
+    /**
+     * Ranges smaller than this are sorted by insertion sort
+     */
+
+    private static final int INSERTION_CUTOFF = 16;
+
+    /**
+     * Number of comparisons made by the last sort
+     */
+
+    private volatile long comparisons_ = -1;
+
+    @Override
+    public void sort(int[] lines, CircularShifter shifter) {
+      ShiftComparator comparator = new ShiftComparator(shifter);
+      mergeSort(lines.clone(), lines, 0, lines.length, comparator);
+      comparisons_ = comparator.getComparisonCount();
+    }
+
+    @Override
+    public long getComparisonCount() {
+      return comparisons_;
+    }
+
+    /**
+     * Sorts the range [lo, hi) into dst. On entry, src and dst hold the
+     * same indices in the range; src is used as scratch space.
+     *
+     * @param src        scratch copy of the range
+     * @param dst        receives the sorted range
+     * @param lo         first index of the range
+     * @param hi         end of the range (exclusive)
+     * @param comparator compares two lines
+     */
+
+    private static void mergeSort(int[] src, int[] dst, int lo, int hi, ShiftComparator comparator) {
+      if (hi - lo < INSERTION_CUTOFF) {
+        for (int i = lo + 1; i < hi; ++i) {
+          int line = dst[i];
+          int j = i;
+          for (; j > lo && comparator.compare(dst[j - 1], line) > 0; --j) {
+            dst[j] = dst[j - 1];
+          }
+          dst[j] = line;
+        }
+        return;
+      }
+
+      int mid = (lo + hi) >>> 1;
+      mergeSort(dst, src, lo, mid, comparator);
+      mergeSort(dst, src, mid, hi, comparator);
+      if (comparator.compare(src[mid - 1], src[mid]) <= 0) {
+        System.arraycopy(src, lo, dst, lo, hi - lo);
+        return; // the halves are already in order
+      }
+      for (int i = lo, p = lo, q = mid; i < hi; ++i) {
+        if (q >= hi || (p < mid && comparator.compare(src[p], src[q]) <= 0)) {
+          dst[i] = src[p++];
+        } else {
+          dst[i] = src[q++];
+        }
+      }
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Most significant digit first radix sort. The lines are distributed into
+   * buckets by the key at the current depth, and each bucket is sorted on the
+   * next key. The keys are the word ranks if the lines are kept in a suitable
+   * dictionary, otherwise the characters. Small buckets are passed to the
+   * multikey quicksort.
+   * The buckets are kept on an explicit stack, so long lines do not deepen
+   * the call stack.
+   */
+
+  public static class RadixSort implements SortStrategy {
+
+    /**
+     * Buckets smaller than this are sorted by the multikey quicksort
+     */
+
+    private static final int CUTOFF = 64;
+
+    @Override
+    public void sort(int[] lines, CircularShifter shifter) {
+      sort(lines, ShiftCursor.create(shifter));
+    }
+
+    /**
+     * Sorts the line indices by the keys of the cursor.
+     *
+     * @param lines  line indices to sort
+     * @param cursor positions of the lines
+     */
+
+    static void sort(int[] lines, ShiftCursor cursor) {
+      int[] aux = new int[lines.length];
+      int[] keys = new int[lines.length];
+      int[] stack = new int[64];
+      int top = 0;
+      stack[top++] = 0;
+      stack[top++] = lines.length;
+      while (top > 0) {
+        int hi = stack[--top];
+        int lo = stack[--top];
+        if (hi - lo < CUTOFF) {
+          MultikeyQuicksort.sort(lines, lo, hi, cursor);
+          continue;
+        }
+
+        int min = Integer.MAX_VALUE;
+        int max = ShiftCursor.END;
+        for (int i = lo; i < hi; ++i) {
+          int c = cursor.current(lines[i]);
+          keys[i] = c;
+          if (c != ShiftCursor.END && c < min) {
+            min = c;
+          }
+          if (c > max) {
+            max = c;
+          }
+        }
+        if (max == ShiftCursor.END) {
+          continue; // all lines end here and are already in index order
+        }
+        if (max - min > 4 * (hi - lo)) {
+          MultikeyQuicksort.sort(lines, lo, hi, cursor);
+          continue; // too few lines for that many keys
+        }
+
+        // bucket 0 holds the lines that end here, bucket c - min + 1 key c
+        int[] count = new int[max - min + 3];
+        for (int i = lo; i < hi; ++i) {
+          count[bucket(keys[i], min) + 1]++;
+        }
+        for (int b = 1; b < count.length; ++b) {
+          count[b] += count[b - 1];
+        }
+        for (int i = lo; i < hi; ++i) {
+          aux[lo + count[bucket(keys[i], min)]++] = lines[i];
+        }
+        System.arraycopy(aux, lo, lines, lo, hi - lo);
+
+        // count[b] is now the end of bucket b; bucket 0 needs no further work
+        for (int b = 1; b < count.length - 1; ++b) {
+          int from = lo + count[b - 1];
+          int to = lo + count[b];
+          if (to - from < 2) {
+            continue;
+          }
+          for (int i = from; i < to; ++i) {
+            cursor.advance(lines[i]);
+          }
+          if (top + 2 > stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+          }
+          stack[top++] = from;
+          stack[top++] = to;
+        }
+      }
+    }
+
+    private static int bucket(int c, int min) {
+      return (c == ShiftCursor.END) ? 0 : c - min + 1;
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Multikey quicksort (Bentley and Sedgewick). The lines are partitioned
+   * into three parts by the key at the current depth; the lines equal
+   * to the pivot key are sorted on the next key. Lines that are
+   * equal up to the end are put in index order.
+   */
+
+  public static class MultikeyQuicksort implements SortStrategy {
+
+    @Override
+    public void sort(int[] lines, CircularShifter shifter) {
+      sort(lines, 0, lines.length, ShiftCursor.create(shifter));
+    }
+
+    /**
+     * Sorts the range [lo, hi) of line indices. All lines in the range must
+     * be equal up to the current position of the cursor.
+     *
+     * @param lines  line indices to sort
+     * @param lo     first index of the range
+     * @param hi     end of the range (exclusive)
+     * @param cursor positions of the lines
+     */
+
+    static void sort(int[] lines, int lo, int hi, ShiftCursor cursor) {
+      while (hi - lo > 1) {
+        int pivot = median(cursor.current(lines[lo]),
+                           cursor.current(lines[(lo + hi) >>> 1]),
+                           cursor.current(lines[hi - 1]));
+        int lt = lo;
+        int gt = hi;
+        int i = lo;
+        while (i < gt) {
+          int c = cursor.current(lines[i]);
+          if (c < pivot) {
+            swap(lines, lt++, i++);
+          } else if (c > pivot) {
+            swap(lines, i, --gt);
+          } else {
+            i++;
+          }
+        }
+
+        int eq = gt;
+        if (pivot == ShiftCursor.END) {
+          Arrays.sort(lines, lt, gt);
+          eq = lt;
+        } else {
+          for (int j = lt; j < gt; ++j) {
+            cursor.advance(lines[j]);
+          }
+        }
+
+        // recurse into the two smaller parts, iterate on the largest one
+        int[] from = {lo, lt, gt};
+        int[] to = {lt, eq, hi};
+        int largest = 0;
+        for (int p = 1; p < 3; ++p) {
+          if (to[p] - from[p] > to[largest] - from[largest]) {
+            largest = p;
+          }
+        }
+        for (int p = 0; p < 3; ++p) {
+          if (p != largest) {
+            sort(lines, from[p], to[p], cursor);
+          }
+        }
+        lo = from[largest];
+        hi = to[largest];
+      }
+    }
+
+    private static int median(int a, int b, int c) {
+      if (a < b) {
+        return (b < c) ? b : (a < c) ? c : a;
+      }
+      return (a < c) ? a : (b < c) ? c : b;
+    }
+
+    private static void swap(int[] lines, int i, int j) {
+      int tmp = lines[i];
+      lines[i] = lines[j];
+      lines[j] = tmp;
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Abbreviated key sort. Each line becomes one long: the high bits hold
+   * the first keys of the line, as yielded by a ShiftCursor, and the low
+   * bits hold the line index. The keys are coded densely, so that as many
+   * of them as possible fit into the long while the longs stay ordered
+   * like the keys: word ranks if the lines are kept in a suitable
+   * dictionary, otherwise the ranks of the characters among all
+   * characters of the lines. The longs are sorted as primitives, without
+   * looking at the lines again. Lines whose packed keys are equal are
+   * packed again from the next key on and sorted among themselves, until
+   * they differ or end; lines that are equal up to the end are put in
+   * index order.
+   */
+
+  public static class PrefixKeySort implements SortStrategy {
+
+    @Override
+    public void sort(int[] lines, CircularShifter shifter) {
+      int n = lines.length;
+      if (n == 0) {
+        return;
+      }
+      ShiftCursor cursor = ShiftCursor.create(shifter);
+      int[] codes = null;
+      int max_code;
+      if (cursor instanceof WordCursor) {
+        max_code = shifter.getDictionary().getWordCount(); // a word is coded by its rank plus 1
+      } else {
+        codes = codes(shifter);
+        max_code = codes[Character.MAX_VALUE + 1];
+      }
+      int index_bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(n - 1));
+      int code_bits = 32 - Integer.numberOfLeadingZeros(max_code);
+      int count = (64 - index_bits) / code_bits;
+      int shift = 64 - count * code_bits;
+      long index_mask = (1L << shift) - 1;
+      long last_mask = (1L << code_bits) - 1;
+
+      long[] keys = new long[n];
+      for (int i = 0; i < n; ++i) {
+        keys[i] = pack(cursor, lines[i], count, code_bits, codes, shift);
+      }
+      Arrays.sort(keys);
+
+      int[] stack = new int[64];
+      int top = 0;
+      stack[top++] = 0;
+      stack[top++] = n;
+      while (top > 0) {
+        int hi = stack[--top];
+        int lo = stack[--top];
+        for (int from = lo, to; from < hi; from = to) {
+          long prefix = (keys[from] ^ Long.MIN_VALUE) >>> shift;
+          for (to = from + 1; to < hi && (keys[to] ^ Long.MIN_VALUE) >>> shift == prefix; ++to) {
+            // find the end of the lines with these packed keys
+          }
+          if (to - from < 2 || (prefix & last_mask) == 0) {
+            continue; // a single line, or lines that end here and are in index order
+          }
+          for (int i = from; i < to; ++i) {
+            keys[i] = pack(cursor, (int) (keys[i] & index_mask), count, code_bits, codes, shift);
+          }
+          Arrays.sort(keys, from, to);
+          if (top + 2 > stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+          }
+          stack[top++] = from;
+          stack[top++] = to;
+        }
+      }
+      for (int i = 0; i < n; ++i) {
+        lines[i] = (int) (keys[i] & index_mask);
+      }
+    }
+
+    /**
+     * Codes the characters of the lines and the space character by their
+     * ranks, starting at 1; 0 is left for the end of a line. The words of
+     * each original line are read once.
+     *
+     * @param shifter the source of lines
+     * @return the codes indexed by character; the last element holds the
+     *         highest code
+     */
+
+    private static int[] codes(CircularShifter shifter) {
+      int[] codes = new int[Character.MAX_VALUE + 2];
+      codes[' '] = 1;
+      for (int line = 0, original = -1; line < shifter.getLineCount(); ++line) {
+        if (shifter.getOriginalLine(line) == original) {
+          continue;
+        }
+        original = shifter.getOriginalLine(line);
+        for (int word = 0; word < shifter.getWordCount(line); ++word) {
+          for (int position = 0; position < shifter.getCharCount(word, line); ++position) {
+            codes[shifter.getChar(position, word, line)] = 1;
+          }
+        }
+      }
+      int code = 0;
+      for (int c = 0; c <= Character.MAX_VALUE; ++c) {
+        if (codes[c] != 0) {
+          codes[c] = ++code;
+        }
+      }
+      codes[Character.MAX_VALUE + 1] = code;
+      return codes;
+    }
+
+    /**
+     * Packs the next keys of a line, code_bits bits each, and moves the
+     * cursor past them. A line that ends is padded with 0. The result is
+     * ordered like the packed keys by signed comparison.
+     *
+     * @param cursor    position of the line
+     * @param line      line index
+     * @param count     number of keys to pack
+     * @param code_bits bits per key
+     * @param codes     codes of the characters, or null if the keys are
+     *                  word ranks
+     * @param shift     number of bits below the packed keys
+     * @return long
+     */
+
+    private static long pack(ShiftCursor cursor, int line, int count, int code_bits, int[] codes, int shift) {
+      long packed = 0;
+      for (int i = 0; i < count; ++i) {
+        int c = cursor.current(line);
+        if (c == ShiftCursor.END) {
+          c = 0;
+        } else {
+          cursor.advance(line);
+          c = (codes != null) ? codes[c] : c + 1;
+        }
+        packed = (packed << code_bits) | c;
+      }
+      return ((packed << shift) | line) ^ Long.MIN_VALUE; // flip the sign so that signed order is unsigned order
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Locale aware sort. The lines are ordered word by word by the collation
+   * rules of a locale (java.text.Collator), so that, e.g., "bar" sorts
+   * before "Indianer" and "&Auml;pfel" next to "Apfel"; a line sorts before
+   * every longer line it is a prefix of. Optionally, case and accents are
+   * ignored. A CollationKey is computed once per distinct word, and the
+   * words are ranked by their keys; the lines are then sorted by the radix
+   * sort on these ranks, so no Collator is called per comparison. Lines
+   * whose words collate equally are put in index order.
+   * <p>
+   * The order is not String order, so the collation sort can be used by
+   * the in-memory pipeline only, not for merged runs, pages or indexes.
+   *
+   * @see SortStrategy#isStringOrder
+   */
+
+  public static class CollationSort implements SortStrategy {
+
+    /**
+     * Marks of decomposed accented characters
+     */
+
+    private static final Pattern ACCENTS = Pattern.compile("\\p{M}+");
+
+    private final Locale locale_;
+
+    private final boolean ignore_case_;
+
+    private final boolean ignore_accents_;
+
+    /**
+     * Creates a CollationSort that distinguishes case and accents.
+     *
+     * @param locale the locale whose rules are used
+     */
+
+    public CollationSort(Locale locale) {
+      this(locale, false, false);
+    }
+
+    /**
+     * Creates a CollationSort.
+     *
+     * @param locale         the locale whose rules are used
+     * @param ignore_case    true if words that differ in case only are equal
+     * @param ignore_accents true if words that differ in accents only are
+     *                       equal
+     */
+
+    public CollationSort(Locale locale, boolean ignore_case, boolean ignore_accents) {
+      locale_ = locale;
+      ignore_case_ = ignore_case;
+      ignore_accents_ = ignore_accents;
+    }
+
+    @Override
+    public void sort(int[] lines, CircularShifter shifter) {
+      WordDictionary dictionary = shifter.getDictionary();
+      int[][] line_ids = null;
+      if (dictionary == null) {
+        dictionary = new WordDictionary();
+        line_ids = intern(shifter, dictionary);
+      }
+      int[] ranks = rank(dictionary);
+      ShiftCursor cursor = (line_ids == null) ? new WordCursor(shifter, ranks)
+                                              : new TableCursor(shifter, line_ids, ranks);
+      RadixSort.sort(lines, cursor);
+    }
+
+    @Override
+    public boolean isStringOrder() {
+      return false;
+    }
+
+    /**
+     * Ranks the words of the dictionary by their collation keys. Words with
+     * equal keys get the same rank.
+     *
+     * @param dictionary the words
+     * @return the ranks indexed by word id
+     */
+
+    private int[] rank(WordDictionary dictionary) {
+      Collator collator = Collator.getInstance(locale_);
+      collator.setDecomposition(Collator.CANONICAL_DECOMPOSITION);
+      collator.setStrength(ignore_case_ ? (ignore_accents_ ? Collator.PRIMARY : Collator.SECONDARY)
+                                        : Collator.TERTIARY);
+      int count = dictionary.getWordCount();
+      CollationKey[] keys = new CollationKey[count];
+      Integer[] ids = new Integer[count];
+      for (int id = 0; id < count; ++id) {
+        String word = dictionary.getWord(id);
+        if (ignore_accents_ && !ignore_case_) {
+          word = ACCENTS.matcher(Normalizer.normalize(word, Normalizer.Form.NFD)).replaceAll("");
+        }
+        keys[id] = collator.getCollationKey(word);
+        ids[id] = id;
+      }
+      Arrays.sort(ids, (a, b) -> keys[a].compareTo(keys[b]));
+      int[] ranks = new int[count];
+      for (int i = 1; i < count; ++i) {
+        int same = keys[ids[i]].compareTo(keys[ids[i - 1]]) == 0 ? 0 : 1;
+        ranks[ids[i]] = ranks[ids[i - 1]] + same;
+      }
+      return ranks;
+    }
+
+    /**
+     * Interns the words of all original lines of the shifter, for lines
+     * that are not kept in a dictionary.
+     *
+     * @param shifter    the source of lines
+     * @param dictionary receives the words
+     * @return the word ids of each original line, indexed by original line
+     */
+
+    private static int[][] intern(CircularShifter shifter, WordDictionary dictionary) {
+      int lines = 0;
+      for (int shift = 0; shift < shifter.getLineCount(); ++shift) {
+        lines = Math.max(lines, shifter.getOriginalLine(shift) + 1);
+      }
+      int[][] line_ids = new int[lines][];
+      for (int shift = 0; shift < shifter.getLineCount(); ++shift) {
+        int line = shifter.getOriginalLine(shift);
+        if (line_ids[line] == null) {
+          int count = shifter.getWordCount(shift);
+          int start = shifter.getStartWord(shift);
+          line_ids[line] = new int[count];
+          for (int word = 0; word < count; ++word) {
+            line_ids[line][(start + word) % count] = dictionary.intern(shifter.getWord(word, shift));
+          }
+        }
+      }
+      return line_ids;
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Parallel most significant digit first radix sort. The lines are
+   * distributed into buckets by the key at the current depth, like in the
+   * RadixSort; the buckets are then sorted by separate fork/join tasks, and
+   * large buckets are distributed again. Keys are counted and distributed
+   * by several tasks as well when a range is large enough. Ranges below a
+   * cutoff are sorted by the multikey quicksort. Since equal lines are put
+   * in index order, the result is identical to that of the other
+   * strategies.
+   */
+
+  public static class ParallelSort implements SortStrategy {
+
+    /**
+     * Ranges smaller than this are sorted by a single thread
+     */
+
+    private static final int CUTOFF = 512;
+
+    /**
+     * Number of threads
+     */
+
+    private final int threads_;
+
+    /**
+     * Creates a ParallelSort.
+     *
+     * @param threads number of threads
+     */
+
+    public ParallelSort(int threads) {
+      if (threads < 1) {
+        throw new IllegalArgumentException("Thread count must be positive: " + threads);
+      }
+      threads_ = threads;
+    }
+
+    /**
+     * Gets the number of threads.
+     *
+     * @return int
+     */
+
+    public int getThreads() {
+      return threads_;
+    }
+
+    @Override
+    public void sort(int[] lines, CircularShifter shifter) {
+      ShiftCursor cursor = ShiftCursor.create(shifter);
+      if (threads_ == 1 || lines.length < CUTOFF) {
+        MultikeyQuicksort.sort(lines, 0, lines.length, cursor);
+        return;
+      }
+      ForkJoinPool pool = new ForkJoinPool(threads_);
+      try {
+        pool.invoke(new Partition(lines, new int[lines.length], new int[lines.length],
+                                  cursor, 0, lines.length, false));
+      } finally {
+        pool.shutdown();
+      }
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Partition sorts a range of line indices for the ParallelSort. All lines
+   * in the range are equal up to the current position of the cursor. The
+   * range is distributed into at most 2^BUCKET_BITS + 1 buckets, by the key
+   * itself if the keys span few values, otherwise by its high bits; each
+   * bucket is sorted by a task of its own. A bucket of lines with one and
+   * the same key continues on the next key.
+   */
+
+  private static final class Partition extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Number of bits of the bucket number
+     */
+
+    private static final int BUCKET_BITS = 12;
+
+    /**
+     * Lines per chunk when keys are counted and distributed by several tasks
+     */
+
+    private static final int CHUNK = 16 * 1024;
+
+    private final int[] lines_;
+
+    private final int[] keys_;
+
+    private final int[] aux_;
+
+    private final ShiftCursor cursor_;
+
+    private final int lo_;
+
+    private final int hi_;
+
+    private final boolean advance_;
+
+    Partition(int[] lines, int[] keys, int[] aux, ShiftCursor cursor, int lo, int hi, boolean advance) {
+      lines_ = lines;
+      keys_ = keys;
+      aux_ = aux;
+      cursor_ = cursor;
+      lo_ = lo;
+      hi_ = hi;
+      advance_ = advance;
+    }
+
+    @Override
+    protected void compute() {
+      if (hi_ - lo_ < ParallelSort.CUTOFF) {
+        MultikeyQuicksort.sort(lines_, lo_, hi_, cursor_);
+        return;
+      }
+      int chunks = (int) Math.min(getPool().getParallelism() * 4L, (hi_ - lo_ + CHUNK - 1) / CHUNK);
+      if (advance_) {
+        forEachChunk(chunks, (from, to, chunk) -> {
+          for (int i = from; i < to; ++i) {
+            cursor_.advance(lines_[i]);
+          }
+        });
+      }
+
+      int[] min = new int[chunks];
+      int[] max = new int[chunks];
+      boolean[] end = new boolean[chunks];
+      while (true) {
+        forEachChunk(chunks, (from, to, chunk) -> {
+          int chunk_min = Integer.MAX_VALUE;
+          int chunk_max = ShiftCursor.END;
+          boolean chunk_end = false;
+          for (int i = from; i < to; ++i) {
+            int c = cursor_.current(lines_[i]);
+            keys_[i] = c;
+            if (c == ShiftCursor.END) {
+              chunk_end = true;
+            } else if (c < chunk_min) {
+              chunk_min = c;
+            }
+            if (c > chunk_max) {
+              chunk_max = c;
+            }
+          }
+          min[chunk] = chunk_min;
+          max[chunk] = chunk_max;
+          end[chunk] = chunk_end;
+        });
+        int range_min = Integer.MAX_VALUE;
+        int range_max = ShiftCursor.END;
+        boolean range_end = false;
+        for (int chunk = 0; chunk < chunks; ++chunk) {
+          range_min = Math.min(range_min, min[chunk]);
+          range_max = Math.max(range_max, max[chunk]);
+          range_end |= end[chunk];
+        }
+        if (range_max == ShiftCursor.END) {
+          Arrays.sort(lines_, lo_, hi_);
+          return; // all lines end here
+        }
+        if (range_end || range_min != range_max) {
+          distribute(chunks, range_min, range_max);
+          return;
+        }
+        // all lines have the same key, continue on the next one
+        forEachChunk(chunks, (from, to, chunk) -> {
+          for (int i = from; i < to; ++i) {
+            cursor_.advance(lines_[i]);
+          }
+        });
+      }
+    }
+
+    /**
+     * Distributes the range into buckets and sorts the buckets.
+     *
+     * @param chunks number of chunks
+     * @param min    smallest key other than END
+     * @param max    largest key
+     */
+
+    private void distribute(int chunks, int min, int max) {
+      int shift = 0;
+      while (((max - min) >>> shift) >= (1 << BUCKET_BITS)) {
+        shift++;
+      }
+      int bits = shift;
+      int buckets = ((max - min) >>> shift) + 2;
+
+      // bucket 0 holds the lines that end here, bucket b > 0 the keys
+      // (c - min) >>> shift == b - 1
+      int[][] count = new int[chunks][buckets];
+      forEachChunk(chunks, (from, to, chunk) -> {
+        int[] chunk_count = count[chunk];
+        for (int i = from; i < to; ++i) {
+          int c = keys_[i];
+          chunk_count[(c == ShiftCursor.END) ? 0 : ((c - min) >>> bits) + 1]++;
+        }
+      });
+      int[] start = new int[buckets + 1];
+      int offset = lo_;
+      for (int b = 0; b < buckets; ++b) {
+        start[b] = offset;
+        for (int chunk = 0; chunk < chunks; ++chunk) {
+          int n = count[chunk][b];
+          count[chunk][b] = offset;
+          offset += n;
+        }
+      }
+      start[buckets] = hi_;
+      forEachChunk(chunks, (from, to, chunk) -> {
+        int[] next = count[chunk];
+        for (int i = from; i < to; ++i) {
+          int c = keys_[i];
+          aux_[next[(c == ShiftCursor.END) ? 0 : ((c - min) >>> bits) + 1]++] = lines_[i];
+        }
+      });
+      forEachChunk(chunks, (from, to, chunk) -> System.arraycopy(aux_, from, lines_, from, to - from));
+
+      ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>();
+      for (int b = 0; b < buckets; ++b) {
+        int from = start[b];
+        int to = start[b + 1];
+        if (to - from < 2) {
+          continue;
+        }
+        if (b == 0) {
+          tasks.add(ForkJoinTask.adapt(() -> Arrays.sort(lines_, from, to)));
+        } else {
+          tasks.add(new Partition(lines_, keys_, aux_, cursor_, from, to, shift == 0));
+        }
+      }
+      invokeAll(tasks);
+    }
+
+    /**
+     * Runs an action for each chunk of the range, in parallel if there is
+     * more than one chunk. Each chunk covers a consecutive part of the range.
+     *
+     * @param chunks number of chunks
+     * @param action the action
+     */
+
+    private void forEachChunk(int chunks, ChunkAction action) {
+      int length = hi_ - lo_;
+      if (chunks == 1) {
+        action.run(lo_, hi_, 0);
+        return;
+      }
+      ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>(chunks);
+      for (int chunk = 0; chunk < chunks; ++chunk) {
+        int from = lo_ + (int) ((long) length * chunk / chunks);
+        int to = lo_ + (int) ((long) length * (chunk + 1) / chunks);
+        int index = chunk;
+        tasks.add(ForkJoinTask.adapt(() -> action.run(from, to, index)));
+      }
+      invokeAll(tasks);
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Work on one chunk of a Partition.
+   */
+
+  private interface ChunkAction {
+    void run(int from, int to, int chunk);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * ShiftComparator compares two lines of a CircularShifter exactly like
+   * the String representations of the lines are compared by
+   * String.compareTo, i.e., character by character with a space between
+   * two words, and a line sorts before every longer line it is a prefix
+   * of. Equal lines are ordered by their indices. The lines are read
+   * straight from the shifter; nothing is allocated per comparison.
+   * If the words are kept in a dictionary, equal words are skipped by
+   * comparing their ids, and if the dictionary is separator safe, the
+   * words are compared by their ranks alone.
+   *
+   * @see WordDictionary#isSeparatorSafe
+   */
+
+  public static final class ShiftComparator {
+
+    private final CircularShifter shifter_;
+
+    private final boolean ids_;
+
+    private final int[] ranks_;
+
+    private long comparisons_;
+
+    /**
+     * Creates a ShiftComparator for the lines of the shifter.
+     *
+     * @param shifter the source of lines
+     */
+
+    public ShiftComparator(CircularShifter shifter) {
+      WordDictionary dictionary = shifter.getDictionary();
+      shifter_ = shifter;
+      ids_ = dictionary != null;
+      ranks_ = (ids_ && dictionary.isSeparatorSafe()) ? dictionary.getRanks() : null;
+    }
+
+    /**
+     * Compares two lines.
+     *
+     * @param a index of the first line
+     * @param b index of the second line
+     * @return a negative number, zero, or a positive number if the first
+     *         line sorts before, is the same as, or sorts after the second
+     */
+
+    public int compare(int a, int b) {
+      comparisons_++;
+      if (a == b) {
+        return 0;
+      }
+      int cmp = (ranks_ != null) ? compareWords(a, b) : compareChars(a, b);
+      return (cmp != 0) ? cmp : Integer.compare(a, b);
+    }
+
+    /**
+     * Gets the number of comparisons made so far.
+     *
+     * @return long
+     */
+
+    public long getComparisonCount() {
+      return comparisons_;
+    }
+
+    private int compareWords(int a, int b) {
+      int count_a = shifter_.getWordCount(a);
+      int count_b = shifter_.getWordCount(b);
+      int count = Math.min(count_a, count_b);
+      for (int word = 0; word < count; ++word) {
+        int id_a = shifter_.getWordId(word, a);
+        int id_b = shifter_.getWordId(word, b);
+        if (id_a != id_b) {
+          return ranks_[id_a] - ranks_[id_b];
+        }
+      }
+      return count_a - count_b;
+    }
+
+    private int compareChars(int a, int b) {
+      int count_a = shifter_.getWordCount(a);
+      int count_b = shifter_.getWordCount(b);
+      int word_a = 0;
+      int word_b = 0;
+      int position_a = 0;
+      int position_b = 0;
+      int length_a = (count_a > 0) ? shifter_.getCharCount(0, a) : 0;
+      int length_b = (count_b > 0) ? shifter_.getCharCount(0, b) : 0;
+      while (true) {
+        if (ids_ && position_a == 0 && position_b == 0 && word_a < count_a && word_b < count_b
+            && shifter_.getWordId(word_a, a) == shifter_.getWordId(word_b, b)) {
+          position_a = length_a;
+          position_b = length_b;
+        }
+
+        int c_a;
+        if (position_a < length_a) {
+          c_a = shifter_.getChar(position_a, word_a, a);
+        } else {
+          c_a = (word_a + 1 < count_a) ? ' ' : ShiftCursor.END;
+        }
+        int c_b;
+        if (position_b < length_b) {
+          c_b = shifter_.getChar(position_b, word_b, b);
+        } else {
+          c_b = (word_b + 1 < count_b) ? ' ' : ShiftCursor.END;
+        }
+        if (c_a != c_b) {
+          return c_a - c_b;
+        }
+        if (c_a == ShiftCursor.END) {
+          return 0;
+        }
+
+        if (position_a < length_a) {
+          position_a++;
+        } else {
+          word_a++;
+          position_a = 0;
+          length_a = shifter_.getCharCount(word_a, a);
+        }
+        if (position_b < length_b) {
+          position_b++;
+        } else {
+          word_b++;
+          position_b = 0;
+          length_b = shifter_.getCharCount(word_b, b);
+        }
+      }
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Selects one page of the sorted order of n lines without sorting all
+   * lines. Lines are compared by a ShiftComparator, so the page is the same
+   * as that range of a full sort by any strategy.
+   * <ul>
+   * <li>If the page ends within the first sixteenth of the lines, a
+   * bounded max-heap of the first offset + limit lines is kept while the
+   * lines are scanned once; most lines are rejected with one comparison
+   * against the top of the heap.
+   * <li>Otherwise, the line indices are partitioned quicksort style, and
+   * only the parts that overlap the page are partitioned further, until
+   * the page is sorted.
+   * </ul>
+   */
+
+  static final class PageSelector {
+
+    /**
+     * Ranges smaller than this are sorted by insertion sort
+     */
+
+    private static final int INSERTION_CUTOFF = 16;
+
+    private PageSelector() {
+    }
+
+    /**
+     * Selects the lines at the positions [offset, offset + limit) of the
+     * sorted order.
+     *
+     * @param n          number of lines
+     * @param offset     position of the first line of the page
+     * @param limit      maximum number of lines of the page
+     * @param comparator compares two lines
+     * @return the line indices of the page, in order
+     */
+
+    static int[] select(int n, int offset, int limit, ShiftComparator comparator) {
+      if (offset >= n) {
+        return new int[0];
+      }
+      int end = (int) Math.min(n, (long) offset + limit);
+      if (end <= n / 16) {
+        int[] heap = smallest(n, end, comparator);
+        return Arrays.copyOfRange(heap, offset, end);
+      }
+      int[] lines = new int[n];
+      for (int i = 0; i < n; ++i) {
+        lines[i] = i;
+      }
+      select(lines, 0, n, offset, end, comparator);
+      return Arrays.copyOfRange(lines, offset, end);
+    }
+
+    /**
+     * Gets the k smallest of the lines [0, n) in order.
+     *
+     * @param n          number of lines
+     * @param k          number of lines to select
+     * @param comparator compares two lines
+     * @return int[]
+     */
+
+    private static int[] smallest(int n, int k, ShiftComparator comparator) {
+      int[] heap = new int[k];
+      if (k == 0) {
+        return heap;
+      }
+      for (int line = 0; line < k; ++line) {
+        heap[line] = line;
+        siftUp(heap, line, comparator);
+      }
+      for (int line = k; line < n; ++line) {
+        if (comparator.compare(line, heap[0]) < 0) {
+          heap[0] = line;
+          siftDown(heap, 0, k, comparator);
+        }
+      }
+      for (int size = k - 1; size > 0; --size) {
+        int max = heap[0];
+        heap[0] = heap[size];
+        heap[size] = max;
+        siftDown(heap, 0, size, comparator);
+      }
+      return heap;
+    }
+
+    private static void siftUp(int[] heap, int child, ShiftComparator comparator) {
+      int line = heap[child];
+      while (child > 0) {
+        int parent = (child - 1) >>> 1;
+        if (comparator.compare(heap[parent], line) >= 0) {
+          break;
+        }
+        heap[child] = heap[parent];
+        child = parent;
+      }
+      heap[child] = line;
+    }
+
+    private static void siftDown(int[] heap, int parent, int size, ShiftComparator comparator) {
+      int line = heap[parent];
+      while (true) {
+        int child = 2 * parent + 1;
+        if (child >= size) {
+          break;
+        }
+        if (child + 1 < size && comparator.compare(heap[child + 1], heap[child]) > 0) {
+          child++;
+        }
+        if (comparator.compare(heap[child], line) <= 0) {
+          break;
+        }
+        heap[parent] = heap[child];
+        parent = child;
+      }
+      heap[parent] = line;
+    }
+
+    /**
+     * Rearranges the range [lo, hi) so that the positions [from, to) hold
+     * the lines that belong there in sorted order.
+     *
+     * @param lines      line indices
+     * @param lo         first index of the range
+     * @param hi         end of the range (exclusive)
+     * @param from       first position of the page
+     * @param to         end of the page (exclusive)
+     * @param comparator compares two lines
+     */
+
+    private static void select(int[] lines, int lo, int hi, int from, int to, ShiftComparator comparator) {
+      while (hi - lo >= INSERTION_CUTOFF) {
+        int pivot = partition(lines, lo, hi, comparator);
+        if (to <= pivot) {
+          hi = pivot;
+        } else if (from > pivot) {
+          lo = pivot + 1;
+        } else {
+          select(lines, lo, pivot, from, to, comparator);
+          lo = pivot + 1;
+        }
+      }
+      for (int i = lo + 1; i < hi; ++i) {
+        int line = lines[i];
+        int j = i;
+        for (; j > lo && comparator.compare(lines[j - 1], line) > 0; --j) {
+          lines[j] = lines[j - 1];
+        }
+        lines[j] = line;
+      }
+    }
+
+    /**
+     * Partitions the range [lo, hi) around the median of its first, middle
+     * and last line. Lines are never equal, since the comparator orders
+     * equal shifts by index.
+     *
+     * @return the final position of the pivot
+     */
+
+    private static int partition(int[] lines, int lo, int hi, ShiftComparator comparator) {
+      int mid = (lo + hi) >>> 1;
+      if (comparator.compare(lines[mid], lines[lo]) < 0) {
+        swap(lines, mid, lo);
+      }
+      if (comparator.compare(lines[hi - 1], lines[mid]) < 0) {
+        swap(lines, hi - 1, mid);
+        if (comparator.compare(lines[mid], lines[lo]) < 0) {
+          swap(lines, mid, lo);
+        }
+      }
+      swap(lines, lo, mid);
+      int pivot = lines[lo];
+      int i = lo;
+      int j = hi;
+      while (true) {
+        do {
+          i++;
+        } while (i < hi && comparator.compare(lines[i], pivot) < 0);
+        do {
+          j--;
+        } while (comparator.compare(lines[j], pivot) > 0);
+        if (i >= j) {
+          break;
+        }
+        swap(lines, i, j);
+      }
+      swap(lines, lo, j);
+      return j;
+    }
+
+    private static void swap(int[] lines, int i, int j) {
+      int line = lines[i];
+      lines[i] = lines[j];
+      lines[j] = line;
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * ShiftCursor keeps a position for every line of a CircularShifter and
+   * yields the key of the line at that position. The radix sorts keep all
+   * lines of a bucket at the same position, so one position per line is
+   * sufficient.
+   */
+
+  abstract static class ShiftCursor {
+
+    /**
+     * Key at the end of a line, sorts before all other keys
+     */
+
+    static final int END = -1;
+
+    /**
+     * Creates a cursor for the lines of the shifter. If the lines are made
+     * of dictionary words that can be ordered by their ranks, the cursor
+     * walks the lines word by word, otherwise character by character.
+     *
+     * @param shifter the source of lines
+     * @return ShiftCursor
+     */
+
+    static ShiftCursor create(CircularShifter shifter) {
+      WordDictionary dictionary = shifter.getDictionary();
+      if (dictionary != null && dictionary.isSeparatorSafe()) {
+        return new WordCursor(shifter, dictionary.getRanks());
+      }
+      return new CharCursor(shifter);
+    }
+
+    /**
+     * Gets the key at the current position of a line.
+     *
+     * @param line line index
+     * @return the key, or END
+     */
+
+    abstract int current(int line);
+
+    /**
+     * Moves the position of a line to the next key.
+     *
+     * @param line line index
+     */
+
+    abstract void advance(int line);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * CharCursor walks through the String representation of a line, i.e.,
+   * the words separated by single space characters, without building that
+   * String. The keys are the characters.
+   */
+
+  static final class CharCursor extends ShiftCursor {
+
+    private final CircularShifter shifter_;
+
+    private final int[] word_;
+
+    private final int[] position_;
+
+    CharCursor(CircularShifter shifter) {
+      shifter_ = shifter;
+      word_ = new int[shifter.getLineCount()];
+      position_ = new int[shifter.getLineCount()];
+    }
+
+    @Override
+    int current(int line) {
+      int word = word_[line];
+      int count = shifter_.getWordCount(line);
+      if (word >= count) {
+        return END;
+      }
+      int position = position_[line];
+      if (position < shifter_.getCharCount(word, line)) {
+        return shifter_.getChar(position, word, line);
+      }
+      return (word + 1 < count) ? ' ' : END;
+    }
+
+    @Override
+    void advance(int line) {
+      if (position_[line] < shifter_.getCharCount(word_[line], line)) {
+        position_[line]++;
+      } else {
+        word_[line]++;
+        position_[line] = 0;
+      }
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * WordCursor walks through a line word by word. The keys are the ranks
+   * of the words in the dictionary.
+   *
+   * @see WordDictionary#isSeparatorSafe
+   */
+
+  static final class WordCursor extends ShiftCursor {
+
+    private final CircularShifter shifter_;
+
+    private final int[] ranks_;
+
+    private final int[] word_;
+
+    WordCursor(CircularShifter shifter, int[] ranks) {
+      shifter_ = shifter;
+      ranks_ = ranks;
+      word_ = new int[shifter.getLineCount()];
+    }
+
+    @Override
+    int current(int line) {
+      int word = word_[line];
+      if (word >= shifter_.getWordCount(line)) {
+        return END;
+      }
+      return ranks_[shifter_.getWordId(word, line)];
+    }
+
+    @Override
+    void advance(int line) {
+      word_[line]++;
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * TableCursor walks through a line word by word, like the WordCursor,
+   * but takes the word ids from a table of the original lines instead of
+   * a dictionary of the shifter.
+   */
+
+  static final class TableCursor extends ShiftCursor {
+
+    private final CircularShifter shifter_;
+
+    private final int[][] line_ids_;
+
+    private final int[] ranks_;
+
+    private final int[] word_;
+
+    TableCursor(CircularShifter shifter, int[][] line_ids, int[] ranks) {
+      shifter_ = shifter;
+      line_ids_ = line_ids;
+      ranks_ = ranks;
+      word_ = new int[shifter.getLineCount()];
+    }
+
+    @Override
+    int current(int line) {
+      int[] ids = line_ids_[shifter_.getOriginalLine(line)];
+      int word = word_[line];
+      if (word >= ids.length) {
+        return END;
+      }
+      return ranks_[ids[(shifter_.getStartWord(line) + word) % ids.length]];
+    }
+
+    @Override
+    void advance(int line) {
+      word_[line]++;
+    }
+  }
+
+//----------------------------------------------------------------------
+
 }
\ No newline at end of file
@@ -0,0 +1,414 @@
+// -*- Java -*-
+/*
+ * <copyright>
+ *
+ *  Copyright (c) 2026 agent
+ *
+ * </copyright>
+ *
+ * <file>
+ *
+ *  Name:    BatchRunner.java
+ *
+ *  Purpose: Runs the KWIC system on many files concurrently
+ *
+ *  Created: 17 Oct 2026
+ *
+ *  $Id$
+ *
+ *  Description:
+ *    Runs the KWIC system on many files concurrently
+ * </file>
+*/
+
+
+
+/*
+ * $Log$
+*/
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ *  A BatchRunner produces the KWIC listings of many input files concurrently. A fixed
+ *  number of workers take the files one after another from a shared list; each worker
+ *  runs on a virtual thread where the JVM has them (Java 21 and later) and on a platform
+ *  thread otherwise. A worker keeps its Input, CircularShifter and Alphabetizer for all
+ *  of its files, and the CircularShifter reuses its shift arrays. The results go either
+ *  <ul>
+ *  <li>to one output file per input file, in an output directory, or
+ *  <li>into one merged listing: each worker writes the sorted shifts of each file to a
+ *  temporary run, and the runs are merged as by the ExternalSorter, a limited number at
+ *  a time. Equal shifts are taken in the order of the files.
+ *  </ul>
+ *  @author  agent
+ *  @version $Id$
+*/
+
+public class BatchRunner {
+
+//----------------------------------------------------------------------
+/**
+ * Fields
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Thread.startVirtualThread(Runnable), or null before Java 21
+   */
+
+  private static final Method START_VIRTUAL_THREAD = startVirtualThread();
+
+  /**
+   * Maximum number of runs read at the same time while merging
+   */
+
+  private static final int MERGE_FAN_IN = 32;
+
+  /**
+   * Number of workers
+   */
+
+  private final int threads_;
+
+  /**
+   * Creates the LineStorage for each file
+   */
+
+  private final Supplier<LineStorage> storage_;
+
+  /**
+   * Strategy used to sort the shifts of each file
+   */
+
+  private final Alphabetizer.SortStrategy strategy_;
+
+  /**
+   * Words that no shift starts with, or null
+   */
+
+  private StopWords stop_words_;
+
+  /**
+   * True if the input files are parsed by mapping them into memory
+   */
+
+  private boolean mapped_ = true;
+
+//----------------------------------------------------------------------
+/**
+ * Constructors
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Creates a BatchRunner.
+   *
+   * @param threads  number of files processed at the same time
+   * @param storage  creates the LineStorage for each file
+   * @param strategy strategy used to sort the shifts of each file; it is
+   *                 used by all workers at the same time
+   */
+
+  public BatchRunner(int threads, Supplier<LineStorage> storage, Alphabetizer.SortStrategy strategy) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+    }
+    threads_ = threads;
+    storage_ = storage;
+    strategy_ = strategy;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Methods
+ *
+ */
+//----------------------------------------------------------------------
+
+//----------------------------------------------------------------------
+
+  /**
+   * Sets the words that no circular shift may start with.
+   *
+   * @param stop_words the stop words, or null to produce all shifts
+   * @see CircularShifter#setStopWords
+   */
+
+  public void setStopWords(StopWords stop_words) {
+    stop_words_ = stop_words;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Selects how the input files are read.
+   *
+   * @param mapped true to map the files into memory, false to read them
+   *               line by line
+   * @see Input#parseMapped
+   */
+
+  public void setMappedInput(boolean mapped) {
+    mapped_ = mapped;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Writes the listing of each file to a file of the same name plus
+   * ".kwic" in the output directory. The paths of the input files below
+   * their deepest common directory are kept, so that files of the same
+   * name in different directories get listings of their own. If an I/O
+   * exception occurs, an error message is shown and program exits.
+   *
+   * @param files     names of the input files
+   * @param directory name of the output directory
+   * @throws IllegalArgumentException if a file is named twice
+   */
+
+  public void run(List<String> files, String directory) {
+    String[] names = outputNames(files, directory);
+    new File(directory).mkdirs();
+    process(files, (worker, index, file) -> {
+      String name = names[index];
+      new File(name).getParentFile().mkdirs();
+      try (FileChannel channel = FileChannel.open(Paths.get(name), StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+        new Output(channel).print(worker.sort(file));
+      } catch (IOException exc) {
+        exc.printStackTrace();
+        System.err.println("KWIC Error: Could not write " + name + " file.");
+        System.exit(1);
+      }
+    });
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Prints one listing of the shifts of all files. The sort strategy must
+   * sort in String order. If an I/O exception occurs, an error message is
+   * shown and program exits.
+   *
+   * @param files  names of the input files
+   * @param output prints the merged listing
+   */
+
+  public void run(List<String> files, Output output) {
+    if (!strategy_.isStringOrder()) {
+      throw new IllegalArgumentException("Runs can be merged in String order only");
+    }
+    File[] runs = new File[files.size()];
+    try {
+      process(files, (worker, index, file) -> {
+        try {
+          runs[index] = ExternalSorter.writeRun(worker.sort(file));
+        } catch (IOException exc) {
+          exc.printStackTrace();
+          System.err.println("KWIC Error: Could not sort " + file + " file.");
+          System.exit(1);
+        }
+      });
+      ExternalSorter.mergeRuns(new ArrayList<>(Arrays.asList(runs)), MERGE_FAN_IN, output::print);
+      output.flush();
+    } catch (IOException exc) {
+      exc.printStackTrace();
+      System.err.println("KWIC Error: Could not merge the sorted files.");
+      System.exit(1);
+    } finally {
+      for (File run : runs) {
+        if (run != null) {
+          run.delete();
+        }
+      }
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Names the output file of each input file: its path below the deepest
+   * directory that holds all input files, in the output directory, plus
+   * ".kwic".
+   *
+   * @param files     names of the input files
+   * @param directory name of the output directory
+   * @return the output file names
+   * @throws IllegalArgumentException if a file is named twice
+   */
+
+  private static String[] outputNames(List<String> files, String directory) {
+    Path[] paths = new Path[files.size()];
+    Path base = null;
+    for (int i = 0; i < paths.length; ++i) {
+      paths[i] = Paths.get(files.get(i)).toAbsolutePath().normalize();
+      if (base == null) {
+        base = paths[i].getParent();
+      }
+      while (base != null && !paths[i].startsWith(base)) {
+        base = base.getParent();
+      }
+    }
+    String[] names = new String[paths.length];
+    HashSet<String> seen = new HashSet<>();
+    for (int i = 0; i < paths.length; ++i) {
+      Path relative = (base != null) ? base.relativize(paths[i]) : paths[i].subpath(0, paths[i].getNameCount());
+      names[i] = Paths.get(directory).resolve(relative).toString() + ".kwic";
+      if (!seen.add(names[i])) {
+        throw new IllegalArgumentException("Input file named twice: " + files.get(i));
+      }
+    }
+    return names;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Lets threads_ workers process the files and waits for them. An
+   * exception thrown by a worker is rethrown once all workers are done.
+   *
+   * @param files names of the input files
+   * @param task  processes one file
+   */
+
+  private void process(List<String> files, Task task) {
+    AtomicInteger next = new AtomicInteger();
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread[] workers = new Thread[Math.min(threads_, Math.max(1, files.size()))];
+    for (int i = 0; i < workers.length; ++i) {
+      workers[i] = start(() -> {
+        Worker worker = new Worker();
+        try {
+          for (int index = next.getAndIncrement(); index < files.size() && failure.get() == null;
+               index = next.getAndIncrement()) {
+            task.run(worker, index, files.get(index));
+          }
+        } catch (Throwable exc) {
+          failure.compareAndSet(null, exc);
+        }
+      });
+    }
+    for (Thread worker : workers) {
+      try {
+        worker.join();
+      } catch (InterruptedException exc) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for the workers", exc);
+      }
+    }
+    if (failure.get() != null) {
+      throw new IllegalStateException("A worker failed", failure.get());
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Starts a worker thread, a virtual one if possible.
+   *
+   * @param work the work of the thread
+   * @return the started thread
+   */
+
+  private static Thread start(Runnable work) {
+    if (START_VIRTUAL_THREAD != null) {
+      try {
+        return (Thread) START_VIRTUAL_THREAD.invoke(null, work);
+      } catch (ReflectiveOperationException exc) {
+        // fall back to a platform thread
+      }
+    }
+    Thread thread = new Thread(work, "kwic-batch");
+    thread.start();
+    return thread;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Looks up Thread.startVirtualThread, which exists since Java 21.
+   *
+   * @return Method, or null
+   */
+
+  private static Method startVirtualThread() {
+    try {
+      return Thread.class.getMethod("startVirtualThread", Runnable.class);
+    } catch (NoSuchMethodException exc) {
+      return null;
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Inner classes
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Processes one file with the stage objects of a worker.
+   */
+
+  private interface Task {
+    void run(Worker worker, int index, String file);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * The stage objects of one worker.
+   */
+
+  private class Worker {
+
+    private final Input input_ = new Input();
+
+    private final CircularShifter shifter_ = new CircularShifter();
+
+    private final Alphabetizer alphabetizer_ = new Alphabetizer(strategy_);
+
+    Worker() {
+      shifter_.setStopWords(stop_words_);
+    }
+
+    /**
+     * Parses the file and sorts its shifts. The result is valid until the
+     * next call.
+     *
+     * @param file name of the input file
+     * @return Alphabetizer
+     */
+
+    Alphabetizer sort(String file) {
+      LineStorage storage = storage_.get();
+      if (mapped_) {
+        input_.parseMapped(file, storage);
+      } else {
+        input_.parse(file, storage);
+      }
+      shifter_.setup(storage);
+      alphabetizer_.alpha(shifter_);
+      return alphabetizer_;
+    }
+  }
+
+//----------------------------------------------------------------------
+
+}
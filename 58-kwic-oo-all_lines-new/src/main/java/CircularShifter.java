@@ -29,6 +29,11 @@
  * $Log$
 */
 
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
 /**
  *  An object of the CircularShifter class produces and holds all circular shifts of
  *  a set of lines. In principle, the CircularShifter class provides a
@@ -52,10 +57,49 @@ public class CircularShifter {
 //----------------------------------------------------------------------
 
   /**
-   * LineStorage for circular shifts
+   * LineStorage holding the original lines
+   */
+
+  private LineStorage lines_;
+
+  /**
+   * Array that keeps for each circular shift the index of its original line
+   */
+
+  private int[] shift_lines_;
+
+  /**
+   * Array that keeps for each circular shift the index of its starting word
+   * in the original line
+   */
+
+  private int[] shift_words_;
+
+  /**
+   * Number of circular shifts; shift_lines_ and shift_words_ may be longer,
+   * since they are reused by subsequent calls to setup
+   */
+
+  private int shift_count_;
+
+  /**
+   * Smallest number of lines for which a range of its own is produced
+   * in parallel
+   */
+
+  private static final int RANGE_SIZE = 64;
+
+  /**
+   * Number of threads used to produce the circular shifts
+   */
+
+  private int parallelism_ = 1;
+
+  /**
+   * Words that no shift starts with, or null
    */
 
-  private LineStorage shifts_;
+  private StopWords stop_words_;
 
 //----------------------------------------------------------------------
 /**
@@ -76,9 +120,15 @@ public class CircularShifter {
   /**
    * Produces all circular shifts of lines in a given set. Circular shifts
    * are stored internally and can be queried by means of other methods. Note,
-   * that for each line the first circular shift is same as the original line.
+   * that for each line the last circular shift is same as the original line.
+   * A circular shift is kept as the index of its original line and the index
+   * of its starting word; its words are read from the original lines on
+   * demand. Thus, the lines must not be changed while the shifts are in use.
+   * If stop words are set, the shifts that start with a stop word are left
+   * out.
    *
    * @param lines A set of lines
+   * @see #setStopWords
    * @see #getChar
    * @see #getCharCount
    * @see #getWord
@@ -88,22 +138,176 @@ public class CircularShifter {
    */
 
   public void setup(LineStorage lines) {
-    shifts_ = new LineStorage();
-    for (int i = 0 ; i < lines.getLineCount(); ++i) {
-      String[] words = lines.getLine(i);
-      String[] target = words.clone();
-
-      int count = 0;
-      while (count < words.length) {
-        String st = target[0];
-        System.arraycopy(target, 1, target, 0, words.length - 1);
-        target[words.length - 1] = st;
-        count++;
-        shifts_.addLine(target);
+    StopWords.Filter filter = (stop_words_ != null) ? stop_words_.filter(lines) : null;
+    int ranges = Math.min(parallelism_ * 4, lines.getLineCount() / RANGE_SIZE);
+    if (parallelism_ > 1 && ranges > 1) {
+      setupParallel(lines, ranges, filter);
+      return;
+    }
+
+    int count = countShifts(lines, 0, lines.getLineCount(), filter);
+    lines_ = lines;
+    allocate(count);
+    makeShifts(lines, 0, lines.getLineCount(), filter, shift_lines_, shift_words_);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Sets the number of threads that setup uses. With more than one thread,
+   * the lines are split into consecutive ranges; the shifts of each range
+   * are produced into buffers of their own and the buffers are then
+   * concatenated in the order of the ranges. The shifts are therefore
+   * numbered exactly as with a single thread. Small sets of lines are
+   * always processed by the calling thread.
+   *
+   * @param threads number of threads, 1 by default
+   * @see #setup
+   */
+
+  public void setParallelism(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Parallelism must be positive: " + threads);
+    }
+    parallelism_ = threads;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Sets the words that no circular shift may start with. Shifts that
+   * start with a stop word are not produced by subsequent calls to setup;
+   * the other shifts are produced in the same order as without stop words.
+   *
+   * @param stop_words the stop words, or null to produce all shifts
+   */
+
+  public void setStopWords(StopWords stop_words) {
+    stop_words_ = stop_words;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Makes room for the specified number of shifts. The arrays of the
+   * previous setup are reused if they are large enough, so a shifter that
+   * is set up again and again, e.g., by a BatchRunner worker, does not
+   * allocate them each time.
+   *
+   * @param count number of shifts
+   */
+
+  private void allocate(int count) {
+    if (shift_lines_ == null || shift_lines_.length < count) {
+      shift_lines_ = new int[count];
+      shift_words_ = new int[count];
+    }
+    shift_count_ = count;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Counts the circular shifts of the lines [first, last).
+   *
+   * @param lines  A set of lines
+   * @param first  index of the first line
+   * @param last   end of the lines (exclusive)
+   * @param filter finds the stop words, or null
+   * @return int
+   */
+
+  private static int countShifts(LineStorage lines, int first, int last, StopWords.Filter filter) {
+    int count = 0;
+    for (int i = first; i < last; ++i) {
+      int words = lines.getWordCount(i);
+      if (filter == null) {
+        count += words;
+        continue;
+      }
+      for (int word = 0; word < words; ++word) {
+        if (!filter.isStopWord(word, i)) {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Stores the circular shifts of the lines [first, last). For each line,
+   * the shifts start with the words 1, 2, ..., n - 1 and then 0.
+   *
+   * @param lines       A set of lines
+   * @param first       index of the first line
+   * @param last        end of the lines (exclusive)
+   * @param filter      finds the stop words, or null
+   * @param shift_lines receives the original line of each shift
+   * @param shift_words receives the starting word of each shift
+   */
+
+  private static void makeShifts(LineStorage lines, int first, int last, StopWords.Filter filter,
+                                 int[] shift_lines, int[] shift_words) {
+    int shift = 0;
+    for (int i = first; i < last; ++i) {
+      int words = lines.getWordCount(i);
+      for (int word = 1; word <= words; ++word) {
+        int start = (word < words) ? word : 0;
+        if (filter == null || !filter.isStopWord(start, i)) {
+          shift_lines[shift] = i;
+          shift_words[shift] = start;
+          shift++;
+        }
       }
     }
   }
 
+//----------------------------------------------------------------------
+
+  /**
+   * Produces all circular shifts of lines with a fork/join pool of
+   * parallelism_ threads. The lines must not be changed meanwhile.
+   *
+   * @param lines  A set of lines
+   * @param ranges number of line ranges to split the lines into
+   * @param filter finds the stop words, or null
+   */
+
+  private void setupParallel(LineStorage lines, int ranges, StopWords.Filter filter) {
+    int line_count = lines.getLineCount();
+    ArrayList<ShiftRange> shifts = new ArrayList<>(ranges);
+    for (int i = 0; i < ranges; ++i) {
+      shifts.add(new ShiftRange(lines, filter, (int) ((long) line_count * i / ranges),
+                                (int) ((long) line_count * (i + 1) / ranges)));
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(parallelism_);
+    try {
+      pool.invoke(new RecursiveAction() {
+        @Override
+        protected void compute() {
+          invokeAll(shifts);
+          int count = 0;
+          for (ShiftRange range : shifts) {
+            range.offset_ = count;
+            count += range.count_;
+          }
+          lines_ = lines;
+          allocate(count);
+          ArrayList<ForkJoinTask<?>> copies = new ArrayList<>(ranges);
+          for (ShiftRange range : shifts) {
+            copies.add(ForkJoinTask.adapt(() -> range.copyTo(shift_lines_, shift_words_)));
+          }
+          invokeAll(copies);
+        }
+      });
+    } finally {
+      pool.shutdown();
+    }
+  }
+
 //----------------------------------------------------------------------
 
   /**
@@ -117,7 +321,7 @@ public class CircularShifter {
    */
 
   public char getChar(int position, int word, int line) {
-    return shifts_.getChar(position, word, line);
+    return lines_.getChar(position, getOriginalWord(word, line), shift_lines_[line]);
   }
 
   /**
@@ -129,7 +333,7 @@ public class CircularShifter {
    */
 
   public int getCharCount(int word, int line) {
-    return shifts_.getCharCount(word, line);
+    return lines_.getCharCount(getOriginalWord(word, line), shift_lines_[line]);
   }
 
 //----------------------------------------------------------------------
@@ -144,7 +348,7 @@ public class CircularShifter {
    */
 
   public String getWord(int word, int line) {
-    return shifts_.getWord(word, line);
+    return lines_.getWord(getOriginalWord(word, line), shift_lines_[line]);
   }
 
 //----------------------------------------------------------------------
@@ -157,7 +361,7 @@ public class CircularShifter {
    */
 
   public int getWordCount(int line) {
-    return shifts_.getWordCount(line);
+    return lines_.getWordCount(shift_lines_[line]);
   }
 
 //----------------------------------------------------------------------
@@ -172,7 +376,12 @@ public class CircularShifter {
    */
 
   public String[] getLine(int line) {
-    return shifts_.getLine(line);
+    String[] words = lines_.getLine(shift_lines_[line]);
+    String[] shift = new String[words.length];
+    int start = shift_words_[line];
+    System.arraycopy(words, start, shift, 0, words.length - start);
+    System.arraycopy(words, 0, shift, words.length - start, start);
+    return shift;
   }
 
 
@@ -188,7 +397,7 @@ public class CircularShifter {
    */
 
   public String getLineAsString(int line) {
-    return shifts_.getLineAsString(line);
+    return String.join(" ", getLine(line));
   }
 
 //----------------------------------------------------------------------
@@ -200,7 +409,98 @@ public class CircularShifter {
    */
 
   public int getLineCount() {
-    return shifts_.getLineCount();
+    return shift_count_;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the index of the original line of a circular shift.
+   *
+   * @param line circular shift index
+   * @return int
+   * @see #getStartWord
+   */
+
+  public int getOriginalLine(int line) {
+    return shift_lines_[line];
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the index of the starting word of a circular shift in its
+   * original line.
+   *
+   * @param line circular shift index
+   * @return int
+   * @see #getOriginalLine
+   */
+
+  public int getStartWord(int line) {
+    return shift_words_[line];
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the dictionary id of the word from the specified position in a
+   * particular line. Only available if the original lines implement
+   * WordIds.
+   *
+   * @param word word index in the line
+   * @param line line index
+   * @return int
+   * @see #getDictionary
+   */
+
+  public int getWordId(int word, int line) {
+    return ((WordIds) lines_).getWordId(getOriginalWord(word, line), shift_lines_[line]);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Tells whether the words have dictionary ids, i.e., whether the original lines
+   * implement WordIds.
+   *
+   * @return boolean
+   * @see #getWordId
+   */
+
+  public boolean hasWordIds() {
+    return lines_ instanceof WordIds;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the dictionary holding the words of the original lines, or null
+   * if the original lines do not implement WordIds.
+   *
+   * @return WordDictionary
+   * @see #getWordId
+   */
+
+  public WordDictionary getDictionary() {
+    return (lines_ instanceof WordIds) ? ((WordIds) lines_).getDictionary() : null;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Maps a word index of a circular shift to the word index in its
+   * original line.
+   *
+   * @param word word index in the circular shift
+   * @param line circular shift index
+   * @return int
+   */
+
+  private int getOriginalWord(int word, int line) {
+    int original = shift_words_[line] + word;
+    int count = lines_.getWordCount(shift_lines_[line]);
+    return (original < count) ? original : original - count;
   }
 
 //----------------------------------------------------------------------
@@ -210,4 +510,54 @@ public class CircularShifter {
  */
 //----------------------------------------------------------------------
 
+  /**
+   * Produces the circular shifts of a range of lines into buffers of its
+   * own. The shifts are numbered from zero within the range.
+   */
+
+  private static class ShiftRange extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final LineStorage lines_;
+
+    private final StopWords.Filter filter_;
+
+    private final int first_;
+
+    private final int last_;
+
+    private int[] shift_lines_;
+
+    private int[] shift_words_;
+
+    int count_;
+
+    int offset_;
+
+    ShiftRange(LineStorage lines, StopWords.Filter filter, int first, int last) {
+      lines_ = lines;
+      filter_ = filter;
+      first_ = first;
+      last_ = last;
+    }
+
+    @Override
+    protected void compute() {
+      count_ = countShifts(lines_, first_, last_, filter_);
+      shift_lines_ = new int[count_];
+      shift_words_ = new int[count_];
+      makeShifts(lines_, first_, last_, filter_, shift_lines_, shift_words_);
+    }
+
+    void copyTo(int[] shift_lines, int[] shift_words) {
+      System.arraycopy(shift_lines_, 0, shift_lines, offset_, count_);
+      System.arraycopy(shift_words_, 0, shift_words, offset_, count_);
+      shift_lines_ = null;
+      shift_words_ = null;
+    }
+  }
+
+//----------------------------------------------------------------------
+
 }
\ No newline at end of file
@@ -0,0 +1,752 @@
+// -*- Java -*-
+/*
+ * <copyright>
+ *
+ *  Copyright (c) 2026 agent
+ *
+ * </copyright>
+ *
+ * <file>
+ *
+ *  Name:    CompressedInput.java
+ *
+ *  Purpose: Reads gzip and zlib compressed input files
+ *
+ *  Created: 17 Oct 2026
+ *
+ *  $Id$
+ *
+ *  Description:
+ *    Reads gzip and zlib compressed input files
+ * </file>
+*/
+
+
+
+/*
+ * $Log$
+*/
+
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ *  CompressedInput opens KWIC input files that are compressed with gzip or zlib (deflate),
+ *  so that they can be parsed without being decompressed to disk first. Gzip files are
+ *  recognized by their magic number. A zlib header is only two bytes and plain text may
+ *  start with a valid one, so zlib streams are only recognized in files named *.zz or
+ *  *.zlib; other files are read as they are. The data
+ *  is decompressed by a thread of its own and handed to the parser through a bounded
+ *  queue of decoded chunks, so decompression and parsing overlap.
+ *  <p>
+ *  A gzip file may consist of several members, each compressed on its own (as written by
+ *  bgzip, or by concatenating gzip files). The member at the current position is decoded
+ *  in order, while worker threads decode members further ahead in parallel. Where the
+ *  next members start is only known once the members before them are decoded, so the
+ *  workers start at every offset that looks like a member header; a decoded member is
+ *  used only if the members before it end exactly at its offset and its checksum and
+ *  length match, so a false guess costs time, but never changes the data. A guessed
+ *  member whose data grows beyond a limit is given up and decoded in order when it is
+ *  reached.
+ *  @author  agent
+ *  @version $Id$
+ *  @see Input
+*/
+
+public class CompressedInput {
+
+//----------------------------------------------------------------------
+/**
+ * Fields
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Size of the decoded chunks handed to the parser
+   */
+
+  private static final int CHUNK_SIZE = 256 * 1024;
+
+  /**
+   * Number of decoded chunks waiting for the parser
+   */
+
+  private static final int QUEUE_CAPACITY = 16;
+
+  /**
+   * Size of the buffers used to read the compressed file
+   */
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * Maximum number of decoded bytes a member that is decoded ahead may have
+   */
+
+  private static final int AHEAD_LIMIT = 8 * 1024 * 1024;
+
+  /**
+   * Number of compressed bytes per thread that are searched for member
+   * headers ahead of the current position
+   */
+
+  private static final int SCAN_AHEAD = 4 * 1024 * 1024;
+
+  /**
+   * Marks the end of the decoded data in the queue
+   */
+
+  private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+//----------------------------------------------------------------------
+/**
+ * Constructors
+ *
+ */
+//----------------------------------------------------------------------
+
+  private CompressedInput() {
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Methods
+ *
+ */
+//----------------------------------------------------------------------
+
+//----------------------------------------------------------------------
+
+  /**
+   * Tells whether a file is compressed with gzip, or is named *.zz or
+   * *.zlib and starts with a zlib header.
+   *
+   * @param file name of the file
+   * @return boolean
+   */
+
+  public static boolean isCompressed(String file) {
+    try (InputStream in = new FileInputStream(file)) {
+      byte[] magic = new byte[2];
+      return in.read(magic) == 2 && (isGzip(magic[0], magic[1]) || isZlib(file, magic[0], magic[1]));
+    } catch (IOException exc) {
+      return false;
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Opens a file for reading; a compressed file is decompressed while it
+   * is read. Members of gzip files are decoded ahead by one thread less
+   * than there are processors, since one thread decodes them in order.
+   *
+   * @param file name of the file
+   * @return InputStream
+   * @throws IOException if the file cannot be opened
+   */
+
+  public static InputStream open(String file) throws IOException {
+    return open(file, Runtime.getRuntime().availableProcessors() - 1);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Opens a file for reading; a compressed file is decompressed while it
+   * is read.
+   *
+   * @param file    name of the file
+   * @param threads number of threads that decode gzip members ahead; 0
+   *                decodes the members in order only
+   * @return InputStream
+   * @throws IOException if the file cannot be opened
+   */
+
+  public static InputStream open(String file, int threads) throws IOException {
+    FileInputStream in = new FileInputStream(file);
+    byte[] magic = new byte[2];
+    int count = in.getChannel().read(ByteBuffer.wrap(magic), 0);
+    if (count == 2 && isGzip(magic[0], magic[1])) {
+      in.close();
+      FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+      GzipMembers members = new GzipMembers(channel, threads);
+      return new ChunkStream(members::run, () -> {
+        members.stop();
+        channel.close();
+      });
+    } else if (count == 2 && isZlib(file, magic[0], magic[1])) {
+      return new ChunkStream(sink -> inflateZlib(in, sink), in::close);
+    }
+    return in;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Tells whether two bytes start a gzip member.
+   */
+
+  private static boolean isGzip(byte b0, byte b1) {
+    return b0 == (byte) 0x1F && b1 == (byte) 0x8B;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Tells whether a file is named like a zlib file and two bytes are a zlib
+   * header (deflate method, check bits, no preset dictionary).
+   */
+
+  private static boolean isZlib(String file, byte b0, byte b1) {
+    String name = file.toLowerCase();
+    return (name.endsWith(".zz") || name.endsWith(".zlib"))
+        && (b0 & 0x0F) == 8 && (b0 & 0xF0) <= 0x70 && (b1 & 0x20) == 0
+        && ((b0 & 0xFF) << 8 | (b1 & 0xFF)) % 31 == 0;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Decodes a zlib stream. A stream that needs a preset dictionary, is
+   * corrupt or ends early is an error.
+   *
+   * @param in   the compressed stream
+   * @param sink receives the decoded chunks
+   * @throws IOException if the stream cannot be read or decoded
+   */
+
+  private static void inflateZlib(InputStream in, ChunkSink sink) throws IOException, InterruptedException {
+    Inflater inflater = new Inflater();
+    try {
+      byte[] input = new byte[BUFFER_SIZE];
+      byte[] chunk = new byte[CHUNK_SIZE];
+      int length = 0;
+      while (!inflater.finished()) {
+        if (inflater.needsInput()) {
+          int count = in.read(input);
+          if (count < 0) {
+            throw new EOFException("Unexpected end of zlib stream");
+          }
+          inflater.setInput(input, 0, count);
+        }
+        try {
+          length += inflater.inflate(chunk, length, CHUNK_SIZE - length);
+        } catch (DataFormatException exc) {
+          throw new IOException("Invalid zlib stream", exc);
+        }
+        if (inflater.needsDictionary()) {
+          throw new IOException("Zlib streams with a preset dictionary are not supported");
+        }
+        if (length == CHUNK_SIZE || (inflater.finished() && length > 0)) {
+          sink.put(chunk, length);
+          chunk = new byte[CHUNK_SIZE];
+          length = 0;
+        }
+      }
+    } finally {
+      inflater.end();
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Inner classes
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Receives decoded chunks.
+   */
+
+  private interface ChunkSink {
+    void put(byte[] chunk, int length) throws IOException, InterruptedException;
+
+    /**
+     * Tells whether the chunks are no longer wanted, so that decoding can
+     * stop.
+     */
+
+    default boolean isAbandoned() {
+      return false;
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Produces the decoded chunks of a file.
+   */
+
+  private interface Producer {
+    void run(ChunkSink sink) throws IOException, InterruptedException;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Releases the resources of a producer.
+   */
+
+  private interface Closer {
+    void close() throws IOException;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * An InputStream over the chunks a producer decodes on a thread of its
+   * own. The producer waits while the queue of chunks is full. An exception
+   * of the producer is thrown by the read that reaches the end of its
+   * chunks.
+   */
+
+  private static class ChunkStream extends InputStream {
+
+    private final BlockingQueue<ByteBuffer> queue_ = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    private final AtomicReference<Throwable> failure_ = new AtomicReference<>();
+
+    private final Thread thread_;
+
+    private final Closer closer_;
+
+    private ByteBuffer chunk_ = ByteBuffer.allocate(0);
+
+    ChunkStream(Producer producer, Closer closer) {
+      closer_ = closer;
+      thread_ = new Thread(() -> {
+        try {
+          producer.run((chunk, length) -> queue_.put(ByteBuffer.wrap(chunk, 0, length)));
+        } catch (InterruptedException exc) {
+          return; // the stream was closed
+        } catch (Throwable exc) {
+          failure_.set(exc);
+        }
+        try {
+          queue_.put(END);
+        } catch (InterruptedException exc) {
+          // the stream was closed
+        }
+      }, "kwic-decompress");
+      thread_.setDaemon(true);
+      thread_.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+      return next() ? chunk_.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+      if (length == 0) {
+        return 0;
+      }
+      if (!next()) {
+        return -1;
+      }
+      int count = Math.min(length, chunk_.remaining());
+      chunk_.get(bytes, offset, count);
+      return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+      thread_.interrupt();
+      try {
+        thread_.join();
+      } catch (InterruptedException exc) {
+        Thread.currentThread().interrupt();
+      }
+      closer_.close();
+    }
+
+    /**
+     * Makes sure that the current chunk has bytes left.
+     *
+     * @return false at the end of the data
+     */
+
+    private boolean next() throws IOException {
+      while (!chunk_.hasRemaining()) {
+        if (chunk_ == END) {
+          return false;
+        }
+        try {
+          chunk_ = queue_.take();
+        } catch (InterruptedException exc) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while decompressing", exc);
+        }
+        if (chunk_ == END && failure_.get() != null) {
+          Throwable failure = failure_.get();
+          throw (failure instanceof IOException) ? (IOException) failure : new IOException(failure);
+        }
+      }
+      return true;
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Decodes the members of a gzip file in order, with the help of workers
+   * that decode members ahead.
+   */
+
+  private static class GzipMembers {
+
+    private final FileChannel channel_;
+
+    private final int threads_;
+
+    private final ExecutorService workers_;
+
+    GzipMembers(FileChannel channel, int threads) {
+      channel_ = channel;
+      threads_ = threads;
+      workers_ = (threads > 0) ? Executors.newFixedThreadPool(threads, work -> {
+        Thread thread = new Thread(work, "kwic-decompress-ahead");
+        thread.setDaemon(true);
+        return thread;
+      }) : null;
+    }
+
+    void run(ChunkSink sink) throws IOException, InterruptedException {
+      long size = channel_.size();
+      TreeMap<Long, Member> ahead = new TreeMap<>();
+      long scan = 1;
+      long offset = 0;
+      byte[] header = new byte[10];
+      try {
+        while (offset < size && read(offset, header) == header.length && isHeader(header)) {
+          for (Iterator<Member> it = ahead.headMap(offset).values().iterator(); it.hasNext(); ) {
+            it.next().abandon(); // these were no members
+            it.remove();
+          }
+          if (workers_ != null) {
+            scan = Math.max(scan, offset + 1);
+            long scan_end = Math.min(size, offset + (long) threads_ * SCAN_AHEAD);
+            while (ahead.size() < 2 * threads_ && scan < scan_end) {
+              long candidate = find(scan, scan_end);
+              if (candidate < 0) {
+                scan = scan_end;
+                break;
+              }
+              Member member = new Member();
+              member.future_ = workers_.submit(() -> decodeAhead(candidate, member));
+              ahead.put(candidate, member);
+              scan = candidate + 1;
+            }
+          }
+
+          Member member = ahead.remove(offset);
+          if (member != null) {
+            try {
+              member.future_.get();
+            } catch (ExecutionException exc) {
+              member = null; // decoded in order below
+            }
+          }
+          if (member != null) {
+            for (int i = 0; i < member.chunks_.size(); ++i) {
+              byte[] chunk = member.chunks_.get(i);
+              sink.put(chunk, member.lengths_[i]);
+            }
+            offset = member.end_;
+          } else {
+            offset = decode(offset, sink, Long.MAX_VALUE);
+          }
+        }
+      } finally {
+        for (Member member : ahead.values()) {
+          member.abandon();
+        }
+      }
+    }
+
+    void stop() {
+      if (workers_ != null) {
+        workers_.shutdown();
+      }
+    }
+
+    /**
+     * Decodes a member ahead of the current position and keeps its data.
+     * The worker is never interrupted: an interrupt during a read would
+     * close the channel shared by all members.
+     */
+
+    private Void decodeAhead(long offset, Member member) throws IOException, InterruptedException {
+      member.end_ = decode(offset, member, AHEAD_LIMIT);
+      return null;
+    }
+
+    /**
+     * Decodes one member and checks its checksum and length.
+     *
+     * @param offset offset of the member in the file
+     * @param sink   receives the decoded chunks
+     * @param limit  maximum number of decoded bytes
+     * @return the offset after the member
+     * @throws IOException if there is no valid member at the offset, its
+     *                     data exceed the limit, or the sink abandons them
+     */
+
+    private long decode(long offset, ChunkSink sink, long limit) throws IOException, InterruptedException {
+      Source source = new Source(channel_, offset);
+      source.skip(3);
+      int flags = source.read();
+      source.skip(6);
+      if ((flags & 0x04) != 0) {
+        source.skip(source.read() | source.read() << 8);
+      }
+      if ((flags & 0x08) != 0) {
+        while (source.read() != 0) {
+          // skip the file name
+        }
+      }
+      if ((flags & 0x10) != 0) {
+        while (source.read() != 0) {
+          // skip the comment
+        }
+      }
+      if ((flags & 0x02) != 0) {
+        source.skip(2);
+      }
+
+      Inflater inflater = new Inflater(true);
+      CRC32 crc = new CRC32();
+      long total = 0;
+      try {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        int length = 0;
+        while (!inflater.finished()) {
+          if (inflater.needsInput()) {
+            source.feed(inflater);
+          }
+          int count;
+          try {
+            count = inflater.inflate(chunk, length, CHUNK_SIZE - length);
+          } catch (DataFormatException exc) {
+            throw new IOException("Invalid gzip member at offset " + offset, exc);
+          }
+          if (count == 0 && inflater.needsDictionary()) {
+            throw new IOException("Invalid gzip member at offset " + offset);
+          }
+          length += count;
+          if (length == CHUNK_SIZE || (inflater.finished() && length > 0)) {
+            total += length;
+            if (total > limit) {
+              throw new IOException("Gzip member too large to decode ahead");
+            }
+            crc.update(chunk, 0, length);
+            sink.put(chunk, length);
+            chunk = new byte[CHUNK_SIZE];
+            length = 0;
+          }
+          if (sink.isAbandoned()) {
+            throw new IOException("Gzip member abandoned at offset " + offset);
+          }
+        }
+        source.unread(inflater.getRemaining());
+      } finally {
+        inflater.end();
+      }
+      long expected_crc = source.readIntLE() & 0xFFFFFFFFL;
+      long expected_size = source.readIntLE() & 0xFFFFFFFFL;
+      if (crc.getValue() != expected_crc || (total & 0xFFFFFFFFL) != expected_size) {
+        throw new IOException("Corrupt gzip member at offset " + offset);
+      }
+      return source.position();
+    }
+
+    /**
+     * Finds the next offset in [from, to) that looks like a member header.
+     *
+     * @return the offset, or -1
+     */
+
+    private long find(long from, long to) throws IOException {
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      byte[] header = new byte[10];
+      for (long position = from; position < to; ) {
+        buffer.clear();
+        int count = channel_.read(buffer, position);
+        if (count <= 0) {
+          return -1;
+        }
+        for (int i = 0; i < count && position + i < to; ++i) {
+          if (buffer.get(i) == (byte) 0x1F && read(position + i, header) == header.length && isHeader(header)) {
+            return position + i;
+          }
+        }
+        position += count;
+      }
+      return -1;
+    }
+
+    private int read(long position, byte[] bytes) throws IOException {
+      ByteBuffer buffer = ByteBuffer.wrap(bytes);
+      while (buffer.hasRemaining() && channel_.read(buffer, position + buffer.position()) > 0) {
+        // read until full or at the end of the file
+      }
+      return buffer.position();
+    }
+
+    /**
+     * Tells whether ten bytes are a plausible member header: magic number,
+     * deflate method, no reserved flags, known extra flags and system.
+     */
+
+    private static boolean isHeader(byte[] header) {
+      int xfl = header[8] & 0xFF;
+      int os = header[9] & 0xFF;
+      return isGzip(header[0], header[1]) && header[2] == 8 && (header[3] & 0xE0) == 0
+          && (xfl == 0 || xfl == 2 || xfl == 4) && (os <= 13 || os == 255);
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * The decoded data of a member that was decoded ahead. A member is
+   * abandoned through a flag rather than an interrupt of its worker.
+   */
+
+  private static class Member implements ChunkSink {
+
+    final ArrayList<byte[]> chunks_ = new ArrayList<>();
+
+    int[] lengths_ = new int[16];
+
+    long end_;
+
+    Future<Void> future_;
+
+    private volatile boolean abandoned_;
+
+    void abandon() {
+      abandoned_ = true;
+      future_.cancel(false);
+    }
+
+    @Override
+    public boolean isAbandoned() {
+      return abandoned_;
+    }
+
+    @Override
+    public void put(byte[] chunk, int length) {
+      if (chunks_.size() == lengths_.length) {
+        lengths_ = Arrays.copyOf(lengths_, lengths_.length * 2);
+      }
+      lengths_[chunks_.size()] = length;
+      chunks_.add(chunk);
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Reads a gzip file from an offset through positional reads, so that
+   * several members can be read at the same time.
+   */
+
+  private static class Source {
+
+    private final FileChannel channel_;
+
+    private final byte[] buffer_ = new byte[BUFFER_SIZE];
+
+    private long start_;
+
+    private int position_;
+
+    private int limit_;
+
+    Source(FileChannel channel, long offset) {
+      channel_ = channel;
+      start_ = offset;
+    }
+
+    int read() throws IOException {
+      if (position_ == limit_) {
+        fill();
+      }
+      return buffer_[position_++] & 0xFF;
+    }
+
+    int readIntLE() throws IOException {
+      return read() | read() << 8 | read() << 16 | read() << 24;
+    }
+
+    void skip(int count) throws IOException {
+      for (int i = 0; i < count; ++i) {
+        read();
+      }
+    }
+
+    /**
+     * Hands the buffered bytes to the inflater.
+     */
+
+    void feed(Inflater inflater) throws IOException {
+      if (position_ == limit_) {
+        fill();
+      }
+      inflater.setInput(buffer_, position_, limit_ - position_);
+      position_ = limit_;
+    }
+
+    /**
+     * Takes back bytes the inflater did not use.
+     */
+
+    void unread(int count) {
+      position_ -= count;
+    }
+
+    long position() {
+      return start_ + position_;
+    }
+
+    private void fill() throws IOException {
+      start_ += limit_;
+      position_ = 0;
+      limit_ = 0;
+      ByteBuffer buffer = ByteBuffer.wrap(buffer_);
+      int count = channel_.read(buffer, start_);
+      if (count <= 0) {
+        throw new EOFException("Unexpected end of gzip file");
+      }
+      limit_ = count;
+    }
+  }
+
+//----------------------------------------------------------------------
+
+}
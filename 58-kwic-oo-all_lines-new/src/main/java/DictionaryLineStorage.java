@@ -0,0 +1,688 @@
+// -*- Java -*-
+/*
+ * <copyright>
+ *
+ *  Copyright (c) 2026 agent
+ *
+ * </copyright>
+ *
+ * <file>
+ *
+ *  Name:    DictionaryLineStorage.java
+ *
+ *  Purpose: LineStorage that keeps lines as sequences of word ids
+ *
+ *  Created: 17 Oct 2026
+ *
+ *  $Id$
+ *
+ *  Description:
+ *    LineStorage that keeps lines as sequences of word ids
+ * </file>
+*/
+
+
+
+/*
+ * $Log$
+*/
+
+import java.util.Arrays;
+
+/**
+ *  DictionaryLineStorage provides the same public interface as the LineStorage class,
+ *  but keeps each line as a sequence of word ids. The words themselves are kept in a
+ *  WordDictionary, so that every distinct word is stored only once, however often it
+ *  occurs. The ids of all words are kept in one int array, and a second int array keeps
+ *  the index of the first word of each line. Changing a character of a word looks up
+ *  (or adds) the changed word in the dictionary and replaces the id of the word in the
+ *  line; the dictionary entry of the old word is left untouched, since other lines may
+ *  use it as well.
+ *  @author  agent
+ *  @version $Id$
+*/
+
+public class DictionaryLineStorage extends LineStorage implements WordIds {
+
+//----------------------------------------------------------------------
+/**
+ * Fields
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Dictionary holding the words
+   */
+
+  private final WordDictionary dictionary_;
+
+  /**
+   * Ids of all words, line after line
+   */
+
+  private int[] words_ = new int[64];
+
+  /**
+   * Number of words
+   */
+
+  private int word_count_;
+
+  /**
+   * Array that keeps line indices (line index is the index of the first word
+   * of a line in words_)
+   */
+
+  private int[] line_index_ = new int[16];
+
+  /**
+   * Number of lines
+   */
+
+  private int line_count_;
+
+//----------------------------------------------------------------------
+/**
+ * Constructors
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Creates an empty storage with its own dictionary.
+   */
+
+  public DictionaryLineStorage() {
+    this(new WordDictionary());
+  }
+
+  /**
+   * Creates an empty storage that keeps its words in the given dictionary.
+   * Several storages may share one dictionary.
+   *
+   * @param dictionary dictionary holding the words
+   */
+
+  public DictionaryLineStorage(WordDictionary dictionary) {
+    dictionary_ = dictionary;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Methods
+ *
+ */
+//----------------------------------------------------------------------
+
+//----------------------------------------------------------------------
+
+  /**
+   * This method sets a new character on the specified index of
+   * a particular word in a particular line.
+   *
+   * @param c        new character
+   * @param position character index in the word
+   * @param word     word index in the line
+   * @param line     line index
+   * @see #getChar
+   * @see #addChar
+   * @see #deleteChar
+   */
+
+  @Override
+  public void setChar(char c, int position, int word, int line) {
+    char[] chars = getWord(word, line).toCharArray();
+    chars[position] = c;
+    setWord(chars, word, line);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the character from the specified position in the specified word
+   * in a particular line.
+   *
+   * @param position character index in the word
+   * @param word     word index in the line
+   * @param line     line index
+   * @return char
+   * @see #setChar
+   * @see #addChar
+   * @see #deleteChar
+   */
+
+  @Override
+  public char getChar(int position, int word, int line) {
+    return getWord(word, line).charAt(position);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Adds a character at the end of the specified word in a particular line.
+   *
+   * @param c    new character
+   * @param word word index in the line
+   * @param line line index
+   * @see #setChar
+   * @see #getChar
+   * @see #deleteChar
+   */
+
+  @Override
+  public void addChar(char c, int word, int line) {
+    setWord(getWord(word, line) + c, word, line);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Deletes the character from the specified position in the specified word
+   * in a particular line.
+   *
+   * @param position character index in the word
+   * @param word     word index in the line
+   * @param line     line index
+   * @see #setChar
+   * @see #getChar
+   * @see #addChar
+   */
+
+  @Override
+  public void deleteChar(int position, int word, int line) {
+    StringBuilder builder = new StringBuilder(getWord(word, line));
+    builder.deleteCharAt(position);
+    setWord(builder.toString(), word, line);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the number of characters in this particular word.
+   *
+   * @param word word index in the line
+   * @param line line index
+   * @return int
+   */
+
+  @Override
+  public int getCharCount(int word, int line) {
+    return getWord(word, line).length();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * This method sets a new word on the specified index of a particular line.
+   * Character array is taken as an argument for the word.
+   *
+   * @param chars new word
+   * @param word  word index in the line
+   * @param line  line index
+   * @see #getWord
+   * @see #addWord
+   * @see #addEmptyWord
+   * @see #deleteWord
+   */
+
+  @Override
+  public void setWord(char[] chars, int word, int line) {
+    words_[getWordIndex(word, line)] = dictionary_.intern(chars, 0, chars.length);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * This method sets a new word on the specified index of a particular line.
+   * String is taken as an argument for the word.
+   *
+   * @param chars new word
+   * @param word  word index in the line
+   * @param line  line index
+   * @see #getWord
+   * @see #addWord
+   * @see #addEmptyWord
+   * @see #deleteWord
+   */
+
+  @Override
+  public void setWord(String chars, int word, int line) {
+    words_[getWordIndex(word, line)] = dictionary_.intern(chars);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the word from the specified position in a particular line
+   * String representing the word is returned.
+   *
+   * @param word word index in the line
+   * @param line line index
+   * @return String
+   * @see #setWord
+   * @see #addWord
+   * @see #addEmptyWord
+   * @see #deleteWord
+   */
+
+  @Override
+  public String getWord(int word, int line) {
+    return dictionary_.getWord(words_[getWordIndex(word, line)]);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Adds a word at the end of the specified line.
+   * The method takes a character array as an argument.
+   *
+   * @param chars new word
+   * @param line  line index
+   * @see #addEmptyWord
+   * @see #setWord
+   * @see #getWord
+   * @see #deleteWord
+   */
+
+  @Override
+  public void addWord(char[] chars, int line) {
+    addWordId(dictionary_.intern(chars, 0, chars.length), line);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Adds a word at the end of the specified line.
+   * The method takes a string as an argument.
+   *
+   * @param chars new word
+   * @param line  line index
+   * @see #addEmptyWord
+   * @see #setWord
+   * @see #getWord
+   * @see #deleteWord
+   */
+
+  @Override
+  public void addWord(String chars, int line) {
+    addWordId(dictionary_.intern(chars), line);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Adds a word at the end of the specified line. The word consists of count
+   * characters of the array, starting at offset.
+   *
+   * @param chars  characters of the new word
+   * @param offset index of the first character of the word
+   * @param count  number of characters in the word
+   * @param line   line index
+   * @see #addEmptyWord
+   * @see #setWord
+   * @see #getWord
+   * @see #deleteWord
+   */
+
+  @Override
+  public void addWord(char[] chars, int offset, int count, int line) {
+    addWordId(dictionary_.intern(chars, offset, count), line);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Adds the word with the specified dictionary id at the end of the
+   * specified line.
+   *
+   * @param id   word id
+   * @param line line index
+   * @see #getWordId
+   */
+
+  public void addWordId(int id, int line) {
+    checkLine(line);
+    if (word_count_ == words_.length) {
+      words_ = Arrays.copyOf(words_, word_count_ * 2);
+    }
+    int index = line_index_[line + 1];
+    System.arraycopy(words_, index, words_, index + 1, word_count_ - index);
+    words_[index] = id;
+    word_count_++;
+    for (int i = line + 1; i <= line_count_; ++i) {
+      line_index_[i]++;
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Adds an empty word at the end of the specified line.
+   *
+   * @param line line index
+   * @see #setWord
+   * @see #getWord
+   * @see #addWord
+   * @see #deleteWord
+   */
+
+  @Override
+  public void addEmptyWord(int line) {
+    addWordId(dictionary_.intern(""), line);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Deletes the word from the specified position in a particular line.
+   *
+   * @param word word index in the line
+   * @param line line index
+   * @see #setWord
+   * @see #getWord
+   * @see #addWord
+   * @see #addEmptyWord
+   */
+
+  @Override
+  public void deleteWord(int word, int line) {
+    int index = getWordIndex(word, line);
+    deleteWords(index, index + 1, line);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the number of words in this particular line.
+   *
+   * @param line line index
+   * @return int
+   */
+
+  @Override
+  public int getWordCount(int line) {
+    checkLine(line);
+    return line_index_[line + 1] - line_index_[line];
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * This method sets a new line on the specified index.
+   * This method takes two-dimensional character array as an argument
+   * for the line.
+   *
+   * @param words new line
+   * @param line  line index
+   * @see #getLine
+   * @see #getLineAsString
+   * @see #addLine
+   * @see #addEmptyLine
+   * @see #deleteLine
+   */
+
+  @Override
+  public void setLine(char[][] words, int line) {
+    checkLine(line);
+    deleteWords(line_index_[line], line_index_[line + 1], line);
+    for (char[] word : words) {
+      addWord(word, line);
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * This method sets a new line on the specified index.
+   * This method takes a string array as argument
+   *
+   * @param words new line
+   * @param line  line index
+   * @see #getLine
+   * @see #getLineAsString
+   * @see #addLine
+   * @see #addEmptyLine
+   * @see #deleteLine
+   */
+
+  @Override
+  public void setLine(String[] words, int line) {
+    checkLine(line);
+    deleteWords(line_index_[line], line_index_[line + 1], line);
+    for (String word : words) {
+      addWord(word, line);
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the line from the specified position.
+   * String array representing the line is returned.
+   *
+   * @param line line index
+   * @return String[]
+   * @see #setLine
+   * @see #getLineAsString
+   * @see #addLine
+   * @see #addEmptyLine
+   * @see #deleteLine
+   */
+
+  @Override
+  public String[] getLine(int line) {
+    checkLine(line);
+    String[] words = new String[line_index_[line + 1] - line_index_[line]];
+    for (int i = 0; i < words.length; ++i) {
+      words[i] = dictionary_.getWord(words_[line_index_[line] + i]);
+    }
+    return words;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the line from the specified position.
+   * A single String representing the line is returned.
+   *
+   * @param line line index
+   * @return String
+   * @see #setLine
+   * @see #getLine
+   * @see #addLine
+   * @see #addEmptyLine
+   * @see #deleteLine
+   */
+
+  @Override
+  public String getLineAsString(int line) {
+    return String.join(" ", getLine(line));
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Adds a line at the end of the line array.
+   * Two-dimensional array is the argument for the new line
+   *
+   * @param words new line
+   * @see #addEmptyLine
+   * @see #setLine
+   * @see #getLine
+   * @see #deleteLine
+   */
+
+  @Override
+  public void addLine(char[][] words) {
+    addEmptyLine();
+    for (char[] word : words) {
+      addWord(word, line_count_ - 1);
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Adds a line at the end of the line array.
+   * String array is the argument for the new line
+   *
+   * @param words new line
+   * @see #addEmptyLine
+   * @see #setLine
+   * @see #getLine
+   * @see #deleteLine
+   */
+
+  @Override
+  public void addLine(String[] words) {
+    addEmptyLine();
+    for (String word : words) {
+      addWord(word, line_count_ - 1);
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Adds an empty line at the end of the lines array.
+   *
+   * @see #setLine
+   * @see #getLine
+   * @see #getLineAsString
+   * @see #addLine
+   * @see #deleteLine
+   */
+
+  @Override
+  public void addEmptyLine() {
+    if (line_count_ + 2 > line_index_.length) {
+      line_index_ = Arrays.copyOf(line_index_, line_index_.length * 2);
+    }
+    line_count_++;
+    line_index_[line_count_] = word_count_;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Deletes the line from the specified position.
+   *
+   * @param line line index
+   * @see #setLine
+   * @see #getLine
+   * @see #getLineAsString
+   * @see #addLine
+   * @see #addEmptyLine
+   */
+
+  @Override
+  public void deleteLine(int line) {
+    checkLine(line);
+    deleteWords(line_index_[line], line_index_[line + 1], line);
+    System.arraycopy(line_index_, line + 1, line_index_, line, line_count_ - line);
+    line_count_--;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the number of lines.
+   *
+   * @return int
+   */
+
+  @Override
+  public int getLineCount() {
+    return line_count_;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the dictionary id of the word from the specified position in a
+   * particular line.
+   *
+   * @param word word index in the line
+   * @param line line index
+   * @return int
+   * @see WordDictionary#getWord
+   */
+
+  @Override
+  public int getWordId(int word, int line) {
+    return words_[getWordIndex(word, line)];
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the dictionary holding the words of this storage.
+   *
+   * @return WordDictionary
+   */
+
+  @Override
+  public WordDictionary getDictionary() {
+    return dictionary_;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the index of a word in the words_ array.
+   *
+   * @param word word index in the line
+   * @param line line index
+   * @return int
+   */
+
+  private int getWordIndex(int word, int line) {
+    checkLine(line);
+    if (word < 0 || word >= line_index_[line + 1] - line_index_[line]) {
+      throw new IndexOutOfBoundsException("Word: " + word + ", Line: " + line);
+    }
+    return line_index_[line] + word;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Checks that the line index is valid.
+   *
+   * @param line line index
+   */
+
+  private void checkLine(int line) {
+    if (line < 0 || line >= line_count_) {
+      throw new IndexOutOfBoundsException("Line: " + line + ", Lines: " + line_count_);
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Deletes the words [first, last) of the words_ array. All words must
+   * belong to the specified line.
+   *
+   * @param first index of the first word to delete
+   * @param last  index after the last word to delete
+   * @param line  line index
+   */
+
+  private void deleteWords(int first, int last, int line) {
+    System.arraycopy(words_, last, words_, first, word_count_ - last);
+    word_count_ -= last - first;
+    for (int i = line + 1; i <= line_count_; ++i) {
+      line_index_[i] -= last - first;
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Inner classes
+ *
+ */
+//----------------------------------------------------------------------
+
+}
@@ -0,0 +1,800 @@
+// -*- Java -*-
+/*
+ * <copyright>
+ *
+ *  Copyright (c) 2026 agent
+ *
+ * </copyright>
+ *
+ * <file>
+ *
+ *  Name:    ExternalSorter.java
+ *
+ *  Purpose: Sorts circular shifts of arbitrarily large inputs with bounded memory
+ *
+ *  Created: 17 Oct 2026
+ *
+ *  $Id$
+ *
+ *  Description:
+ *    Sorts circular shifts of arbitrarily large inputs with bounded memory
+ * </file>
+*/
+
+
+
+/*
+ * $Log$
+*/
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ *  An ExternalSorter produces the same listing as the Input, CircularShifter,
+ *  Alphabetizer and Output objects do together, but it keeps only a bounded part of the
+ *  input in memory:
+ *  <ul>
+ *  <li>The input file is parsed in batches. A batch ends when its estimated memory use
+ *  reaches the memory budget.
+ *  <li>The circular shifts of each batch are produced and sorted; the sorted shifts are
+ *  written to a temporary file (a run).
+ *  <li>The runs are merged into the output. If there are more runs than can be merged
+ *  within the budget at once, groups of runs are merged into longer runs first.
+ *  </ul>
+ *  Equal shifts are taken from the runs in input order, so the listing is identical to
+ *  that of the in-memory pipeline. If the whole input fits into a single batch, no
+ *  temporary file is written. If a page is set, the merge stops at the end of the page.
+ *  <p>
+ *  In the pipelined mode, parsing, shifting, sorting and writing the runs are stages on
+ *  threads of their own. The stages hand the batches on through bounded queues, so that
+ *  a stage that gets ahead waits for the next one, and the file is read while earlier
+ *  batches are sorted and written. The memory budget is shared by all batches that can
+ *  be in the pipeline at the same time.
+ *  @author  agent
+ *  @version $Id$
+*/
+
+public class ExternalSorter {
+
+//----------------------------------------------------------------------
+/**
+ * Fields
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Size of the buffer of each run file
+   */
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * Number of batches each queue between two stages of the pipelined mode
+   * holds
+   */
+
+  private static final int QUEUE_CAPACITY = 1;
+
+  /**
+   * Number of batches in the pipelined mode at the same time: one in each
+   * of the four stages and the batches in the three queues between them
+   */
+
+  private static final int BATCHES_IN_FLIGHT = 4 + 3 * QUEUE_CAPACITY;
+
+  /**
+   * Memory budget in bytes
+   */
+
+  private final long budget_;
+
+  /**
+   * Creates the LineStorage for each batch
+   */
+
+  private final Supplier<LineStorage> storage_;
+
+  /**
+   * Strategy used to sort each batch
+   */
+
+  private final Alphabetizer.SortStrategy strategy_;
+
+  /**
+   * Number of threads used to produce the circular shifts of each batch
+   */
+
+  private int parallelism_ = 1;
+
+  /**
+   * Words that no shift starts with, or null
+   */
+
+  private StopWords stop_words_;
+
+  /**
+   * True if the stages run on threads of their own
+   */
+
+  private boolean pipelined_;
+
+  /**
+   * Position of the first shift that is printed
+   */
+
+  private int offset_;
+
+  /**
+   * Maximum number of shifts that are printed, or -1 for all shifts
+   */
+
+  private int limit_ = -1;
+
+//----------------------------------------------------------------------
+/**
+ * Constructors
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Creates an ExternalSorter.
+   *
+   * @param budget   memory budget in bytes
+   * @param storage  creates the LineStorage for each batch
+   * @param strategy strategy used to sort each batch; it must sort in
+   *                 String order
+   */
+
+  public ExternalSorter(long budget, Supplier<LineStorage> storage, Alphabetizer.SortStrategy strategy) {
+    if (!strategy.isStringOrder()) {
+      throw new IllegalArgumentException("Runs can be merged in String order only");
+    }
+    budget_ = budget;
+    storage_ = storage;
+    strategy_ = strategy;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Methods
+ *
+ */
+//----------------------------------------------------------------------
+
+//----------------------------------------------------------------------
+
+  /**
+   * Parses the input file batch by batch, sorts the circular shifts of each
+   * batch and merges the sorted batches into the output. If an I/O exception
+   * occurs, an error message is shown and program exits.
+   *
+   * @param file   name of the input file
+   * @param output prints the sorted shifts
+   */
+
+  public void sort(String file, Output output) {
+    if (pipelined_) {
+      sortPipelined(file, output);
+      return;
+    }
+    ArrayList<File> runs = new ArrayList<>();
+    try (BufferedReader reader = Input.open(file)) {
+      Input input = new Input();
+      boolean more = true;
+      while (more) {
+        LineStorage storage = storage_.get();
+        more = input.parse(reader, storage, budget_);
+        CircularShifter shifter = new CircularShifter();
+        shifter.setParallelism(parallelism_);
+        shifter.setStopWords(stop_words_);
+        shifter.setup(storage);
+        Alphabetizer alphabetizer = new Alphabetizer(strategy_);
+        alphabetizer.alpha(shifter);
+        if (!more && runs.isEmpty()) {
+          print(alphabetizer, output);
+          return;
+        }
+        runs.add(writeRun(alphabetizer));
+      }
+      mergeRuns(runs, output);
+
+    } catch (FileNotFoundException exc) {
+      exc.printStackTrace();
+      System.err.println("KWIC Error: Could not open " + file + " file.");
+      System.exit(1);
+    } catch (IOException exc) {
+      exc.printStackTrace();
+      System.err.println("KWIC Error: Could not sort " + file + " file.");
+      System.exit(1);
+    } finally {
+      for (File run : runs) {
+        run.delete();
+      }
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Like sort, but parses, shifts, sorts and writes the batches on four
+   * threads at the same time. This thread writes the runs and merges them.
+   * If an I/O exception occurs, an error message is shown and program
+   * exits.
+   *
+   * @param file   name of the input file
+   * @param output prints the sorted shifts
+   */
+
+  private void sortPipelined(String file, Output output) {
+    long batch_budget = Math.max(1, budget_ / BATCHES_IN_FLIGHT);
+    BlockingQueue<Batch> parsed = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    BlockingQueue<Batch> shifted = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    BlockingQueue<Batch> sorted = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    ArrayList<File> runs = new ArrayList<>();
+    Pipeline pipeline = new Pipeline();
+    try (BufferedReader reader = Input.open(file)) {
+      try {
+        pipeline.start("kwic-parse", parsed, () -> {
+          Input input = new Input();
+          boolean more = true;
+          while (more) {
+            LineStorage storage = storage_.get();
+            more = input.parse(reader, storage, batch_budget);
+            parsed.put(new Batch(storage, !more));
+          }
+        });
+        pipeline.start("kwic-shift", shifted, () -> {
+          for (Batch batch = null; batch == null || !batch.last_; ) {
+            batch = pipeline.take(parsed);
+            CircularShifter shifter = new CircularShifter();
+            shifter.setParallelism(parallelism_);
+            shifter.setStopWords(stop_words_);
+            shifter.setup(batch.storage_);
+            batch.shifter_ = shifter;
+            shifted.put(batch);
+          }
+        });
+        pipeline.start("kwic-sort", sorted, () -> {
+          for (Batch batch = null; batch == null || !batch.last_; ) {
+            batch = pipeline.take(shifted);
+            batch.alphabetizer_ = new Alphabetizer(strategy_);
+            batch.alphabetizer_.alpha(batch.shifter_);
+            batch.shifter_ = null;
+            sorted.put(batch);
+          }
+        });
+
+        for (Batch batch = null; batch == null || !batch.last_; ) {
+          batch = pipeline.take(sorted);
+          if (batch.last_ && runs.isEmpty()) {
+            print(batch.alphabetizer_, output);
+            return;
+          }
+          runs.add(writeRun(batch.alphabetizer_));
+        }
+      } finally {
+        pipeline.stop(); // while the parse stage may still use the reader
+      }
+      mergeRuns(runs, output);
+
+    } catch (FileNotFoundException exc) {
+      exc.printStackTrace();
+      System.err.println("KWIC Error: Could not open " + file + " file.");
+      System.exit(1);
+    } catch (IOException exc) {
+      exc.printStackTrace();
+      System.err.println("KWIC Error: Could not sort " + file + " file.");
+      System.exit(1);
+    } finally {
+      for (File run : runs) {
+        run.delete();
+      }
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Sets the number of threads used to produce the circular shifts of
+   * each batch.
+   *
+   * @param threads number of threads, 1 by default
+   * @see CircularShifter#setParallelism
+   */
+
+  public void setParallelism(int threads) {
+    parallelism_ = threads;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Sets the words that no circular shift may start with.
+   *
+   * @param stop_words the stop words, or null to produce all shifts
+   * @see CircularShifter#setStopWords
+   */
+
+  public void setStopWords(StopWords stop_words) {
+    stop_words_ = stop_words;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Sets whether parsing, shifting, sorting and writing the batches run on
+   * threads of their own, at the same time.
+   *
+   * @param pipelined true for the pipelined mode, false by default
+   */
+
+  public void setPipelined(boolean pipelined) {
+    pipelined_ = pipelined;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Restricts the listing to one page: only the shifts at the positions
+   * [offset, offset + limit) of the sorted order are printed.
+   *
+   * @param offset position of the first shift of the page
+   * @param limit  maximum number of shifts of the page, or -1 to print
+   *               all shifts
+   */
+
+  public void setPage(int offset, int limit) {
+    offset_ = offset;
+    limit_ = limit;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Merges the runs into the output. If there are more runs than can be
+   * merged within the budget at once, groups of runs are merged into longer
+   * runs first. The list is updated to hold the remaining run files.
+   *
+   * @param runs   run files in input order
+   * @param output prints the sorted shifts
+   * @throws IOException if a run cannot be read or written
+   */
+
+  private void mergeRuns(ArrayList<File> runs, Output output) throws IOException {
+    LineSink sink = output::print;
+    if (limit_ >= 0) {
+      sink = new PageSink(output, offset_, limit_);
+    }
+    mergeRuns(runs, (int) Math.max(2, Math.min(Integer.MAX_VALUE, budget_ / BUFFER_SIZE)), sink);
+    output.flush();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Prints the page of the sorted shifts of a single batch.
+   *
+   * @param alphabetizer source of the sorted shifts
+   * @param output       prints the sorted shifts
+   */
+
+  private void print(Alphabetizer alphabetizer, Output output) {
+    if (limit_ < 0) {
+      output.print(alphabetizer);
+      return;
+    }
+    int end = (int) Math.min(alphabetizer.getLineCount(), (long) offset_ + limit_);
+    for (int line = offset_; line < end; ++line) {
+      output.print(alphabetizer.getLineAsString(line));
+    }
+    output.flush();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Merges the runs and passes the lines in sorted order to the sink,
+   * reading at most fan_in runs at once. If there are more runs, groups of
+   * fan_in runs are merged into longer runs first. Equal lines are passed
+   * in the order of their runs. The list is updated to hold the remaining
+   * run files.
+   *
+   * @param runs   run files in input order
+   * @param fan_in maximum number of runs read at the same time; at least 2
+   * @param sink   receives the merged lines
+   * @throws IOException if a run cannot be read or written
+   */
+
+  static void mergeRuns(ArrayList<File> runs, int fan_in, LineSink sink) throws IOException {
+    while (runs.size() > fan_in) {
+      ArrayList<File> merged = new ArrayList<>();
+      for (int i = 0; i < runs.size(); i += fan_in) {
+        ArrayList<File> group = new ArrayList<>(runs.subList(i, Math.min(i + fan_in, runs.size())));
+        if (group.size() == 1) {
+          merged.add(group.get(0));
+          continue;
+        }
+        File run = createRun();
+        merged.add(run);
+        try (RunWriter writer = new RunWriter(run)) {
+          merge(group, writer::write);
+        }
+      }
+      runs.clear();
+      runs.addAll(merged);
+    }
+    merge(runs, sink);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Writes the sorted shifts to a new run file.
+   *
+   * @param alphabetizer source of the sorted shifts
+   * @return the run file
+   * @throws IOException if the file cannot be written
+   */
+
+  static File writeRun(Alphabetizer alphabetizer) throws IOException {
+    File run = createRun();
+    try (RunWriter writer = new RunWriter(run)) {
+      for (int i = 0; i < alphabetizer.getLineCount(); ++i) {
+        writer.write(alphabetizer.getLineAsString(i));
+      }
+    }
+    return run;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Creates an empty temporary run file.
+   *
+   * @return the run file
+   * @throws IOException if the file cannot be created
+   */
+
+  private static File createRun() throws IOException {
+    File run = File.createTempFile("kwic", ".run");
+    run.deleteOnExit();
+    return run;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Merges the runs and passes the lines in sorted order to the sink,
+   * until the sink is done. Equal lines are passed in the order of their
+   * runs. The merged run files are deleted.
+   *
+   * @param runs run files in input order
+   * @param sink receives the merged lines
+   * @throws IOException if a run cannot be read
+   */
+
+  static void merge(ArrayList<File> runs, LineSink sink) throws IOException {
+    PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, runs.size()));
+    try {
+      for (int i = 0; i < runs.size(); ++i) {
+        RunReader reader = new RunReader(runs.get(i), i);
+        if (reader.next()) {
+          queue.add(reader);
+        } else {
+          reader.close();
+        }
+      }
+      while (!queue.isEmpty() && !sink.isDone()) {
+        RunReader reader = queue.poll();
+        sink.write(reader.line_);
+        if (reader.next()) {
+          queue.add(reader);
+        } else {
+          reader.close();
+        }
+      }
+    } finally {
+      for (RunReader reader : queue) {
+        reader.close();
+      }
+      for (File run : runs) {
+        run.delete();
+      }
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Inner classes
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Receives merged lines.
+   */
+
+  interface LineSink {
+    void write(String line) throws IOException;
+
+    default boolean isDone() {
+      return false;
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Prints the merged lines of one page and is done after its last line.
+   */
+
+  private static class PageSink implements LineSink {
+
+    private final Output output_;
+
+    private long skip_;
+
+    private long remaining_;
+
+    PageSink(Output output, int offset, int limit) {
+      output_ = output;
+      skip_ = offset;
+      remaining_ = limit;
+    }
+
+    @Override
+    public void write(String line) {
+      if (skip_ > 0) {
+        skip_--;
+      } else if (remaining_ > 0) {
+        output_.print(line);
+        remaining_--;
+      }
+    }
+
+    @Override
+    public boolean isDone() {
+      return skip_ == 0 && remaining_ == 0;
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * A batch on its way through the stages of the pipelined mode. Each stage
+   * sets the result of its work and drops what the next stages no longer
+   * need.
+   */
+
+  private static class Batch {
+
+    /**
+     * Passed on by the stages after a stage failed
+     */
+
+    static final Batch POISON = new Batch(null, true);
+
+    LineStorage storage_;
+
+    CircularShifter shifter_;
+
+    Alphabetizer alphabetizer_;
+
+    final boolean last_;
+
+    Batch(LineStorage storage, boolean last) {
+      storage_ = storage;
+      last_ = last;
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * The work of one stage of the pipelined mode.
+   */
+
+  private interface Stage {
+    void run() throws IOException, InterruptedException;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Runs the stages of the pipelined mode. A stage that fails puts the
+   * POISON batch into its output queue, so that the next stages fail as
+   * well; the first exception is thrown by the take of the thread that
+   * takes the results. Stages that still wait when the pipeline is stopped
+   * are interrupted.
+   */
+
+  private static class Pipeline {
+
+    private final ArrayList<Thread> threads_ = new ArrayList<>();
+
+    private final AtomicReference<Throwable> failure_ = new AtomicReference<>();
+
+    void start(String name, BlockingQueue<Batch> output, Stage stage) {
+      Thread thread = new Thread(() -> {
+        try {
+          stage.run();
+        } catch (InterruptedException exc) {
+          // stopped
+        } catch (Throwable exc) {
+          failure_.compareAndSet(null, exc);
+          try {
+            output.put(Batch.POISON);
+          } catch (InterruptedException stopped) {
+            // stopped
+          }
+        }
+      }, name);
+      thread.setDaemon(true);
+      threads_.add(thread);
+      thread.start();
+    }
+
+    /**
+     * Takes the next batch from the queue of a stage, waiting until there
+     * is one. Throws the exception of the failed stage instead of handing
+     * out the POISON batch.
+     */
+
+    Batch take(BlockingQueue<Batch> queue) throws IOException {
+      Batch batch;
+      try {
+        batch = queue.take();
+      } catch (InterruptedException exc) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for the pipeline", exc);
+      }
+      if (batch == Batch.POISON) {
+        Throwable failure = failure_.get();
+        if (failure instanceof IOException) {
+          throw (IOException) failure;
+        } else if (failure instanceof RuntimeException) {
+          throw (RuntimeException) failure;
+        } else {
+          throw (Error) failure;
+        }
+      }
+      return batch;
+    }
+
+    /**
+     * Interrupts the stages that are still running and waits for them.
+     */
+
+    void stop() {
+      for (Thread thread : threads_) {
+        thread.interrupt();
+      }
+      for (Thread thread : threads_) {
+        try {
+          thread.join();
+        } catch (InterruptedException exc) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Writes lines to a run file. Each line is written as its number of
+   * characters followed by the characters in modified UTF-8, which keeps
+   * any char value intact.
+   */
+
+  private static class RunWriter implements AutoCloseable {
+
+    private final DataOutputStream out_;
+
+    RunWriter(File run) throws IOException {
+      out_ = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), BUFFER_SIZE));
+    }
+
+    void write(String line) throws IOException {
+      out_.writeInt(line.length());
+      for (int i = 0; i < line.length(); ++i) {
+        char c = line.charAt(i);
+        if (c >= 0x0001 && c <= 0x007F) {
+          out_.write(c);
+        } else if (c <= 0x07FF) {
+          out_.write(0xC0 | (c >> 6));
+          out_.write(0x80 | (c & 0x3F));
+        } else {
+          out_.write(0xE0 | (c >> 12));
+          out_.write(0x80 | ((c >> 6) & 0x3F));
+          out_.write(0x80 | (c & 0x3F));
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      out_.close();
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Reads the lines of a run file one after another. Readers are ordered
+   * by their current line and then by the order of their runs.
+   */
+
+  private static class RunReader implements Comparable<RunReader> {
+
+    private final DataInputStream in_;
+
+    private final int run_;
+
+    private char[] chars_ = new char[256];
+
+    String line_;
+
+    RunReader(File run, int index) throws IOException {
+      in_ = new DataInputStream(new BufferedInputStream(new FileInputStream(run), BUFFER_SIZE));
+      run_ = index;
+    }
+
+    boolean next() throws IOException {
+      int length;
+      try {
+        length = in_.readInt();
+      } catch (EOFException exc) {
+        return false;
+      }
+      if (length > chars_.length) {
+        chars_ = new char[Math.max(length, chars_.length * 2)];
+      }
+      for (int i = 0; i < length; ++i) {
+        int b = in_.readUnsignedByte();
+        if (b < 0x80) {
+          chars_[i] = (char) b;
+        } else if (b < 0xE0) {
+          chars_[i] = (char) (((b & 0x1F) << 6) | (in_.readUnsignedByte() & 0x3F));
+        } else {
+          int b2 = in_.readUnsignedByte();
+          chars_[i] = (char) (((b & 0x0F) << 12) | ((b2 & 0x3F) << 6) | (in_.readUnsignedByte() & 0x3F));
+        }
+      }
+      line_ = new String(chars_, 0, length);
+      return true;
+    }
+
+    void close() throws IOException {
+      in_.close();
+    }
+
+    @Override
+    public int compareTo(RunReader o) {
+      int cmp = line_.compareTo(o.line_);
+      return (cmp != 0) ? cmp : Integer.compare(run_, o.run_);
+    }
+  }
+
+//----------------------------------------------------------------------
+
+}
@@ -0,0 +1,708 @@
+// -*- Java -*-
+/*
+ * <copyright>
+ *
+ *  Copyright (c) 2026 agent
+ *
+ * </copyright>
+ *
+ * <file>
+ *
+ *  Name:    FrontCodedListing.java
+ *
+ *  Purpose: Front-coded storage of sorted listings
+ *
+ *  Created: 17 Oct 2026
+ *
+ *  $Id$
+ *
+ *  Description:
+ *    Front-coded storage of sorted listings
+ * </file>
+*/
+
+
+
+/*
+ * $Log$
+*/
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ *  A FrontCodedListing stores a sorted listing compactly. Neighbouring shifts of a sorted
+ *  listing share long prefixes, so each shift is stored as the number of bytes it shares
+ *  with the shift before it, followed by the remaining bytes (front coding). Every
+ *  restart interval shifts, a shift is stored in full; these restart points allow a
+ *  shift to be read without decoding the whole listing before it. A front-coded listing
+ *  is written by an Encoder, which front-codes the listing printed by an Output on the
+ *  fly, and read sequentially by a Decoder or randomly by a FrontCodedListing.
+ *  <p>
+ *  The file consists of
+ *  <ul>
+ *  <li>a header: magic number ("KWFC"), format version and restart interval,
+ *  <li>the shifts in UTF-8: each one as the shared length plus one and the length of
+ *  the rest as unsigned LEB128 numbers, followed by the rest; a 0 ends the shifts,
+ *  <li>the file offsets of the restart points, and
+ *  <li>a trailer: number of shifts, number of restart points, offset of the restart
+ *  points and the magic number again.
+ *  </ul>
+ *  Numbers outside the shifts are big-endian.
+ *  @author  agent
+ *  @version $Id$
+ *  @see Output
+*/
+
+public class FrontCodedListing implements AutoCloseable {
+
+//----------------------------------------------------------------------
+/**
+ * Fields
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Magic number at the start and at the end of a front-coded listing ("KWFC")
+   */
+
+  private static final int MAGIC = 0x4B574643;
+
+  /**
+   * Version of the file format
+   */
+
+  private static final int VERSION = 1;
+
+  /**
+   * Size of the header in bytes
+   */
+
+  private static final int HEADER_SIZE = 12;
+
+  /**
+   * Size of the trailer in bytes
+   */
+
+  private static final int TRAILER_SIZE = 24;
+
+  /**
+   * Restart interval used if none is given
+   */
+
+  public static final int DEFAULT_RESTART_INTERVAL = 16;
+
+  /**
+   * Size of the buffers of the Encoder and the Decoder
+   */
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * Name of the listing file
+   */
+
+  private final String file_;
+
+  /**
+   * The opened listing file
+   */
+
+  private final FileChannel channel_;
+
+  /**
+   * Number of shifts between two restart points
+   */
+
+  private int interval_;
+
+  /**
+   * Number of shifts
+   */
+
+  private long line_count_;
+
+  /**
+   * File offsets of the restart points, followed by the offset of the end of
+   * the shifts
+   */
+
+  private long[] restarts_;
+
+  /**
+   * Index of the restart point whose shifts are decoded in block_, or -1
+   */
+
+  private int block_index_ = -1;
+
+  /**
+   * Decodes the shifts after a restart point
+   */
+
+  private Decoder block_;
+
+  /**
+   * Index of the shift decoded last by block_
+   */
+
+  private long block_line_;
+
+//----------------------------------------------------------------------
+/**
+ * Constructors
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Opens a front-coded listing for random access. If the file cannot be
+   * read or is not a front-coded listing, an error message is shown and
+   * program exits.
+   *
+   * @param file name of the listing file
+   */
+
+  public FrontCodedListing(String file) {
+    file_ = file;
+    FileChannel channel = null;
+    try {
+      channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+      ByteBuffer header = read(channel, 0, HEADER_SIZE);
+      ByteBuffer trailer = read(channel, channel.size() - TRAILER_SIZE, TRAILER_SIZE);
+      if (header.getInt() != MAGIC || header.getInt() != VERSION || trailer.getInt(TRAILER_SIZE - 4) != MAGIC) {
+        throw new IOException("Not a front-coded listing: " + file);
+      }
+      interval_ = header.getInt();
+      line_count_ = trailer.getLong();
+      int restart_count = trailer.getInt();
+      long table = trailer.getLong();
+      restarts_ = new long[restart_count + 1];
+      read(channel, table, 8 * restart_count).asLongBuffer().get(restarts_, 0, restart_count);
+      restarts_[restart_count] = table;
+    } catch (IOException | RuntimeException exc) {
+      exc.printStackTrace();
+      System.err.println("KWIC Error: Could not read " + file + " file.");
+      System.exit(1);
+    }
+    channel_ = channel;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Methods
+ *
+ */
+//----------------------------------------------------------------------
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the number of shifts.
+   *
+   * @return long
+   */
+
+  public long getLineCount() {
+    return line_count_;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets a shift. Only the shifts from the restart point before it are
+   * decoded; reading the shifts in order decodes each one once. If an I/O
+   * exception occurs, an error message is shown and program exits.
+   *
+   * @param line index of the shift
+   * @return String
+   */
+
+  public String getLine(long line) {
+    if (line < 0 || line >= line_count_) {
+      throw new IndexOutOfBoundsException("No shift " + line + " in " + line_count_ + " shifts");
+    }
+    int block = (int) (line / interval_);
+    try {
+      if (block != block_index_ || line < block_line_) {
+        long start = restarts_[block];
+        block_ = new Decoder(new ChannelInputStream(channel_, start, restarts_[block + 1]));
+        block_index_ = block;
+        block_line_ = (long) block * interval_ - 1;
+      }
+      for (; block_line_ < line; ++block_line_) {
+        block_.next();
+      }
+    } catch (IOException exc) {
+      exc.printStackTrace();
+      System.err.println("KWIC Error: Could not read " + file_ + " file.");
+      System.exit(1);
+    }
+    return block_.getLine();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Closes the listing file.
+   */
+
+  @Override
+  public void close() {
+    try {
+      channel_.close();
+    } catch (IOException exc) {
+      // nothing was written, so nothing is lost
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Prints all shifts of a front-coded listing in order. The shifts are
+   * copied as bytes, without being decoded into Strings. If an I/O
+   * exception occurs, an error message is shown and program exits.
+   *
+   * @param file   name of the listing file
+   * @param output prints the shifts
+   */
+
+  public static void print(String file, Output output) {
+    try (InputStream in = new FileInputStream(file)) {
+      Decoder decoder = Decoder.open(in);
+      while (decoder.next()) {
+        output.print(decoder.line_, decoder.length_);
+      }
+      output.flush();
+    } catch (IOException exc) {
+      exc.printStackTrace();
+      System.err.println("KWIC Error: Could not read " + file + " file.");
+      System.exit(1);
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Tells whether a file is a front-coded listing, by its magic number.
+   *
+   * @param file name of the file
+   * @return boolean
+   */
+
+  public static boolean isFrontCoded(String file) {
+    try (InputStream in = new FileInputStream(file)) {
+      byte[] magic = new byte[4];
+      return in.read(magic) == 4 && ByteBuffer.wrap(magic).getInt() == MAGIC;
+    } catch (IOException exc) {
+      return false;
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Reads a part of a file.
+   *
+   * @param channel  the file
+   * @param position offset of the part
+   * @param size     size of the part
+   * @return the bytes of the part, ready to be read
+   * @throws IOException if the part cannot be read
+   */
+
+  private static ByteBuffer read(FileChannel channel, long position, int size) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of file");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Inner classes
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Front-codes a listing on the fly. The Encoder is an OutputStream that
+   * receives the listing as an Output prints it, i.e., as UTF-8 lines that
+   * end with the line separator, and writes the front-coded listing to the
+   * sink. Call finish once the listing is complete.
+   */
+
+  public static class Encoder extends OutputStream {
+
+    private final OutputStream sink_;
+
+    private final int interval_;
+
+    private final boolean crlf_ = System.lineSeparator().equals("\r\n");
+
+    private final byte[] buffer_ = new byte[BUFFER_SIZE];
+
+    private int count_;
+
+    private long written_;
+
+    private byte[] line_ = new byte[256];
+
+    private int length_;
+
+    private byte[] previous_ = new byte[256];
+
+    private int previous_length_;
+
+    private long line_count_;
+
+    private long[] restarts_ = new long[64];
+
+    private int restart_count_;
+
+    /**
+     * Creates an Encoder and writes the header of the listing.
+     *
+     * @param sink     receives the front-coded listing; it is flushed,
+     *                 but not closed
+     * @param interval number of shifts between two restart points
+     * @throws IOException if the header cannot be written
+     */
+
+    public Encoder(OutputStream sink, int interval) throws IOException {
+      if (interval < 1) {
+        throw new IllegalArgumentException("Restart interval must be positive: " + interval);
+      }
+      sink_ = sink;
+      interval_ = interval;
+      writeInt(MAGIC);
+      writeInt(VERSION);
+      writeInt(interval);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (b == '\n') {
+        endLine();
+      } else {
+        if (length_ == line_.length) {
+          line_ = Arrays.copyOf(line_, length_ * 2);
+        }
+        line_[length_++] = (byte) b;
+      }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      int end = offset + length;
+      while (offset < end) {
+        int newline = offset;
+        while (newline < end && bytes[newline] != '\n') {
+          newline++;
+        }
+        int count = newline - offset;
+        if (length_ + count > line_.length) {
+          line_ = Arrays.copyOf(line_, Math.max(length_ + count, line_.length * 2));
+        }
+        System.arraycopy(bytes, offset, line_, length_, count);
+        length_ += count;
+        if (newline < end) {
+          endLine();
+        }
+        offset = newline + 1;
+      }
+    }
+
+    /**
+     * Writes the front-coded shifts so far to the sink and flushes it.
+     *
+     * @throws IOException if the sink fails
+     */
+
+    @Override
+    public void flush() throws IOException {
+      drain();
+      sink_.flush();
+    }
+
+    /**
+     * Ends the listing: writes the restart points and the trailer and
+     * flushes the sink. A last shift without line separator is written
+     * first.
+     *
+     * @throws IOException if the sink fails
+     */
+
+    public void finish() throws IOException {
+      if (length_ > 0) {
+        endLine();
+      }
+      writeNumber(0);
+      long table = written_ + count_;
+      for (int i = 0; i < restart_count_; ++i) {
+        writeLong(restarts_[i]);
+      }
+      writeLong(line_count_);
+      writeInt(restart_count_);
+      writeLong(table);
+      writeInt(MAGIC);
+      flush();
+    }
+
+    /**
+     * Front-codes the collected shift against the previous one.
+     */
+
+    private void endLine() throws IOException {
+      if (crlf_ && length_ > 0 && line_[length_ - 1] == '\r') {
+        length_--;
+      }
+      int shared = 0;
+      if (line_count_ % interval_ == 0) {
+        if (restart_count_ == restarts_.length) {
+          restarts_ = Arrays.copyOf(restarts_, restart_count_ * 2);
+        }
+        restarts_[restart_count_++] = written_ + count_;
+      } else {
+        int max = Math.min(length_, previous_length_);
+        while (shared < max && line_[shared] == previous_[shared]) {
+          shared++;
+        }
+      }
+      writeNumber(shared + 1);
+      writeNumber(length_ - shared);
+      for (int i = shared; i < length_; ) {
+        if (count_ == buffer_.length) {
+          drain();
+        }
+        int count = Math.min(length_ - i, buffer_.length - count_);
+        System.arraycopy(line_, i, buffer_, count_, count);
+        count_ += count;
+        i += count;
+      }
+      byte[] line = previous_;
+      previous_ = line_;
+      previous_length_ = length_;
+      line_ = line;
+      length_ = 0;
+      line_count_++;
+    }
+
+    private void writeNumber(long number) throws IOException {
+      while ((number & ~0x7FL) != 0) {
+        writeByte((int) ((number & 0x7F) | 0x80));
+        number >>>= 7;
+      }
+      writeByte((int) number);
+    }
+
+    private void writeInt(int number) throws IOException {
+      for (int shift = 24; shift >= 0; shift -= 8) {
+        writeByte(number >>> shift);
+      }
+    }
+
+    private void writeLong(long number) throws IOException {
+      writeInt((int) (number >>> 32));
+      writeInt((int) number);
+    }
+
+    private void writeByte(int b) throws IOException {
+      if (count_ == buffer_.length) {
+        drain();
+      }
+      buffer_[count_++] = (byte) b;
+    }
+
+    private void drain() throws IOException {
+      sink_.write(buffer_, 0, count_);
+      written_ += count_;
+      count_ = 0;
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Decodes the shifts of a front-coded listing one after another.
+   */
+
+  public static class Decoder {
+
+    private final InputStream in_;
+
+    private final byte[] buffer_ = new byte[BUFFER_SIZE];
+
+    private int position_;
+
+    private int limit_;
+
+    byte[] line_ = new byte[256];
+
+    int length_;
+
+    /**
+     * Creates a Decoder that reads a front-coded listing from its start.
+     * The stream is not closed.
+     *
+     * @param in the front-coded listing
+     * @return Decoder
+     * @throws IOException if the stream does not hold a front-coded listing
+     */
+
+    public static Decoder open(InputStream in) throws IOException {
+      Decoder decoder = new Decoder(in);
+      decoder.readHeader();
+      return decoder;
+    }
+
+    private Decoder(InputStream in) {
+      in_ = in;
+    }
+
+    /**
+     * Decodes the next shift.
+     *
+     * @return false if there are no more shifts
+     * @throws IOException if the stream fails or ends too early
+     */
+
+    public boolean next() throws IOException {
+      long shared = readNumber() - 1;
+      if (shared < 0) {
+        return false;
+      }
+      long rest = readNumber();
+      if (shared > length_ || shared + rest > Integer.MAX_VALUE - 8) {
+        throw new IOException("Corrupt front-coded listing");
+      }
+      int length = (int) (shared + rest);
+      if (length > line_.length) {
+        line_ = Arrays.copyOf(line_, Math.max(length, line_.length * 2));
+      }
+      for (int i = (int) shared; i < length; ) {
+        if (position_ == limit_) {
+          fill();
+        }
+        int count = Math.min(length - i, limit_ - position_);
+        System.arraycopy(buffer_, position_, line_, i, count);
+        position_ += count;
+        i += count;
+      }
+      length_ = length;
+      return true;
+    }
+
+    /**
+     * Gets the shift decoded last.
+     *
+     * @return String
+     */
+
+    public String getLine() {
+      return new String(line_, 0, length_, StandardCharsets.UTF_8);
+    }
+
+    private void readHeader() throws IOException {
+      int magic = readInt();
+      if (magic != MAGIC || readInt() != VERSION) {
+        throw new IOException("Not a front-coded listing");
+      }
+      readInt(); // the restart interval is not needed to read the shifts in order
+    }
+
+    private long readNumber() throws IOException {
+      long number = 0;
+      for (int shift = 0; ; shift += 7) {
+        int b = readByte();
+        number |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return number;
+        }
+        if (shift > 56) {
+          throw new IOException("Corrupt front-coded listing");
+        }
+      }
+    }
+
+    private int readInt() throws IOException {
+      int number = 0;
+      for (int i = 0; i < 4; ++i) {
+        number = (number << 8) | readByte();
+      }
+      return number;
+    }
+
+    private int readByte() throws IOException {
+      if (position_ == limit_) {
+        fill();
+      }
+      return buffer_[position_++] & 0xFF;
+    }
+
+    private void fill() throws IOException {
+      int count = in_.read(buffer_);
+      if (count <= 0) {
+        throw new IOException("Unexpected end of front-coded listing");
+      }
+      position_ = 0;
+      limit_ = count;
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Reads a range of a file through positional reads, so that several
+   * ranges of the same channel can be read independently.
+   */
+
+  private static class ChannelInputStream extends InputStream {
+
+    private final FileChannel channel_;
+
+    private long position_;
+
+    private final long end_;
+
+    ChannelInputStream(FileChannel channel, long start, long end) {
+      channel_ = channel;
+      position_ = start;
+      end_ = end;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return (read(b, 0, 1) < 0) ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+      if (position_ >= end_) {
+        return -1;
+      }
+      ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, (int) Math.min(length, end_ - position_));
+      int count = channel_.read(buffer, position_);
+      if (count > 0) {
+        position_ += count;
+      }
+      return count;
+    }
+  }
+
+//----------------------------------------------------------------------
+
+}
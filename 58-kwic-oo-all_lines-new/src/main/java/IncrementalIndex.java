@@ -0,0 +1,693 @@
+// -*- Java -*-
+/*
+ * <copyright>
+ *
+ *  Copyright (c) 2026 agent
+ *
+ * </copyright>
+ *
+ * <file>
+ *
+ *  Name:    IncrementalIndex.java
+ *
+ *  Purpose: Keeps the sorted circular shifts up to date while lines change
+ *
+ *  Created: 17 Oct 2026
+ *
+ *  $Id$
+ *
+ *  Description:
+ *    Keeps the sorted circular shifts up to date while lines change
+ * </file>
+*/
+
+
+
+/*
+ * $Log$
+*/
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.PrimitiveIterator;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ *  IncrementalIndex keeps the circular shifts of a changing set of lines in alphabetical
+ *  order. Changing a line only inserts or removes the shifts of that line instead of
+ *  shifting and sorting all lines again. The sorted shifts are kept in two parts:
+ *  <ul>
+ *  <li>a base KWICIndex, built at creation and at each compaction
+ *  <li>a delta: a balanced tree (TreeSet) of the shifts of the lines added since
+ *  </ul>
+ *  A listing merges both parts. Lines are identified by stable ids, which are handed out
+ *  in ascending order and never reused: a deleted line is marked as retired, and an
+ *  edited line is retired and added again under a new id. The shifts of retired lines
+ *  are removed from the delta at once and skipped in the base. When the delta and the
+ *  retired lines grow larger than a fraction of the base, both parts are merged into a
+ *  new base, and the live lines are copied into a fresh LineStorage, so that retired
+ *  lines do not pile up. An id keeps naming its line across compactions.
+ *  <p>
+ *  The lines must only be changed through the index. Equal shifts are ordered by their
+ *  line ids and then like the shifts of the CircularShifter. An IncrementalIndex is not
+ *  thread safe.
+ *  @author  agent
+ *  @version $Id$
+*/
+
+public class IncrementalIndex {
+
+//----------------------------------------------------------------------
+/**
+ * Fields
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Marks the end of a shift, sorts before all characters
+   */
+
+  private static final int END = -1;
+
+  /**
+   * Stands for the key of a query in the delta tree
+   */
+
+  private static final long PROBE = -1L;
+
+  /**
+   * Number of changed shifts that never triggers a compaction
+   */
+
+  private static final int MIN_CHANGES = 1024;
+
+  /**
+   * The base is compacted when the changed shifts exceed this fraction of it
+   */
+
+  private static final int CHANGE_RATIO = 16;
+
+  /**
+   * Creates the LineStorage that the live lines are copied into
+   */
+
+  private final Supplier<LineStorage> storage_;
+
+  /**
+   * LineStorage holding the lines, including the ones retired since the
+   * last compaction
+   */
+
+  private LineStorage lines_;
+
+  /**
+   * Ids of the lines in lines_, in ascending order
+   */
+
+  private int[] ids_;
+
+  /**
+   * Id of the next added line
+   */
+
+  private int next_id_;
+
+  /**
+   * Sorted shifts of the lines with indices below base_lines_
+   */
+
+  private KWICIndex base_;
+
+  /**
+   * Number of lines covered by base_
+   */
+
+  private int base_lines_;
+
+  /**
+   * Sorted shifts of the lines added since the base was built; each shift is
+   * the index of its line in the upper and its starting word in the lower 32
+   * bits
+   */
+
+  private final TreeSet<Long> delta_;
+
+  /**
+   * Indices of the deleted and edited lines
+   */
+
+  private final BitSet retired_ = new BitSet();
+
+  /**
+   * Number of shifts in base_ that belong to retired lines
+   */
+
+  private int retired_shifts_;
+
+  /**
+   * Number of words of the retired lines
+   */
+
+  private int retired_words_;
+
+  /**
+   * Key that PROBE stands for
+   */
+
+  private String probe_;
+
+  /**
+   * Walkers through two shifts, used to compare them
+   */
+
+  private final ShiftChars first_ = new ShiftChars();
+
+  private final ShiftChars second_ = new ShiftChars();
+
+//----------------------------------------------------------------------
+/**
+ * Constructors
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Creates an index of the lines; their ids are their indices. The index
+   * takes over the storage, which must not be changed other than through
+   * the index from now on. A compaction copies the live lines into a new
+   * LineStorage.
+   *
+   * @param lines A set of lines
+   */
+
+  public IncrementalIndex(LineStorage lines) {
+    this(lines, LineStorage::new);
+  }
+
+  /**
+   * Creates an index of the lines; their ids are their indices. The index
+   * takes over the storage, which must not be changed other than through
+   * the index from now on.
+   *
+   * @param lines   A set of lines
+   * @param storage creates the storage a compaction copies the live lines
+   *                into
+   */
+
+  public IncrementalIndex(LineStorage lines, Supplier<LineStorage> storage) {
+    storage_ = storage;
+    lines_ = lines;
+    next_id_ = lines.getLineCount();
+    ids_ = IntStream.range(0, Math.max(next_id_, 16)).toArray();
+    base_ = new KWICIndex(lines);
+    base_lines_ = lines.getLineCount();
+    delta_ = new TreeSet<>(this::compare);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Methods
+ *
+ */
+//----------------------------------------------------------------------
+
+//----------------------------------------------------------------------
+
+  /**
+   * Adds a new line and inserts its shifts into the sorted order.
+   *
+   * @param words the words of the line
+   * @return the id of the new line
+   */
+
+  public int addLine(String[] words) {
+    lines_.addLine(words);
+    int line = lines_.getLineCount() - 1;
+    if (line == ids_.length) {
+      ids_ = Arrays.copyOf(ids_, ids_.length * 2);
+    }
+    int id = next_id_++;
+    ids_[line] = id;
+    for (int start = 0; start < words.length; ++start) {
+      delta_.add(shift(line, start));
+    }
+    compactIfNeeded();
+    return id;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Deletes a line and removes its shifts from the sorted order.
+   *
+   * @param id line id
+   */
+
+  public void deleteLine(int id) {
+    int line = checkLine(id);
+    retired_.set(line);
+    int words = lines_.getWordCount(line);
+    retired_words_ += words;
+    if (line < base_lines_) {
+      retired_shifts_ += words;
+    } else {
+      for (int start = 0; start < words; ++start) {
+        delta_.remove(shift(line, start));
+      }
+    }
+    compactIfNeeded();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Replaces a line. The line is deleted and the new words are added as a
+   * new line.
+   *
+   * @param id    line id
+   * @param words the new words of the line
+   * @return the id of the new line
+   */
+
+  public int setLine(int id, String[] words) {
+    deleteLine(id);
+    return addLine(words);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Replaces a word of a line.
+   *
+   * @param id    line id
+   * @param word  word index in the line
+   * @param chars the new word
+   * @return the id of the changed line
+   * @see #setLine
+   */
+
+  public int setWord(int id, int word, String chars) {
+    String[] words = lines_.getLine(checkLine(id));
+    words[word] = chars;
+    return setLine(id, words);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Deletes a word of a line.
+   *
+   * @param id   line id
+   * @param word word index in the line
+   * @return the id of the changed line
+   * @see #setLine
+   */
+
+  public int deleteWord(int id, int word) {
+    String[] words = lines_.getLine(checkLine(id));
+    String[] changed = new String[words.length - 1];
+    System.arraycopy(words, 0, changed, 0, word);
+    System.arraycopy(words, word + 1, changed, word, words.length - word - 1);
+    return setLine(id, changed);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the line with the specified id.
+   *
+   * @param id line id
+   * @return String[]
+   */
+
+  public String[] getLine(int id) {
+    return lines_.getLine(checkLine(id));
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Tells whether a line id belongs to a line that has been neither deleted
+   * nor replaced.
+   *
+   * @param id line id
+   * @return boolean
+   */
+
+  public boolean isLive(int id) {
+    return find(id) >= 0;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the number of shifts of all live lines.
+   *
+   * @return int
+   */
+
+  public int getShiftCount() {
+    return base_.getLineCount() - retired_shifts_ + delta_.size();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Prints the shifts of all live lines in sorted order at the output and
+   * flushes it.
+   *
+   * @param output prints the shifts
+   */
+
+  public void print(Output output) {
+    merge(IntStream.range(0, base_.getLineCount()).iterator(), delta_.iterator(),
+          (line, start) -> output.print(getShiftAsString(line, start)));
+    output.flush();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Prints the shifts of all live lines that start with the keyword in
+   * sorted order at the output and flushes it.
+   *
+   * @param keyword the keyword
+   * @param output  prints the shifts
+   * @see KWICIndex#findKeyword
+   */
+
+  public void query(String keyword, Output output) {
+    TreeSet<Long> matches = new TreeSet<>(this::compare);
+    probe_ = keyword;
+    for (long shift : delta_.tailSet(PROBE)) {
+      int line = (int) (shift >>> 32);
+      int start = (int) shift;
+      if (!getShiftAsString(line, start).startsWith(keyword)) {
+        break;
+      }
+      if (lines_.getWord(start, line).equals(keyword)) {
+        matches.add(shift);
+      }
+    }
+    probe_ = null;
+    merge(base_.findKeyword(keyword), matches.iterator(),
+          (line, start) -> output.print(getShiftAsString(line, start)));
+    output.flush();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Merges the delta into the base and drops the retired lines: the live
+   * lines are copied into a new storage, keeping their ids. This happens
+   * automatically when enough shifts have changed.
+   */
+
+  public void compact() {
+    int[] shift_lines = new int[getShiftCount()];
+    int[] shift_words = new int[shift_lines.length];
+    int[] count = new int[1];
+    merge(IntStream.range(0, base_.getLineCount()).iterator(), delta_.iterator(), (line, start) -> {
+      shift_lines[count[0]] = line;
+      shift_words[count[0]++] = start;
+    });
+
+    LineStorage lines = storage_.get();
+    int[] moved = new int[lines_.getLineCount()];
+    for (int line = 0; line < moved.length; ++line) {
+      if (!retired_.get(line)) {
+        moved[line] = lines.getLineCount();
+        ids_[moved[line]] = ids_[line];
+        lines.addLine(lines_.getLine(line));
+      }
+    }
+    for (int i = 0; i < shift_lines.length; ++i) {
+      shift_lines[i] = moved[shift_lines[i]];
+    }
+    lines_ = lines;
+    base_ = new KWICIndex(lines_, shift_lines, shift_words);
+    base_lines_ = lines_.getLineCount();
+    delta_.clear();
+    retired_.clear();
+    retired_shifts_ = 0;
+    retired_words_ = 0;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Compacts the index if the added shifts and the words of retired lines
+   * exceed a fraction of the base.
+   */
+
+  private void compactIfNeeded() {
+    int changes = delta_.size() + retired_words_;
+    if (changes > MIN_CHANGES && changes > base_.getLineCount() / CHANGE_RATIO) {
+      compact();
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Merges base positions and delta shifts in sorted order, skipping the
+   * shifts of retired lines, and passes the shifts to the sink.
+   *
+   * @param base  positions in the base, in ascending order
+   * @param delta shifts of the delta, in sorted order
+   * @param sink  receives the merged shifts
+   */
+
+  private void merge(PrimitiveIterator.OfInt base, Iterator<Long> delta, ShiftSink sink) {
+    long next_base = nextBase(base);
+    long next_delta = delta.hasNext() ? delta.next() : PROBE;
+    while (next_base != PROBE || next_delta != PROBE) {
+      if (next_delta == PROBE || (next_base != PROBE && compare(next_base, next_delta) < 0)) {
+        sink.accept((int) (next_base >>> 32), (int) next_base);
+        next_base = nextBase(base);
+      } else {
+        sink.accept((int) (next_delta >>> 32), (int) next_delta);
+        next_delta = delta.hasNext() ? delta.next() : PROBE;
+      }
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the next shift of a live line from the base.
+   *
+   * @param base positions in the base
+   * @return the shift, or PROBE if there is none
+   */
+
+  private long nextBase(PrimitiveIterator.OfInt base) {
+    while (base.hasNext()) {
+      int position = base.nextInt();
+      int line = base_.getOriginalLine(position);
+      if (!retired_.get(line)) {
+        return shift(line, base_.getStartWord(position));
+      }
+    }
+    return PROBE;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Compares two shifts by their String representation; equal shifts are
+   * ordered by line index and then like the shifts of a CircularShifter. The
+   * PROBE sorts right before all shifts that do not sort before probe_.
+   *
+   * @param a first shift
+   * @param b second shift
+   * @return int
+   */
+
+  private int compare(long a, long b) {
+    if (a == PROBE || b == PROBE) {
+      return (a == b) ? 0 : (a == PROBE) ? -compareProbe(b) : compareProbe(a);
+    }
+    first_.seek((int) (a >>> 32), (int) a);
+    second_.seek((int) (b >>> 32), (int) b);
+    while (true) {
+      int c = first_.next();
+      int d = second_.next();
+      if (c != d) {
+        return c - d;
+      }
+      if (c == END) {
+        break;
+      }
+    }
+    return Long.compare(order(a), order(b));
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Compares a shift with probe_.
+   *
+   * @param shift the shift
+   * @return a negative number if the shift sorts before probe_, otherwise
+   *         a positive number
+   */
+
+  private int compareProbe(long shift) {
+    first_.seek((int) (shift >>> 32), (int) shift);
+    for (int i = 0; i < probe_.length(); ++i) {
+      int c = first_.next();
+      if (c != probe_.charAt(i)) {
+        return c - probe_.charAt(i);
+      }
+    }
+    return 1;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the order of equal shifts: by line index, which follows the ids,
+   * and within a line in the order 1, 2, ..., n - 1, 0 of the starting
+   * words.
+   *
+   * @param shift the shift
+   * @return long
+   */
+
+  private long order(long shift) {
+    int start = (int) shift;
+    return (shift & 0xFFFFFFFF00000000L) | ((start == 0) ? Integer.MAX_VALUE : start);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the String representation of a shift.
+   *
+   * @param line  line index
+   * @param start index of the starting word
+   * @return String
+   */
+
+  private String getShiftAsString(int line, int start) {
+    String[] words = lines_.getLine(line);
+    String[] shift = new String[words.length];
+    System.arraycopy(words, start, shift, 0, words.length - start);
+    System.arraycopy(words, 0, shift, words.length - start, start);
+    return String.join(" ", shift);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Finds the index of a live line in the storage.
+   *
+   * @param id line id
+   * @return the index, or -1 if no live line has the id
+   */
+
+  private int find(int id) {
+    int line = Arrays.binarySearch(ids_, 0, lines_.getLineCount(), id);
+    return (line >= 0 && !retired_.get(line)) ? line : -1;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Checks that a line id belongs to a live line.
+   *
+   * @param id line id
+   * @return the index of the line in the storage
+   */
+
+  private int checkLine(int id) {
+    int line = find(id);
+    if (line < 0) {
+      throw new IllegalArgumentException("No live line with id " + id);
+    }
+    return line;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Packs a shift into a long.
+   *
+   * @param line  line index
+   * @param start index of the starting word
+   * @return long
+   */
+
+  private static long shift(int line, int start) {
+    return ((long) line << 32) | start;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Inner classes
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Receives merged shifts.
+   */
+
+  private interface ShiftSink {
+    void accept(int line, int start);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * ShiftChars walks through the String representation of a shift, i.e.,
+   * its words separated by single space characters, without building that
+   * String.
+   */
+
+  private final class ShiftChars {
+
+    private int line_;
+
+    private int word_;
+
+    private int count_;
+
+    private int shifted_;
+
+    private int position_;
+
+    private int length_;
+
+    void seek(int line, int start) {
+      line_ = line;
+      count_ = lines_.getWordCount(line);
+      word_ = start;
+      shifted_ = 0;
+      position_ = 0;
+      length_ = (count_ > 0) ? lines_.getCharCount(start, line) : 0;
+    }
+
+    int next() {
+      if (position_ < length_) {
+        return lines_.getChar(position_++, word_, line_);
+      }
+      if (shifted_ + 1 >= count_) {
+        return END;
+      }
+      shifted_++;
+      word_ = (word_ + 1 < count_) ? word_ + 1 : 0;
+      position_ = 0;
+      length_ = lines_.getCharCount(word_, line_);
+      return ' ';
+    }
+  }
+
+//----------------------------------------------------------------------
+
+}
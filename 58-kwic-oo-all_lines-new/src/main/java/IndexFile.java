@@ -0,0 +1,412 @@
+// -*- Java -*-
+/*
+ * <copyright>
+ *
+ *  Copyright (c) 2026 agent
+ *
+ * </copyright>
+ *
+ * <file>
+ *
+ *  Name:    IndexFile.java
+ *
+ *  Purpose: Saves a KWICIndex to a file and maps it back into memory
+ *
+ *  Created: 17 Oct 2026
+ *
+ *  $Id$
+ *
+ *  Description:
+ *    Saves a KWICIndex to a file and maps it back into memory
+ * </file>
+*/
+
+
+
+/*
+ * $Log$
+*/
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ *  An IndexFile saves a KWICIndex in a compact binary form and maps it back into memory,
+ *  so that a listing can be printed or queried without parsing, shifting and sorting
+ *  the input again. The file starts with a header:
+ *  <ul>
+ *  <li>magic number ("KWIC") and format version
+ *  <li>size and CRC-32 checksum of the input file the index was built from
+ *  <li>number of distinct words, characters, lines, words and shifts
+ *  <li>checksum of the stop words the shifts were filtered with, 0 for none
+ *  <li>modification time of the input file in milliseconds
+ *  </ul>
+ *  The header is followed by the sections of the index, all in big-endian order: the
+ *  index of the first character of each distinct word, the index of the first word of
+ *  each line, the word ids of all lines, the original line, the starting word and the
+ *  LCP of each shift in sorted order, and finally the characters of all distinct words.
+ *  When the file is read, each section is mapped into memory and used in place by a
+ *  MappedLineStorage and a KWICIndex. An index file whose version, size or checksum
+ *  does not match is considered stale and is not read. The checksum of the input file is
+ *  only computed when its modification time differs from the one in the header, so that
+ *  reloading the index of an unchanged file does not read the whole file.
+ *  @author  agent
+ *  @version $Id$
+ *  @see KWICIndex
+ *  @see MappedLineStorage
+*/
+
+public class IndexFile {
+
+//----------------------------------------------------------------------
+/**
+ * Fields
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Magic number at the start of an index file ("KWIC")
+   */
+
+  private static final int MAGIC = 0x4B574943;
+
+  /**
+   * Version of the file format
+   */
+
+  private static final int VERSION = 2;
+
+  /**
+   * Size of the header in bytes
+   */
+
+  private static final int HEADER_SIZE = 56;
+
+  /**
+   * Size of the part of the input file that is mapped at once to compute
+   * its checksum
+   */
+
+  private static final int MAP_SIZE = 64 * 1024 * 1024;
+
+  /**
+   * Name of the index file
+   */
+
+  private final String file_;
+
+//----------------------------------------------------------------------
+/**
+ * Constructors
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Creates an IndexFile.
+   *
+   * @param file name of the index file
+   */
+
+  public IndexFile(String file) {
+    file_ = file;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Methods
+ *
+ */
+//----------------------------------------------------------------------
+
+//----------------------------------------------------------------------
+
+  /**
+   * Reads the index of an input file. Returns null if the index file does
+   * not exist, has another format version, or has been built from another
+   * version of the input file. If an I/O exception occurs, an error message
+   * is shown and program exits.
+   *
+   * @param source name of the input file the index was built from
+   * @return KWICIndex, or null if there is no current index
+   */
+
+  public KWICIndex read(String source) {
+    return read(source, null);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Reads the index of an input file whose shifts were filtered with stop
+   * words. Returns null if the index file does not exist, has another
+   * format version, has been built from another version of the input file
+   * or with other stop words. The input file counts as unchanged if its
+   * size and modification time are those in the header, or else if its
+   * checksum is. If an I/O exception occurs, an error message is shown and
+   * program exits.
+   *
+   * @param source     name of the input file the index was built from
+   * @param stop_words stop words the index was built with, or null
+   * @return KWICIndex, or null if there is no current index
+   * @see StopWords#getChecksum
+   */
+
+  public KWICIndex read(String source, StopWords stop_words) {
+    Path path = Paths.get(file_);
+    if (!Files.isRegularFile(path)) {
+      return null;
+    }
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() < HEADER_SIZE) {
+        return null;
+      }
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+      if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+        return null;
+      }
+      long source_size = header.getLong(8);
+      long source_checksum = header.getLong(16);
+      int word_count = header.getInt(24);
+      int char_count = header.getInt(28);
+      int line_count = header.getInt(32);
+      int word_total = header.getInt(36);
+      int shift_count = header.getInt(40);
+      int stop_checksum = header.getInt(44);
+      long source_time = header.getLong(48);
+      long size = HEADER_SIZE + 4L * (word_count + 1) + 4L * (line_count + 1) + 4L * word_total
+          + 12L * shift_count + 2L * char_count;
+      if (channel.size() != size || Files.size(Paths.get(source)) != source_size
+          || stop_checksum != checksum(stop_words)) {
+        return null;
+      }
+      if (modified(source) != source_time && checksum(source) != source_checksum) {
+        return null;
+      }
+
+      long position = HEADER_SIZE;
+      IntBuffer word_index = mapInts(channel, position, word_count + 1);
+      position += 4L * (word_count + 1);
+      IntBuffer line_index = mapInts(channel, position, line_count + 1);
+      position += 4L * (line_count + 1);
+      IntBuffer words = mapInts(channel, position, word_total);
+      position += 4L * word_total;
+      IntBuffer shift_lines = mapInts(channel, position, shift_count);
+      position += 4L * shift_count;
+      IntBuffer shift_words = mapInts(channel, position, shift_count);
+      position += 4L * shift_count;
+      IntBuffer lcp = mapInts(channel, position, shift_count);
+      position += 4L * shift_count;
+      CharBuffer chars = channel.map(FileChannel.MapMode.READ_ONLY, position, 2L * char_count).asCharBuffer();
+
+      return new KWICIndex(new MappedLineStorage(chars, word_index, words, line_index),
+                           shift_lines, shift_words, lcp);
+
+    } catch (IOException exc) {
+      exc.printStackTrace();
+      System.err.println("KWIC Error: Could not read " + file_ + " file.");
+      System.exit(1);
+      return null;
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Writes the index of an input file. The file is written under a
+   * temporary name first and then renamed, so that readers never see a
+   * partially written index. If an I/O exception occurs, an error message
+   * is shown and program exits.
+   *
+   * @param index  the index
+   * @param source name of the input file the index was built from
+   */
+
+  public void write(KWICIndex index, String source) {
+    write(index, source, null);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Writes the index of an input file whose shifts were filtered with stop
+   * words, like write(index, source).
+   *
+   * @param index      the index
+   * @param source     name of the input file the index was built from
+   * @param stop_words stop words the index was built with, or null
+   */
+
+  public void write(KWICIndex index, String source, StopWords stop_words) {
+    LineStorage lines = index.getLines();
+    WordDictionary dictionary = (lines instanceof WordIds) ? ((WordIds) lines).getDictionary() : null;
+    int word_total = 0;
+    for (int line = 0; line < lines.getLineCount(); ++line) {
+      word_total += lines.getWordCount(line);
+    }
+    int[] words = new int[word_total];
+    if (dictionary == null) {
+      dictionary = new WordDictionary();
+      for (int line = 0, i = 0; line < lines.getLineCount(); ++line) {
+        for (int word = 0; word < lines.getWordCount(line); ++word) {
+          words[i++] = dictionary.intern(lines.getWord(word, line));
+        }
+      }
+    } else {
+      for (int line = 0, i = 0; line < lines.getLineCount(); ++line) {
+        for (int word = 0; word < lines.getWordCount(line); ++word) {
+          words[i++] = ((WordIds) lines).getWordId(word, line);
+        }
+      }
+    }
+    long char_count = 0;
+    for (int id = 0; id < dictionary.getWordCount(); ++id) {
+      char_count += dictionary.getWord(id).length();
+    }
+    if (char_count > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Too many characters for an index file: " + char_count);
+    }
+
+    Path path = Paths.get(file_).toAbsolutePath();
+    Path temp = null;
+    try {
+      temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024))) {
+        long source_time = modified(source); // before the checksum, in case the file changes
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(Files.size(Paths.get(source)));
+        out.writeLong(checksum(source));
+        out.writeInt(dictionary.getWordCount());
+        out.writeInt((int) char_count);
+        out.writeInt(lines.getLineCount());
+        out.writeInt(word_total);
+        out.writeInt(index.getLineCount());
+        out.writeInt(checksum(stop_words));
+        out.writeLong(source_time);
+
+        int offset = 0;
+        for (int id = 0; id < dictionary.getWordCount(); ++id) {
+          out.writeInt(offset);
+          offset += dictionary.getWord(id).length();
+        }
+        out.writeInt(offset);
+        offset = 0;
+        for (int line = 0; line < lines.getLineCount(); ++line) {
+          out.writeInt(offset);
+          offset += lines.getWordCount(line);
+        }
+        out.writeInt(offset);
+        for (int id : words) {
+          out.writeInt(id);
+        }
+        for (int i = 0; i < index.getLineCount(); ++i) {
+          out.writeInt(index.getOriginalLine(i));
+        }
+        for (int i = 0; i < index.getLineCount(); ++i) {
+          out.writeInt(index.getStartWord(i));
+        }
+        for (int i = 0; i < index.getLineCount(); ++i) {
+          out.writeInt(index.getLcp(i));
+        }
+        for (int id = 0; id < dictionary.getWordCount(); ++id) {
+          out.writeChars(dictionary.getWord(id));
+        }
+      }
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+    } catch (IOException exc) {
+      exc.printStackTrace();
+      System.err.println("KWIC Error: Could not write " + file_ + " file.");
+      System.exit(1);
+    } finally {
+      if (temp != null) {
+        temp.toFile().delete();
+      }
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Maps a section of int values into memory.
+   *
+   * @param channel the index file
+   * @param position offset of the section in bytes
+   * @param count    number of int values
+   * @return IntBuffer
+   * @throws IOException if the section cannot be mapped
+   */
+
+  private static IntBuffer mapInts(FileChannel channel, long position, int count) throws IOException {
+    return channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * count).asIntBuffer();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Computes the CRC-32 checksum of a file.
+   *
+   * @param file name of the file
+   * @return long
+   * @throws IOException if the file cannot be read
+   */
+
+  private static long checksum(String file) throws IOException {
+    CRC32 crc = new CRC32();
+    try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+      long size = channel.size();
+      for (long position = 0; position < size; position += MAP_SIZE) {
+        crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_SIZE, size - position)));
+      }
+    }
+    return crc.getValue();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the modification time of a file in milliseconds.
+   *
+   * @param file name of the file
+   * @return long
+   * @throws IOException if the file attributes cannot be read
+   */
+
+  private static long modified(String file) throws IOException {
+    return Files.getLastModifiedTime(Paths.get(file)).toMillis();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the checksum of the stop words as stored in the header.
+   *
+   * @param stop_words the stop words, or null
+   * @return int
+   */
+
+  private static int checksum(StopWords stop_words) {
+    return (stop_words == null) ? 0 : (int) stop_words.getChecksum();
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Inner classes
+ *
+ */
+//----------------------------------------------------------------------
+
+}
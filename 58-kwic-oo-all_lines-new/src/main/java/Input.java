@@ -30,10 +30,22 @@
 */
 
 import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.FileNotFoundException;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.StringTokenizer;
 
 /**
@@ -66,6 +78,37 @@ public class Input {
  */
 //----------------------------------------------------------------------
 
+  /**
+   * Estimated memory per line: line index entries
+   */
+
+  static final int LINE_BYTES = 16;
+
+  /**
+   * Estimated memory per word: word index entry, circular shift entries and
+   * sort arrays
+   */
+
+  static final int WORD_BYTES = 32;
+
+  /**
+   * Estimated memory per character
+   */
+
+  static final int CHAR_BYTES = 2;
+
+  /**
+   * Size of the part of the file that parseMapped maps at once
+   */
+
+  static final int MAP_SIZE = 64 * 1024 * 1024;
+
+  /**
+   * Number of decompressed bytes that parseMapped scans at once
+   */
+
+  static final int READ_SIZE = 1024 * 1024;
+
 //----------------------------------------------------------------------
 /**
  * Constructors
@@ -92,30 +135,206 @@ public class Input {
    */
 
   public void parse(String file, LineStorage line_storage) {
-    try {
-      BufferedReader reader = new BufferedReader(new FileReader(file));
+    try (BufferedReader reader = open(file)) {
+      parse(reader, line_storage, Long.MAX_VALUE);
+
+    } catch (FileNotFoundException exc) {
+      exc.printStackTrace();
+      System.err.println("KWIC Error: Could not open " + file + "file.");
+      System.exit(1);
+    } catch (IOException exc) {
+      exc.printStackTrace();
+      System.err.println("KWIC Error: Could not read " + file + "file.");
+      System.exit(1);
+    }
+  }
+
+//----------------------------------------------------------------------
 
+  /**
+   * This method reads and parses lines from a reader until the end of the
+   * input, or until the parsed lines take an estimated number of bytes
+   * in memory. The estimate covers the lines as well as their circular
+   * shifts and the arrays needed to sort them (see LINE_BYTES, WORD_BYTES
+   * and CHAR_BYTES). The reader is not closed.
+   *
+   * @param reader       source of the lines
+   * @param line_storage holds the parsed data
+   * @param budget       number of bytes after which parsing stops
+   * @return true if parsing stopped before the end of the input
+   * @throws IOException if the reader fails
+   */
+
+  public boolean parse(BufferedReader reader, LineStorage line_storage, long budget) throws IOException {
+    long bytes = 0;
+    while (bytes < budget) {
       String line = reader.readLine();
-      while (line != null) {
-        StringTokenizer tokenizer = new StringTokenizer(line); // " \t\n\r\f" are delimiter character
-        if (tokenizer.countTokens() > 0)
-          line_storage.addEmptyLine();
-        while (tokenizer.hasMoreTokens())
-          line_storage.addWord(tokenizer.nextToken(), line_storage.getLineCount() - 1);
-        line = reader.readLine();
+      if (line == null) {
+        return false;
+      }
+      StringTokenizer tokenizer = new StringTokenizer(line); // " \t\n\r\f" are delimiter character
+      if (tokenizer.countTokens() > 0) {
+        line_storage.addEmptyLine();
+        bytes += LINE_BYTES;
+      }
+      while (tokenizer.hasMoreTokens()) {
+        String word = tokenizer.nextToken();
+        line_storage.addWord(word, line_storage.getLineCount() - 1);
+        bytes += WORD_BYTES + CHAR_BYTES * word.length();
+      }
+    }
+    return true;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * This method reads and parses a KWIC input file like parse, but maps the file
+   * into memory and scans its bytes directly, instead of creating a String for
+   * every line and every word. The file is decoded as UTF-8; malformed input is
+   * replaced by the Unicode replacement character. Lines end at '\n' or '\r', and
+   * words are delimited by ' ', '\t' and '\f', just like with parse. The characters
+   * of each word are handed to the LineStorage as a range of a reused array. Large
+   * files are mapped part by part. If an I/O exception occurs during the execution
+   * of this method, an error message is shown and program exits.
+   *
+   * @param file         name of KWIC input file
+   * @param line_storage holds the parsed data
+   */
+
+  public void parseMapped(String file, LineStorage line_storage) {
+    if (CompressedInput.isCompressed(file)) {
+      parseCompressed(file, line_storage);
+      return;
+    }
+    try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+      Scanner scanner = new Scanner(line_storage);
+      long size = channel.size();
+      long position = 0;
+      int map_size = MAP_SIZE;
+      while (position < size) {
+        int length = (int) Math.min(map_size, size - position);
+        boolean last = position + length == size;
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        int consumed = scanner.scan(buffer, length, last);
+        if (consumed == 0) {
+          map_size *= 2; // a single word is longer than the mapped part
+        }
+        position += consumed;
+      }
+
+    } catch (NoSuchFileException exc) {
+      exc.printStackTrace();
+      System.err.println("KWIC Error: Could not open " + file + " file.");
+      System.exit(1);
+    } catch (IOException exc) {
+      exc.printStackTrace();
+      System.err.println("KWIC Error: Could not read " + file + " file.");
+      System.exit(1);
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Opens a KWIC input file for reading lines. Files compressed with gzip or
+   * zlib are decompressed while they are read (see CompressedInput); the
+   * characters are decoded in UTF-8 like parseMapped does, and malformed
+   * bytes are replaced.
+   *
+   * @param file name of KWIC input file
+   * @return BufferedReader
+   * @throws IOException if the file cannot be opened
+   */
+
+  static BufferedReader open(String file) throws IOException {
+    CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    return new BufferedReader(new InputStreamReader(CompressedInput.open(file), decoder));
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Parses a compressed KWIC input file like parseMapped, scanning the bytes
+   * as they come out of the decompressor instead of a mapped file.
+   *
+   * @param file         name of KWIC input file
+   * @param line_storage holds the parsed data
+   */
+
+  private void parseCompressed(String file, LineStorage line_storage) {
+    try (InputStream in = CompressedInput.open(file)) {
+      Scanner scanner = new Scanner(line_storage);
+      byte[] bytes = new byte[READ_SIZE];
+      int length = 0;
+      boolean last = false;
+      while (!last) {
+        int count = in.read(bytes, length, bytes.length - length);
+        if (count < 0) {
+          last = true;
+        } else {
+          length += count;
+          if (length < bytes.length) {
+            continue;
+          }
+        }
+        int consumed = scanner.scan(ByteBuffer.wrap(bytes), length, last);
+        if (consumed == 0 && !last) {
+          bytes = Arrays.copyOf(bytes, bytes.length * 2); // a single word is longer than the buffer
+        }
+        System.arraycopy(bytes, consumed, bytes, 0, length - consumed);
+        length -= consumed;
       }
 
     } catch (FileNotFoundException exc) {
       exc.printStackTrace();
-      System.err.println("KWIC Error: Could not open " + file + "file.");
+      System.err.println("KWIC Error: Could not open " + file + " file.");
       System.exit(1);
     } catch (IOException exc) {
       exc.printStackTrace();
-      System.err.println("KWIC Error: Could not read " + file + "file.");
+      System.err.println("KWIC Error: Could not read " + file + " file.");
       System.exit(1);
     }
   }
 
+//----------------------------------------------------------------------
+
+  /**
+   * Tells whether a byte delimits words.
+   *
+   * @param b the byte
+   * @return boolean
+   */
+
+  private static boolean isDelimiter(byte b) {
+    return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Decodes the UTF-8 bytes [start, end) of the buffer.
+   *
+   * @param decoder UTF-8 decoder
+   * @param buffer  the bytes
+   * @param start   index of the first byte
+   * @param end     index after the last byte
+   * @param chars   receives the characters; at least end - start long
+   * @return number of decoded characters
+   */
+
+  private static int decode(CharsetDecoder decoder, ByteBuffer buffer, int start, int end, char[] chars) {
+    ByteBuffer in = buffer.duplicate();
+    in.limit(end).position(start);
+    CharBuffer out = CharBuffer.wrap(chars);
+    decoder.reset();
+    decoder.decode(in, out, true);
+    decoder.flush(out);
+    return out.position();
+  }
+
 //----------------------------------------------------------------------
 /**
  * Inner classes
@@ -123,4 +342,83 @@ public class Input {
  */
 //----------------------------------------------------------------------
 
-}
\ No newline at end of file
+  /**
+   * Scans UTF-8 bytes for lines and words and adds them to a LineStorage.
+   * The bytes come in parts; the state of the current line is kept between
+   * the parts.
+   */
+
+  private static class Scanner {
+
+    private final LineStorage line_storage_;
+
+    private final CharsetDecoder decoder_ = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private char[] chars_ = new char[256];
+
+    private boolean in_line_;
+
+    Scanner(LineStorage line_storage) {
+      line_storage_ = line_storage;
+    }
+
+    /**
+     * Scans the bytes [0, length) of the buffer. Unless this is the last part
+     * of the input, a word that reaches the end of the part is left for the
+     * next part.
+     *
+     * @param buffer the bytes
+     * @param length number of bytes in the part
+     * @param last   true if no bytes follow the part
+     * @return number of scanned bytes
+     */
+
+    int scan(ByteBuffer buffer, int length, boolean last) {
+      int consumed = 0;
+      while (consumed < length) {
+        byte b = buffer.get(consumed);
+        if (b == '\n' || b == '\r') {
+          in_line_ = false;
+          consumed++;
+          continue;
+        }
+        if (b == ' ' || b == '\t' || b == '\f') {
+          consumed++;
+          continue;
+        }
+        int end = consumed + 1;
+        while (end < length && !isDelimiter(buffer.get(end))) {
+          end++;
+        }
+        if (end == length && !last) {
+          break; // the word may continue in the next part
+        }
+
+        if (end - consumed > chars_.length) {
+          chars_ = new char[Math.max(end - consumed, chars_.length * 2)];
+        }
+        int count = 0;
+        for (int i = consumed; i < end; ++i) {
+          byte c = buffer.get(i);
+          if (c < 0) {
+            count = decode(decoder_, buffer, consumed, end, chars_);
+            break;
+          }
+          chars_[count++] = (char) c;
+        }
+        if (!in_line_) {
+          line_storage_.addEmptyLine();
+          in_line_ = true;
+        }
+        line_storage_.addWord(chars_, 0, count, line_storage_.getLineCount() - 1);
+        consumed = end;
+      }
+      return consumed;
+    }
+  }
+
+//----------------------------------------------------------------------
+
+}
@@ -27,6 +27,21 @@
  * $Log$
 */
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.PrimitiveIterator;
+import java.util.function.Supplier;
+
 /**
  *  An instance of the KWIC class controls all other objects in the KWIC system
  *  to achieve the desired functionality. Thus, KWIC instance creates the following 
@@ -55,6 +70,86 @@ public class KWIC {
  */
 //----------------------------------------------------------------------
 
+  /**
+   * Strategy used by the Alphabetizer
+   */
+
+  private Alphabetizer.SortStrategy strategy_ = new Alphabetizer.ComparisonSort();
+
+  /**
+   * Creates the LineStorage that holds the parsed data
+   */
+
+  private Supplier<LineStorage> storage_ = DictionaryLineStorage::new;
+
+  /**
+   * Memory budget in bytes for the streaming mode, or 0 to keep all
+   * data in memory
+   */
+
+  private long budget_;
+
+  /**
+   * Memory budget in bytes of the pipelined mode if no budget is set
+   */
+
+  private static final long PIPELINE_BUDGET = 256L * 1024 * 1024;
+
+  /**
+   * True if parsing, shifting, sorting and writing run at the same time
+   */
+
+  private boolean pipelined_;
+
+  /**
+   * Output that prints the sorted shifts, or null to print them at the
+   * standard output
+   */
+
+  private Output output_;
+
+  /**
+   * True if the input file is parsed by mapping it into memory
+   */
+
+  private boolean mapped_ = true;
+
+  /**
+   * Number of threads used to produce the circular shifts
+   */
+
+  private int parallelism_ = 1;
+
+  /**
+   * Name of the file the index is saved to, or null
+   */
+
+  private String index_file_;
+
+  /**
+   * Words that no shift starts with, or null
+   */
+
+  private StopWords stop_words_;
+
+  /**
+   * Position of the first shift that is printed
+   */
+
+  private int offset_;
+
+  /**
+   * Maximum number of shifts that are printed, or -1 to print all shifts
+   */
+
+  private int limit_ = -1;
+
+  /**
+   * Notified of the metrics of each execution
+   */
+
+  private final ArrayList<Metrics.Listener> listeners_ = new ArrayList<>();
+
 //----------------------------------------------------------------------
 /**
  * Constructors
@@ -73,39 +168,541 @@ public class KWIC {
 
   /**
    * Parses the data, makes shifts and sorts them. At the end prints the
-   * sorted shifts.
+   * sorted shifts. If an index file is set, the sorted shifts are taken
+   * from the index file instead, see index. Otherwise, if a memory budget
+   * is set or the pipelined mode is on, the data is processed in batches
+   * by an ExternalSorter. If a page is set, only that page of the sorted
+   * shifts is printed. If metrics listeners are registered, each stage is
+   * measured.
    *
    * @param file name of the input file
+   * @see #addMetricsListener
    */
 
   public void execute(String file) {
+    Metrics metrics = listeners_.isEmpty() ? null : new Metrics(listeners_);
+    if (index_file_ != null) {
+      begin(metrics, Metrics.INDEX);
+      KWICIndex index = index(file);
+      end(metrics);
+      if (metrics != null) {
+        metrics.count(index.getLines());
+        metrics.setShiftCount(index.getLineCount());
+      }
+      begin(metrics, Metrics.OUTPUT);
+      if (limit_ < 0) {
+        getOutput().print(index);
+      } else {
+        Output output = getOutput();
+        int end = (int) Math.min(index.getLineCount(), (long) offset_ + limit_);
+        for (int line = offset_; line < end; ++line) {
+          output.print(index.getLineAsString(line));
+        }
+        output.flush();
+      }
+      end(metrics);
+    } else if (budget_ > 0 || pipelined_) {
+      ExternalSorter sorter = new ExternalSorter((budget_ > 0) ? budget_ : PIPELINE_BUDGET, storage_, strategy_);
+      sorter.setParallelism(parallelism_);
+      sorter.setStopWords(stop_words_);
+      sorter.setPipelined(pipelined_);
+      sorter.setPage(offset_, limit_);
+      begin(metrics, Metrics.EXTERNAL_SORT);
+      sorter.sort(file, getOutput());
+      end(metrics);
+    } else {
+      Input input = new Input();
+      LineStorage storage = storage_.get();
+      begin(metrics, Metrics.PARSE);
+      if (mapped_) {
+        input.parseMapped(file, storage);
+      } else {
+        input.parse(file, storage);
+      }
+      end(metrics);
+      CircularShifter shifter = new CircularShifter();
+      shifter.setParallelism(parallelism_);
+      shifter.setStopWords(stop_words_);
+      begin(metrics, Metrics.SHIFT);
+      shifter.setup(storage);
+      end(metrics);
+      Alphabetizer alphabetizer = new Alphabetizer(strategy_);
+      begin(metrics, Metrics.SORT);
+      if (limit_ < 0) {
+        alphabetizer.alpha(shifter);
+      } else {
+        alphabetizer.alpha(shifter, offset_, limit_);
+      }
+      end(metrics);
+      if (metrics != null) {
+        metrics.count(storage);
+        metrics.setShiftCount(shifter.getLineCount());
+        metrics.setComparisonCount(alphabetizer.getComparisonCount());
+      }
+      begin(metrics, Metrics.OUTPUT);
+      getOutput().print(alphabetizer);
+      end(metrics);
+    }
+    if (metrics != null) {
+      metrics.finish();
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Parses the data and builds a KWICIndex of its circular shifts that do
+   * not start with a stop word, which can be queried for the shifts that
+   * start with a keyword or prefix. If an index file is set and holds a
+   * current index of the input file with the same stop words, the index is
+   * mapped from that file instead; otherwise the new index is saved to it.
+   *
+   * @param file name of the input file
+   * @return KWICIndex
+   * @see #setIndexFile
+   */
+
+  public KWICIndex index(String file) {
+    if (index_file_ == null) {
+      return build(file);
+    }
+    IndexFile index_file = new IndexFile(index_file_);
+    KWICIndex index = index_file.read(file, stop_words_);
+    if (index == null) {
+      index = build(file);
+      index_file.write(index, file, stop_words_);
+    }
+    return index;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Parses the data and builds a KWICIndex of its circular shifts.
+   *
+   * @param file name of the input file
+   * @return KWICIndex
+   */
+
+  private KWICIndex build(String file) {
     Input input = new Input();
-    LineStorage storage = new LineStorage();
-    input.parse(file, storage);
-    CircularShifter shifter = new CircularShifter();
-    shifter.setup(storage);
-    Alphabetizer alphabetizer = new Alphabetizer();
-    alphabetizer.alpha(shifter);
-    Output output = new Output();
-    output.print(alphabetizer);
+    LineStorage storage = storage_.get();
+    if (mapped_) {
+      input.parseMapped(file, storage);
+    } else {
+      input.parse(file, storage);
+    }
+    return new KWICIndex(storage, strategy_, stop_words_);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Parses the data and prints the circular shifts that start with the
+   * keyword, in alphabetical order.
+   *
+   * @param file    name of the input file
+   * @param keyword the keyword
+   * @see KWICIndex#findKeyword
+   */
+
+  public void query(String file, String keyword) {
+    KWICIndex index = index(file);
+    Output output = getOutput();
+    PrimitiveIterator.OfInt matches = index.findKeyword(keyword);
+    while (matches.hasNext()) {
+      output.print(index.getLineAsString(matches.nextInt()));
+    }
+    output.flush();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Sets the strategy the Alphabetizer uses to sort the circular shifts.
+   *
+   * @param strategy sort strategy
+   * @see Alphabetizer.SortStrategy#forName
+   */
+
+  public void setSortStrategy(Alphabetizer.SortStrategy strategy) {
+    strategy_ = strategy;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Sets the factory for the LineStorage that holds the parsed data. By
+   * default the lines are kept in a DictionaryLineStorage.
+   *
+   * @param storage creates an empty LineStorage
+   */
+
+  public void setLineStorage(Supplier<LineStorage> storage) {
+    storage_ = storage;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Sets the memory budget for the streaming mode. With a budget, the input
+   * is parsed, shifted and sorted in batches that fit into the budget, and
+   * the sorted batches are merged through temporary files.
+   *
+   * @param budget memory budget in bytes, or 0 to keep all data in memory
+   * @see ExternalSorter
+   */
+
+  public void setMemoryBudget(long budget) {
+    budget_ = budget;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Chooses how the input file is parsed. By default the file is mapped
+   * into memory and decoded as UTF-8; otherwise it is read line by line
+   * with the default charset of the platform.
+   *
+   * @param mapped true to map the input file into memory
+   * @see Input#parseMapped
+   * @see Input#parse
+   */
+
+  public void setMappedInput(boolean mapped) {
+    mapped_ = mapped;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Sets the number of threads used to produce the circular shifts.
+   *
+   * @param threads number of threads, 1 by default
+   * @see CircularShifter#setParallelism
+   */
+
+  public void setParallelism(int threads) {
+    parallelism_ = threads;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Sets the pipelined mode. In this mode, the input is processed in
+   * batches, and parsing, shifting, sorting and writing the batches run on
+   * threads of their own, at the same time. The memory budget, or 256 MB if
+   * none is set, is shared by all batches in the pipeline.
+   *
+   * @param pipelined true for the pipelined mode, false by default
+   * @see ExternalSorter#setPipelined
+   */
+
+  public void setPipelined(boolean pipelined) {
+    pipelined_ = pipelined;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Sets the file that keeps the index of the input. The index is built
+   * and saved on first use, and mapped from the file as long as the input
+   * file does not change.
+   *
+   * @param file name of the index file, or null to build the index on
+   *             every run
+   * @see IndexFile
+   */
+
+  public void setIndexFile(String file) {
+    index_file_ = file;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Sets the Output that prints the sorted shifts. By default they are
+   * printed at the standard output.
+   *
+   * @param output prints the sorted shifts
+   */
+
+  public void setOutput(Output output) {
+    output_ = output;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Produces the listings of many files concurrently with a BatchRunner,
+   * using the line storage, sort strategy, stop words and input mode of
+   * this KWIC. The listing of each file is written to the output directory,
+   * or, without one, the shifts of all files are printed as one merged
+   * listing. Index file, memory budget, page and metrics listeners do not
+   * apply.
+   *
+   * @param files     names of the input files
+   * @param threads   number of files processed at the same time
+   * @param directory name of the output directory, or null
+   * @see BatchRunner
+   */
+
+  public void executeAll(List<String> files, int threads, String directory) {
+    BatchRunner runner = new BatchRunner(threads, storage_, strategy_);
+    runner.setStopWords(stop_words_);
+    runner.setMappedInput(mapped_);
+    if (directory != null) {
+      runner.run(files, directory);
+    } else {
+      runner.run(files, getOutput());
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Sets the words that no circular shift may start with. The listing is
+   * the same as without stop words, minus the shifts that start with one,
+   * in every mode, including the index and its queries.
+   *
+   * @param stop_words the stop words, or null to list all shifts
+   * @see CircularShifter#setStopWords
+   */
+
+  public void setStopWords(StopWords stop_words) {
+    stop_words_ = stop_words;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Restricts the listing to one page: only the shifts at the positions
+   * [offset, offset + limit) of the sorted order are printed, and only
+   * those are sorted. The streaming mode sorts all shifts, but stops
+   * merging them at the end of the page.
+   *
+   * @param offset position of the first shift of the page
+   * @param limit  maximum number of shifts of the page, or -1 to print
+   *               all shifts
+   * @see Alphabetizer#alpha(CircularShifter, int, int)
+   */
+
+  public void setPage(int offset, int limit) {
+    if (offset < 0 || limit < -1) {
+      throw new IllegalArgumentException("Invalid page: offset " + offset + ", limit " + limit);
+    }
+    offset_ = offset;
+    limit_ = limit;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Registers a listener that is notified of the metrics of each execution.
+   * Without listeners, executions are not measured.
+   *
+   * @param listener the listener
+   * @see Metrics
+   */
+
+  public void addMetricsListener(Metrics.Listener listener) {
+    listeners_.add(listener);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Starts measuring a stage.
+   *
+   * @param metrics metrics of the execution, or null if it is not measured
+   * @param stage   stage name
+   */
+
+  private static void begin(Metrics metrics, String stage) {
+    if (metrics != null) {
+      metrics.begin(stage);
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Stops measuring the running stage.
+   *
+   * @param metrics metrics of the execution, or null if it is not measured
+   */
+
+  private static void end(Metrics metrics) {
+    if (metrics != null) {
+      metrics.end();
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the Output that prints the sorted shifts.
+   *
+   * @return Output
+   */
+
+  private Output getOutput() {
+    return (output_ != null) ? output_ : new Output();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Prints either the whole listing or the shifts that start with the
+   * keyword.
+   *
+   * @param file    name of the input file
+   * @param keyword the keyword, or null for the whole listing
+   */
+
+  private void run(String file, String keyword) {
+    if (keyword == null) {
+      execute(file);
+    } else {
+      query(file, keyword);
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Adds the input files named by a command line argument: a file, all
+   * files in a directory and its subdirectories in name order, or, for
+   * @list, the files listed one per line in the list file. If an I/O
+   * exception occurs, an error message is shown and program exits.
+   *
+   * @param arg   command line argument
+   * @param files receives the file names
+   */
+
+  private static void addFiles(String arg, List<String> files) {
+    if (arg.startsWith("@")) {
+      try {
+        for (String line : Files.readAllLines(Paths.get(arg.substring(1)))) {
+          if (!line.trim().isEmpty()) {
+            files.add(line.trim());
+          }
+        }
+      } catch (IOException exc) {
+        exc.printStackTrace();
+        System.err.println("KWIC Error: Could not read " + arg.substring(1) + " file.");
+        System.exit(1);
+      }
+      return;
+    }
+    File file = new File(arg);
+    File[] children = file.listFiles();
+    if (children == null) {
+      files.add(arg);
+      return;
+    }
+    Arrays.sort(children);
+    for (File child : children) {
+      addFiles(child.getPath(), files);
+    }
   }
 
 //----------------------------------------------------------------------
 
   /**
-   * Main function checks the command line arguments. The program expects
-   * exactly one command line argument specifying the name of the file
-   * that contains the data. If the program has not been started with
-   * proper command line arguments, main function exits
-   * with an error message. Otherwise, a KWIC instance is created and program
-   * control is passed to it.
+   * Main function checks the command line arguments, creates a KWIC
+   * instance and passes program control to it. The arguments name the
+   * input files, and system properties (-Dkwic.*) choose the options; the
+   * README lists both.
    *
    * @param args command line arguments
    */
 
   public static void main(String[] args) {
     KWIC kwic = new KWIC();
-    kwic.execute("Test_Case2.txt");
+    String sort = System.getProperty("kwic.sort", "comparison");
+    Integer threads = Integer.getInteger("kwic.threads");
+    if (sort.equals("parallel") && threads != null) {
+      kwic.setSortStrategy(new Alphabetizer.ParallelSort(threads));
+    } else if (sort.equals("collation")) {
+      String locale = System.getProperty("kwic.locale");
+      kwic.setSortStrategy(new Alphabetizer.CollationSort(
+          (locale != null) ? Locale.forLanguageTag(locale) : Locale.getDefault(),
+          Boolean.getBoolean("kwic.ignorecase"), Boolean.getBoolean("kwic.ignoreaccents")));
+    } else {
+      kwic.setSortStrategy(Alphabetizer.SortStrategy.forName(sort));
+    }
+    String storage = System.getProperty("kwic.storage", "dictionary");
+    if (storage.equals("packed")) {
+      kwic.setLineStorage(PackedLineStorage::new);
+    } else if (storage.equals("list")) {
+      kwic.setLineStorage(LineStorage::new);
+    }
+    kwic.setMemoryBudget(Long.getLong("kwic.budget", 0) * 1024 * 1024);
+    kwic.setPipelined(Boolean.getBoolean("kwic.pipeline"));
+    kwic.setMappedInput(!"false".equals(System.getProperty("kwic.mapped")));
+    if (threads != null) {
+      kwic.setParallelism(threads);
+    }
+    kwic.setIndexFile(System.getProperty("kwic.index"));
+    String stop_words = System.getProperty("kwic.stopwords");
+    if (stop_words != null) {
+      StopWords words = new StopWords();
+      words.load(stop_words);
+      kwic.setStopWords(words);
+    }
+    Integer limit = Integer.getInteger("kwic.limit");
+    if (limit != null) {
+      kwic.setPage(Integer.getInteger("kwic.offset", 0), limit);
+    }
+    String metrics = System.getProperty("kwic.metrics");
+    if (metrics != null) {
+      kwic.addMetricsListener(new Metrics.JsonReport(metrics));
+    }
+    if (Boolean.getBoolean("kwic.jmx")) {
+      kwic.addMetricsListener(new Metrics.Publisher());
+    }
+    String query = System.getProperty("kwic.query");
+    List<String> files = new ArrayList<>();
+    for (String arg : args) {
+      addFiles(arg, files);
+    }
+    Runnable job;
+    String decode = System.getProperty("kwic.decode");
+    if (decode != null) {
+      job = () -> FrontCodedListing.print(decode, kwic.getOutput());
+    } else if (args.length == 0) {
+      job = () -> kwic.run("Test_Case2.txt", query);
+    } else if (args.length == 1 && new File(args[0]).isFile()) {
+      job = () -> kwic.run(args[0], query);
+    } else {
+      int workers = (threads != null) ? threads : Runtime.getRuntime().availableProcessors();
+      String directory = System.getProperty("kwic.outdir");
+      job = () -> kwic.executeAll(files, workers, directory);
+    }
+    String output = System.getProperty("kwic.output");
+    Integer interval = Integer.getInteger("kwic.frontcoding");
+    if (output == null && interval == null) {
+      job.run();
+      return;
+    }
+    try (FileChannel channel = (output != null) ? FileChannel.open(Paths.get(output), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING) : null) {
+      if (interval != null) {
+        OutputStream sink = (channel != null) ? Channels.newOutputStream(channel) : System.out;
+        FrontCodedListing.Encoder encoder = new FrontCodedListing.Encoder(sink, interval);
+        kwic.setOutput(new Output(encoder));
+        job.run();
+        encoder.finish();
+      } else {
+        kwic.setOutput(new Output(channel));
+        job.run();
+      }
+    } catch (IOException exc) {
+      exc.printStackTrace();
+      System.err.println("KWIC Error: Could not write " + ((output != null) ? output + " file." : "output."));
+      System.exit(1);
+    }
   }
 
 //----------------------------------------------------------------------
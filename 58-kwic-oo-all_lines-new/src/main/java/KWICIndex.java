@@ -0,0 +1,684 @@
+// -*- Java -*-
+/*
+ * <copyright>
+ *
+ *  Copyright (c) 2026 agent
+ *
+ * </copyright>
+ *
+ * <file>
+ *
+ *  Name:    KWICIndex.java
+ *
+ *  Purpose: Sorted circular shifts with prefix and keyword lookup
+ *
+ *  Created: 17 Oct 2026
+ *
+ *  $Id$
+ *
+ *  Description:
+ *    Sorted circular shifts with prefix and keyword lookup
+ * </file>
+*/
+
+
+
+/*
+ * $Log$
+*/
+
+import java.nio.IntBuffer;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.stream.IntStream;
+
+/**
+ *  KWICIndex keeps the circular shifts of a set of lines in alphabetical order and
+ *  answers queries for the shifts that start with a given prefix or keyword. A circular
+ *  shift is represented as the index of its original line and the index of its starting
+ *  word, i.e., a word boundary in the original lines; the sorted (line, start word) pairs
+ *  form a suffix array over the word boundaries of the lines, where each suffix wraps
+ *  around to the beginning of its line. Additionally, the index keeps the LCP array: for
+ *  each shift, the number of leading characters it has in common with the previous
+ *  shift.
+ *  <p>
+ *  A query finds the first matching shift by a binary search in O(log n) comparisons of
+ *  the query with a shift; characters that the query is known to have in common with
+ *  both search bounds are not compared again. The matching shifts are then enumerated
+ *  lazily: the next shift matches as long as its LCP is at least the length of the
+ *  query, so no further comparisons are needed.
+ *  <p>
+ *  The shifts are read from the original lines, which thus must not be changed while the
+ *  index is in use. A PackedLineStorage keeps the lines in a compact form that is well
+ *  suited for this. An index can be saved to an IndexFile and mapped back into memory
+ *  later.
+ *  @author  agent
+ *  @version $Id$
+*/
+
+public class KWICIndex implements Output.Listing {
+
+//----------------------------------------------------------------------
+/**
+ * Fields
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Marks the end of a shift, sorts before all characters
+   */
+
+  private static final int END = -1;
+
+  /**
+   * LineStorage holding the original lines
+   */
+
+  private final LineStorage lines_;
+
+  /**
+   * Original line of each shift, in sorted order
+   */
+
+  private final IntBuffer shift_lines_;
+
+  /**
+   * Starting word of each shift, in sorted order
+   */
+
+  private final IntBuffer shift_words_;
+
+  /**
+   * Length of the common prefix of each shift and the previous one
+   */
+
+  private final IntBuffer lcp_;
+
+//----------------------------------------------------------------------
+/**
+ * Constructors
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Creates an index of the circular shifts of lines, sorted by the radix
+   * sort.
+   *
+   * @param lines A set of lines
+   */
+
+  public KWICIndex(LineStorage lines) {
+    this(lines, new Alphabetizer.RadixSort());
+  }
+
+  /**
+   * Creates an index of the circular shifts of lines, sorted with the given
+   * strategy.
+   *
+   * @param lines    A set of lines
+   * @param strategy sort strategy; it must sort in String order
+   */
+
+  public KWICIndex(LineStorage lines, Alphabetizer.SortStrategy strategy) {
+    this(lines, strategy, null);
+  }
+
+  /**
+   * Creates an index of the circular shifts of lines that do not start
+   * with a stop word, sorted with the given strategy.
+   *
+   * @param lines      A set of lines
+   * @param strategy   sort strategy; it must sort in String order
+   * @param stop_words words that no shift starts with, or null
+   */
+
+  public KWICIndex(LineStorage lines, Alphabetizer.SortStrategy strategy, StopWords stop_words) {
+    this(lines, sort(lines, strategy, stop_words));
+  }
+
+  /**
+   * Creates an index of sorted shifts.
+   *
+   * @param lines  A set of lines
+   * @param shifts original lines and starting words of the shifts
+   */
+
+  private KWICIndex(LineStorage lines, int[][] shifts) {
+    this(lines, shifts[0], shifts[1]);
+  }
+
+  /**
+   * Creates an index of shifts that are already sorted. The arrays hold one
+   * entry per shift and are used by the index. The LCP array is computed.
+   *
+   * @param lines       A set of lines
+   * @param shift_lines original line of each shift
+   * @param shift_words starting word of each shift
+   */
+
+  KWICIndex(LineStorage lines, int[] shift_lines, int[] shift_words) {
+    lines_ = lines;
+    shift_lines_ = IntBuffer.wrap(shift_lines);
+    shift_words_ = IntBuffer.wrap(shift_words);
+    lcp_ = IntBuffer.allocate(shift_lines.length);
+    computeLcp();
+  }
+
+  /**
+   * Creates an index from its parts, e.g., as read from an IndexFile. The
+   * buffers hold one entry per shift, in sorted order.
+   *
+   * @param lines       A set of lines
+   * @param shift_lines original line of each shift
+   * @param shift_words starting word of each shift
+   * @param lcp         common prefix length of each shift and the previous one
+   * @see IndexFile
+   */
+
+  KWICIndex(LineStorage lines, IntBuffer shift_lines, IntBuffer shift_words, IntBuffer lcp) {
+    lines_ = lines;
+    shift_lines_ = shift_lines;
+    shift_words_ = shift_words;
+    lcp_ = lcp;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Methods
+ *
+ */
+//----------------------------------------------------------------------
+
+//----------------------------------------------------------------------
+
+  /**
+   * Produces and sorts the circular shifts of lines.
+   *
+   * @param lines      A set of lines
+   * @param strategy   sort strategy
+   * @param stop_words words that no shift starts with, or null
+   * @return the original lines and the starting words of the shifts in
+   *         sorted order
+   */
+
+  private static int[][] sort(LineStorage lines, Alphabetizer.SortStrategy strategy, StopWords stop_words) {
+    if (!strategy.isStringOrder()) {
+      throw new IllegalArgumentException("An index must be sorted in String order");
+    }
+    CircularShifter shifter = new CircularShifter();
+    shifter.setStopWords(stop_words);
+    shifter.setup(lines);
+    int[] sorted = new int[shifter.getLineCount()];
+    for (int i = 0; i < sorted.length; ++i) {
+      sorted[i] = i;
+    }
+    strategy.sort(sorted, shifter);
+
+    int[][] shifts = new int[2][sorted.length];
+    for (int i = 0; i < sorted.length; ++i) {
+      shifts[0][i] = shifter.getOriginalLine(sorted[i]);
+      shifts[1][i] = shifter.getStartWord(sorted[i]);
+    }
+    return shifts;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Computes the LCP array from the sorted shifts.
+   */
+
+  private void computeLcp() {
+    Chars previous = new Chars();
+    Chars current = new Chars();
+    for (int i = 1; i < shift_lines_.limit(); ++i) {
+      previous.seek(i - 1, 0);
+      current.seek(i, 0);
+      int length = 0;
+      for (int c = current.next(); c != END && c == previous.next(); c = current.next()) {
+        length++;
+      }
+      lcp_.put(i, length);
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the position of the first shift that does not sort before the
+   * specified String, or the number of shifts if all shifts sort before it.
+   * Shifts are compared by their String representation.
+   *
+   * @param key the String to search for
+   * @return int
+   */
+
+  public int lowerBound(String key) {
+    Chars chars = new Chars();
+    int lo = 0;
+    int hi = shift_lines_.limit();
+    int lcp_lo = 0; // common prefix of key and shift lo - 1
+    int lcp_hi = 0; // common prefix of key and shift hi
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      int skip = Math.min(lcp_lo, lcp_hi);
+      chars.seek(mid, skip);
+      int matched = skip;
+      int cmp = 0;
+      while (matched < key.length()) {
+        int c = chars.next();
+        if (c != key.charAt(matched)) {
+          cmp = c - key.charAt(matched);
+          break;
+        }
+        matched++;
+      }
+      if (cmp < 0) {
+        lo = mid + 1;
+        lcp_lo = matched;
+      } else {
+        hi = mid;
+        lcp_hi = matched;
+      }
+    }
+    return lo;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Finds all shifts whose String representation starts with the prefix.
+   * The positions of the shifts are enumerated in sorted order.
+   *
+   * @param prefix the prefix
+   * @return the positions of the matching shifts
+   * @see #findKeyword
+   */
+
+  public PrimitiveIterator.OfInt findPrefix(String prefix) {
+    return new Matches(prefix, false, null);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Finds all shifts that start with the keyword, i.e., whose first word
+   * is the keyword. The positions of the shifts are enumerated in sorted
+   * order. A keyword that contains a space character matches no shift.
+   *
+   * @param keyword the keyword
+   * @return the positions of the matching shifts
+   * @see #findPrefix
+   */
+
+  public PrimitiveIterator.OfInt findKeyword(String keyword) {
+    if (keyword.indexOf(' ') >= 0) {
+      return IntStream.empty().iterator();
+    }
+    return new Matches(keyword, true, new Matches(keyword + " ", false, null));
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the index of the original line of the shift at the specified
+   * position.
+   *
+   * @param line position in sorted order
+   * @return int
+   * @see #getStartWord
+   */
+
+  public int getOriginalLine(int line) {
+    return shift_lines_.get(line);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the index of the starting word of the shift at the specified
+   * position in its original line.
+   *
+   * @param line position in sorted order
+   * @return int
+   * @see #getOriginalLine
+   */
+
+  public int getStartWord(int line) {
+    return shift_words_.get(line);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the number of leading characters that the shift at the specified
+   * position has in common with the previous shift; 0 for the first shift.
+   *
+   * @param line position in sorted order
+   * @return int
+   */
+
+  public int getLcp(int line) {
+    return lcp_.get(line);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the character from the specified position in the specified word
+   * in a particular line.
+   *
+   * @param position character index in the word
+   * @param word     word index in the line
+   * @param line     position in sorted order
+   * @return char
+   */
+
+  public char getChar(int position, int word, int line) {
+    return lines_.getChar(position, getOriginalWord(word, line), shift_lines_.get(line));
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the number of characters in this particular word.
+   *
+   * @param word word index in the line
+   * @param line position in sorted order
+   * @return int
+   */
+
+  public int getCharCount(int word, int line) {
+    return lines_.getCharCount(getOriginalWord(word, line), shift_lines_.get(line));
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the word from the specified position in a particular line
+   * String representing the word is returned.
+   *
+   * @param word word index in the line
+   * @param line position in sorted order
+   * @return String
+   */
+
+  public String getWord(int word, int line) {
+    return lines_.getWord(getOriginalWord(word, line), shift_lines_.get(line));
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the dictionary id of the word from the specified position in a
+   * particular line. Only available if the lines implement WordIds.
+   *
+   * @param word word index in the line
+   * @param line position in sorted order
+   * @return int
+   * @see #getDictionary
+   */
+
+  public int getWordId(int word, int line) {
+    return ((WordIds) lines_).getWordId(getOriginalWord(word, line), shift_lines_.get(line));
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Tells whether the words have dictionary ids, i.e., whether the lines
+   * implement WordIds.
+   *
+   * @return boolean
+   * @see #getWordId
+   */
+
+  public boolean hasWordIds() {
+    return lines_ instanceof WordIds;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the number of words in this particular line.
+   *
+   * @param line position in sorted order
+   * @return int
+   */
+
+  public int getWordCount(int line) {
+    return lines_.getWordCount(shift_lines_.get(line));
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the line from the specified position.
+   * String array representing the line is returned.
+   *
+   * @param line position in sorted order
+   * @return String[]
+   * @see #getLineAsString
+   */
+
+  public String[] getLine(int line) {
+    String[] words = lines_.getLine(shift_lines_.get(line));
+    String[] shift = new String[words.length];
+    int start = shift_words_.get(line);
+    System.arraycopy(words, start, shift, 0, words.length - start);
+    System.arraycopy(words, 0, shift, words.length - start, start);
+    return shift;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the line from the specified position.
+   * String representing the line is returned.
+   *
+   * @param line position in sorted order
+   * @return String
+   * @see #getLine
+   */
+
+  public String getLineAsString(int line) {
+    return String.join(" ", getLine(line));
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the number of shifts.
+   *
+   * @return int
+   */
+
+  public int getLineCount() {
+    return shift_lines_.limit();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the LineStorage holding the original lines.
+   *
+   * @return LineStorage
+   */
+
+  public LineStorage getLines() {
+    return lines_;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the dictionary holding the words of the lines, or null if the
+   * lines do not implement WordIds.
+   *
+   * @return WordDictionary
+   */
+
+  public WordDictionary getDictionary() {
+    return (lines_ instanceof WordIds) ? ((WordIds) lines_).getDictionary() : null;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Maps a word index of a shift to the word index in its original line.
+   *
+   * @param word word index in the shift
+   * @param line position in sorted order
+   * @return int
+   */
+
+  private int getOriginalWord(int word, int line) {
+    int original = shift_words_.get(line) + word;
+    int count = lines_.getWordCount(shift_lines_.get(line));
+    return (original < count) ? original : original - count;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Inner classes
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Chars walks through the String representation of a shift, i.e., its
+   * words separated by single space characters, without building that
+   * String.
+   */
+
+  private final class Chars {
+
+    private int line_;
+
+    private int word_;
+
+    private int position_;
+
+    private int length_;
+
+    private int count_;
+
+    /**
+     * Moves to a character of a shift.
+     *
+     * @param line   position of the shift in sorted order
+     * @param offset index of the character in the String representation
+     */
+
+    void seek(int line, int offset) {
+      line_ = line;
+      word_ = 0;
+      count_ = getWordCount(line);
+      length_ = (count_ > 0) ? getCharCount(0, line) : 0;
+      while (offset > length_ && word_ + 1 < count_) {
+        offset -= length_ + 1;
+        word_++;
+        length_ = getCharCount(word_, line);
+      }
+      position_ = offset;
+    }
+
+    /**
+     * Gets the current character and moves to the next one.
+     *
+     * @return the character, or END at the end of the shift
+     */
+
+    int next() {
+      if (position_ < length_) {
+        return getChar(position_++, word_, line_);
+      }
+      if (word_ + 1 >= count_ || position_ > length_) {
+        return END;
+      }
+      word_++;
+      position_ = 0;
+      length_ = getCharCount(word_, line_);
+      return ' ';
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Matches enumerates the shifts that start with a String, or that are
+   * equal to it, from the first one found by lowerBound on. Further matches
+   * follow as long as their LCP is not less than the length of the String.
+   * When the matches are exhausted, the enumeration continues with the
+   * next Matches, if any.
+   */
+
+  private final class Matches implements PrimitiveIterator.OfInt {
+
+    private final int length_;
+
+    private final boolean exact_;
+
+    private final Matches then_;
+
+    private int next_;
+
+    Matches(String key, boolean exact, Matches then) {
+      length_ = key.length();
+      exact_ = exact;
+      then_ = then;
+      next_ = lowerBound(key);
+      if (next_ < shift_lines_.limit()) {
+        Chars chars = new Chars();
+        chars.seek(next_, 0);
+        for (int i = 0; i < length_ && next_ >= 0; ++i) {
+          if (chars.next() != key.charAt(i)) {
+            next_ = -1;
+          }
+        }
+      }
+      if (!matches(next_)) {
+        next_ = -1;
+      }
+    }
+
+    private boolean matches(int line) {
+      if (line < 0 || line >= shift_lines_.limit()) {
+        return false;
+      }
+      if (!exact_) {
+        return true;
+      }
+      int length = getWordCount(line) - 1;
+      for (int word = 0; word < getWordCount(line) && length <= length_; ++word) {
+        length += getCharCount(word, line);
+      }
+      return length == length_;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next_ >= 0 || (then_ != null && then_.hasNext());
+    }
+
+    @Override
+    public int nextInt() {
+      if (next_ < 0) {
+        if (then_ == null) {
+          throw new NoSuchElementException();
+        }
+        return then_.nextInt();
+      }
+      int line = next_++;
+      if (next_ >= shift_lines_.limit() || lcp_.get(next_) < length_ || !matches(next_)) {
+        next_ = -1;
+      }
+      return line;
+    }
+  }
+
+//----------------------------------------------------------------------
+
+}
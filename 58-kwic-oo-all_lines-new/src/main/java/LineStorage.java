@@ -270,6 +270,26 @@ public class LineStorage {
     lines_.get(line).add(chars);
   }
 
+//----------------------------------------------------------------------
+
+  /**
+   * Adds a word at the end of the specified line. The word consists of count
+   * characters of the array, starting at offset.
+   *
+   * @param chars  characters of the new word
+   * @param offset index of the first character of the word
+   * @param count  number of characters in the word
+   * @param line   line index
+   * @see #addEmptyWord
+   * @see #setWord
+   * @see #getWord
+   * @see #deleteWord
+   */
+
+  public void addWord(char[] chars, int offset, int count, int line) {
+    lines_.get(line).add(new String(chars, offset, count));
+  }
+
 //----------------------------------------------------------------------
 
   /**
@@ -0,0 +1,529 @@
+// -*- Java -*-
+/*
+ * <copyright>
+ *
+ *  Copyright (c) 2026 agent
+ *
+ * </copyright>
+ *
+ * <file>
+ *
+ *  Name:    MappedLineStorage.java
+ *
+ *  Purpose: Read-only LineStorage over buffers of an index file
+ *
+ *  Created: 17 Oct 2026
+ *
+ *  $Id$
+ *
+ *  Description:
+ *    Read-only LineStorage over buffers of an index file
+ * </file>
+*/
+
+
+
+/*
+ * $Log$
+*/
+
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+
+/**
+ *  MappedLineStorage provides the reading part of the LineStorage interface for lines
+ *  that are kept in buffers, typically buffers mapped from an IndexFile. Like in the
+ *  DictionaryLineStorage, each line is a sequence of word ids, and each distinct word is
+ *  stored once; here, all distinct words are kept in a single character buffer, and a
+ *  second buffer keeps the index of the first character of each word. Nothing is
+ *  copied from the buffers when the storage is created, so a mapped index file is
+ *  ready for use at once; a WordDictionary of the distinct words is only created when
+ *  it is asked for. The storage cannot be changed; all methods that would change
+ *  it throw an UnsupportedOperationException.
+ *  @author  agent
+ *  @version $Id$
+ *  @see IndexFile
+*/
+
+public class MappedLineStorage extends LineStorage implements WordIds {
+
+//----------------------------------------------------------------------
+/**
+ * Fields
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Characters of all distinct words, word after word
+   */
+
+  private final CharBuffer chars_;
+
+  /**
+   * Index of the first character of each word in chars_, plus the end of
+   * the last word
+   */
+
+  private final IntBuffer word_index_;
+
+  /**
+   * Ids of all words, line after line
+   */
+
+  private final IntBuffer words_;
+
+  /**
+   * Index of the first word of each line in words_, plus the end of the
+   * last line
+   */
+
+  private final IntBuffer line_index_;
+
+  /**
+   * Dictionary of the distinct words, created on first use
+   */
+
+  private WordDictionary dictionary_;
+
+//----------------------------------------------------------------------
+/**
+ * Constructors
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Creates a storage over the given buffers. The buffers must not be
+   * changed afterwards.
+   *
+   * @param chars      characters of all distinct words
+   * @param word_index index of the first character of each word, plus the
+   *                   end of the last word
+   * @param words      ids of all words, line after line
+   * @param line_index index of the first word of each line, plus the end of
+   *                   the last line
+   */
+
+  public MappedLineStorage(CharBuffer chars, IntBuffer word_index, IntBuffer words, IntBuffer line_index) {
+    chars_ = chars;
+    word_index_ = word_index;
+    words_ = words;
+    line_index_ = line_index;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Methods
+ *
+ */
+//----------------------------------------------------------------------
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the character from the specified position in the specified word
+   * in a particular line.
+   *
+   * @param position character index in the word
+   * @param word     word index in the line
+   * @param line     line index
+   * @return char
+   */
+
+  @Override
+  public char getChar(int position, int word, int line) {
+    return chars_.get(word_index_.get(getWordId(word, line)) + position);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the number of characters in this particular word.
+   *
+   * @param word word index in the line
+   * @param line line index
+   * @return int
+   */
+
+  @Override
+  public int getCharCount(int word, int line) {
+    int id = getWordId(word, line);
+    return word_index_.get(id + 1) - word_index_.get(id);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the word from the specified position in a particular line
+   * String representing the word is returned.
+   *
+   * @param word word index in the line
+   * @param line line index
+   * @return String
+   */
+
+  @Override
+  public String getWord(int word, int line) {
+    return getDistinctWord(getWordId(word, line));
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the number of words in this particular line.
+   *
+   * @param line line index
+   * @return int
+   */
+
+  @Override
+  public int getWordCount(int line) {
+    return line_index_.get(line + 1) - line_index_.get(line);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the line from the specified position.
+   * String array representing the line is returned.
+   *
+   * @param line line index
+   * @return String[]
+   * @see #getLineAsString
+   */
+
+  @Override
+  public String[] getLine(int line) {
+    String[] words = new String[getWordCount(line)];
+    for (int i = 0; i < words.length; ++i) {
+      words[i] = getWord(i, line);
+    }
+    return words;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the line from the specified position.
+   * String representing the line is returned.
+   *
+   * @param line line index
+   * @return String
+   * @see #getLine
+   */
+
+  @Override
+  public String getLineAsString(int line) {
+    return String.join(" ", getLine(line));
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the number of lines.
+   *
+   * @return int
+   */
+
+  @Override
+  public int getLineCount() {
+    return line_index_.limit() - 1;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the id of the word from the specified position in a particular
+   * line. The ids index the distinct words of the storage.
+   *
+   * @param word word index in the line
+   * @param line line index
+   * @return int
+   * @see #getDistinctWord
+   */
+
+  @Override
+  public int getWordId(int word, int line) {
+    if (word < 0 || word >= getWordCount(line)) {
+      throw new IndexOutOfBoundsException("Word " + word + " in line " + line);
+    }
+    return words_.get(line_index_.get(line) + word);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets a dictionary of the distinct words, in which each word has the
+   * same id as in this storage. The dictionary is created on first use.
+   *
+   * @return WordDictionary
+   */
+
+  @Override
+  public synchronized WordDictionary getDictionary() {
+    if (dictionary_ == null) {
+      WordDictionary dictionary = new WordDictionary();
+      for (int id = 0; id < getDistinctWordCount(); ++id) {
+        dictionary.intern(getDistinctWord(id));
+      }
+      dictionary_ = dictionary;
+    }
+    return dictionary_;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the distinct word with the specified id.
+   *
+   * @param id word id
+   * @return String
+   * @see #getWordId
+   */
+
+  public String getDistinctWord(int id) {
+    return chars_.subSequence(word_index_.get(id), word_index_.get(id + 1)).toString();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the number of distinct words.
+   *
+   * @return int
+   */
+
+  public int getDistinctWordCount() {
+    return word_index_.limit() - 1;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Not supported, the storage is read-only.
+   *
+   * @throws UnsupportedOperationException always
+   */
+
+  @Override
+  public void setChar(char c, int position, int word, int line) {
+    throw readOnly();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Not supported, the storage is read-only.
+   *
+   * @throws UnsupportedOperationException always
+   */
+
+  @Override
+  public void addChar(char c, int word, int line) {
+    throw readOnly();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Not supported, the storage is read-only.
+   *
+   * @throws UnsupportedOperationException always
+   */
+
+  @Override
+  public void deleteChar(int position, int word, int line) {
+    throw readOnly();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Not supported, the storage is read-only.
+   *
+   * @throws UnsupportedOperationException always
+   */
+
+  @Override
+  public void setWord(char[] chars, int word, int line) {
+    throw readOnly();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Not supported, the storage is read-only.
+   *
+   * @throws UnsupportedOperationException always
+   */
+
+  @Override
+  public void setWord(String chars, int word, int line) {
+    throw readOnly();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Not supported, the storage is read-only.
+   *
+   * @throws UnsupportedOperationException always
+   */
+
+  @Override
+  public void addWord(char[] chars, int line) {
+    throw readOnly();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Not supported, the storage is read-only.
+   *
+   * @throws UnsupportedOperationException always
+   */
+
+  @Override
+  public void addWord(String chars, int line) {
+    throw readOnly();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Not supported, the storage is read-only.
+   *
+   * @throws UnsupportedOperationException always
+   */
+
+  @Override
+  public void addWord(char[] chars, int offset, int count, int line) {
+    throw readOnly();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Not supported, the storage is read-only.
+   *
+   * @throws UnsupportedOperationException always
+   */
+
+  @Override
+  public void addEmptyWord(int line) {
+    throw readOnly();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Not supported, the storage is read-only.
+   *
+   * @throws UnsupportedOperationException always
+   */
+
+  @Override
+  public void deleteWord(int word, int line) {
+    throw readOnly();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Not supported, the storage is read-only.
+   *
+   * @throws UnsupportedOperationException always
+   */
+
+  @Override
+  public void setLine(char[][] words, int line) {
+    throw readOnly();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Not supported, the storage is read-only.
+   *
+   * @throws UnsupportedOperationException always
+   */
+
+  @Override
+  public void setLine(String[] words, int line) {
+    throw readOnly();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Not supported, the storage is read-only.
+   *
+   * @throws UnsupportedOperationException always
+   */
+
+  @Override
+  public void addLine(char[][] words) {
+    throw readOnly();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Not supported, the storage is read-only.
+   *
+   * @throws UnsupportedOperationException always
+   */
+
+  @Override
+  public void addLine(String[] words) {
+    throw readOnly();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Not supported, the storage is read-only.
+   *
+   * @throws UnsupportedOperationException always
+   */
+
+  @Override
+  public void addEmptyLine() {
+    throw readOnly();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Not supported, the storage is read-only.
+   *
+   * @throws UnsupportedOperationException always
+   */
+
+  @Override
+  public void deleteLine(int line) {
+    throw readOnly();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Creates the exception thrown by all methods that would change the
+   * storage.
+   *
+   * @return UnsupportedOperationException
+   */
+
+  private static UnsupportedOperationException readOnly() {
+    return new UnsupportedOperationException("MappedLineStorage is read-only");
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Inner classes
+ *
+ */
+//----------------------------------------------------------------------
+
+}
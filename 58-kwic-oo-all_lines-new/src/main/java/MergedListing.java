@@ -0,0 +1,456 @@
+// -*- Java -*-
+/*
+ * <copyright>
+ *
+ *  Copyright (c) 2026 agent
+ *
+ * </copyright>
+ *
+ * <file>
+ *
+ *  Name:    MergedListing.java
+ *
+ *  Purpose: Merges the sorted listings of several documents
+ *
+ *  Created: 17 Oct 2026
+ *
+ *  $Id$
+ *
+ *  Description:
+ *    Merges the sorted listings of several documents
+ * </file>
+*/
+
+
+
+/*
+ * $Log$
+*/
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+
+/**
+ *  A MergedListing combines the sorted shifts of several documents into one listing by
+ *  a streaming k-way merge, instead of sorting the shifts of all documents again. Each
+ *  document gets an id, in the order the documents are added, and every merged shift
+ *  comes with the id of its document. The documents may be given as
+ *  <ul>
+ *  <li>an Alphabetizer that has sorted the shifts of the document,
+ *  <li>a listing file, as printed by Output for one document, plain or front-coded
+ *  (see FrontCodedListing), or
+ *  <li>a merged listing file saved by a MergedListing, which brings all of its documents.
+ *  </ul>
+ *  Adding a document to a large collection thus takes one linear merge: add the saved
+ *  collection, add the new document and save the result. Equal shifts are ordered by
+ *  document id, so the listing is the same as that of all documents concatenated.
+ *  <p>
+ *  A merged listing file starts with the line "#kwic-merged n" for n documents; each
+ *  further line holds a document id, a tab character and a shift.
+ *  @author  agent
+ *  @version $Id$
+*/
+
+public class MergedListing {
+
+//----------------------------------------------------------------------
+/**
+ * Fields
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * First line of a merged listing file, followed by the number of documents
+   */
+
+  private static final String HEADER = "#kwic-merged ";
+
+  /**
+   * Opens the cursors over the documents, in the order they were added
+   */
+
+  private final ArrayList<Source> sources_ = new ArrayList<>();
+
+  /**
+   * Number of documents
+   */
+
+  private int document_count_;
+
+//----------------------------------------------------------------------
+/**
+ * Constructors
+ *
+ */
+//----------------------------------------------------------------------
+
+//----------------------------------------------------------------------
+/**
+ * Methods
+ *
+ */
+//----------------------------------------------------------------------
+
+//----------------------------------------------------------------------
+
+  /**
+   * Adds a document whose shifts have been sorted in String order. The
+   * Alphabetizer must not be changed until the listing is merged.
+   *
+   * @param alphabetizer the sorted shifts of the document
+   * @return the document id
+   */
+
+  public int add(Alphabetizer alphabetizer) {
+    if (!alphabetizer.getSortStrategy().isStringOrder()) {
+      throw new IllegalArgumentException("Listings can be merged in String order only");
+    }
+    int document = document_count_++;
+    sources_.add(() -> new AlphabetizerCursor(alphabetizer, document));
+    return document;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Adds a document whose listing has been saved, one shift per line, in
+   * sorted order, or as a FrontCodedListing. The file is read when the
+   * listing is merged.
+   *
+   * @param file name of the listing file
+   * @return the document id
+   */
+
+  public int add(String file) {
+    int document = document_count_++;
+    sources_.add(() -> FrontCodedListing.isFrontCoded(file)
+        ? new FrontCodedCursor(file, document) : new ListingCursor(file, document, false));
+    return document;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Adds all documents of a saved merged listing. Their ids are shifted by
+   * the number of documents added before. If an I/O exception occurs, an
+   * error message is shown and program exits.
+   *
+   * @param file name of the merged listing file
+   * @return the id of the first document of the file
+   * @see #save
+   */
+
+  public int addMerged(String file) {
+    int first = document_count_;
+    try (BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+      String header = reader.readLine();
+      if (header == null || !header.startsWith(HEADER)) {
+        throw new IOException("Not a merged listing: " + file);
+      }
+      document_count_ += Integer.parseInt(header.substring(HEADER.length()).trim());
+    } catch (IOException | NumberFormatException exc) {
+      exc.printStackTrace();
+      System.err.println("KWIC Error: Could not read " + file + " file.");
+      System.exit(1);
+    }
+    sources_.add(() -> new ListingCursor(file, first, true));
+    return first;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the number of documents.
+   *
+   * @return int
+   */
+
+  public int getDocumentCount() {
+    return document_count_;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Merges the documents and passes their shifts in sorted order to the
+   * sink. If an I/O exception occurs, an error message is shown and
+   * program exits.
+   *
+   * @param sink receives the merged shifts
+   */
+
+  public void merge(Sink sink) {
+    PriorityQueue<Cursor> queue = new PriorityQueue<>(Math.max(1, sources_.size()));
+    try {
+      for (int i = 0; i < sources_.size(); ++i) {
+        Cursor cursor = sources_.get(i).open();
+        if (cursor.next()) {
+          queue.add(cursor);
+        } else {
+          cursor.close();
+        }
+      }
+      while (!queue.isEmpty()) {
+        Cursor cursor = queue.poll();
+        sink.accept(cursor.document_, cursor.line_);
+        if (cursor.next()) {
+          queue.add(cursor);
+        } else {
+          cursor.close();
+        }
+      }
+    } catch (IOException exc) {
+      exc.printStackTrace();
+      System.err.println("KWIC Error: Could not merge the listings.");
+      System.exit(1);
+    } finally {
+      for (Cursor cursor : queue) {
+        cursor.close();
+      }
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Prints the merged shifts, without document ids.
+   *
+   * @param output prints the shifts
+   */
+
+  public void print(Output output) {
+    merge((document, line) -> output.print(line));
+    output.flush();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Saves the merged listing with the document ids. The file is replaced
+   * only once it has been written completely, so it may be one of the
+   * merged files itself. If an I/O exception occurs, an error message is
+   * shown and program exits.
+   *
+   * @param file name of the merged listing file
+   * @see #addMerged
+   */
+
+  public void save(String file) {
+    Path target = Paths.get(file).toAbsolutePath();
+    Path temp = null;
+    try {
+      temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+      try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+        writer.write(HEADER + document_count_ + "\n");
+        merge((document, line) -> {
+          writer.write(Integer.toString(document));
+          writer.write('\t');
+          writer.write(line);
+          writer.write('\n');
+        });
+      }
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException exc) {
+      exc.printStackTrace();
+      System.err.println("KWIC Error: Could not write " + file + " file.");
+      System.exit(1);
+    } finally {
+      if (temp != null) {
+        new File(temp.toString()).delete();
+      }
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Inner classes
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Receives merged shifts.
+   */
+
+  public interface Sink {
+
+    /**
+     * Receives the next shift.
+     *
+     * @param document id of the document of the shift
+     * @param line     the shift
+     * @throws IOException if the shift cannot be written
+     */
+
+    void accept(int document, String line) throws IOException;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Opens a cursor over the shifts of a source.
+   */
+
+  private interface Source {
+    Cursor open() throws IOException;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Reads the shifts of a source one after another. Cursors are ordered by
+   * their current shift and then by document id.
+   */
+
+  private abstract static class Cursor implements Comparable<Cursor> {
+
+    String line_;
+
+    int document_;
+
+    abstract boolean next() throws IOException;
+
+    void close() {
+    }
+
+    @Override
+    public int compareTo(Cursor o) {
+      int cmp = line_.compareTo(o.line_);
+      return (cmp != 0) ? cmp : Integer.compare(document_, o.document_);
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Reads the shifts of an Alphabetizer.
+   */
+
+  private static class AlphabetizerCursor extends Cursor {
+
+    private final Alphabetizer alphabetizer_;
+
+    private int position_;
+
+    AlphabetizerCursor(Alphabetizer alphabetizer, int document) {
+      alphabetizer_ = alphabetizer;
+      document_ = document;
+    }
+
+    @Override
+    boolean next() {
+      if (position_ == alphabetizer_.getLineCount()) {
+        return false;
+      }
+      line_ = alphabetizer_.getLineAsString(position_++);
+      return true;
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Reads the shifts of a listing file or of a merged listing file.
+   */
+
+  private static class ListingCursor extends Cursor {
+
+    private final BufferedReader reader_;
+
+    private final int first_;
+
+    private final boolean merged_;
+
+    ListingCursor(String file, int first, boolean merged) throws IOException {
+      reader_ = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8);
+      first_ = first;
+      merged_ = merged;
+      document_ = first;
+      if (merged) {
+        reader_.readLine();
+      }
+    }
+
+    @Override
+    boolean next() throws IOException {
+      String line = reader_.readLine();
+      if (line == null) {
+        return false;
+      }
+      if (merged_) {
+        int tab = line.indexOf('\t');
+        document_ = first_ + Integer.parseInt(line.substring(0, tab));
+        line = line.substring(tab + 1);
+      }
+      line_ = line;
+      return true;
+    }
+
+    @Override
+    void close() {
+      try {
+        reader_.close();
+      } catch (IOException exc) {
+        // nothing was written, so nothing is lost
+      }
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Reads the shifts of a front-coded listing file.
+   */
+
+  private static class FrontCodedCursor extends Cursor {
+
+    private final InputStream in_;
+
+    private final FrontCodedListing.Decoder decoder_;
+
+    FrontCodedCursor(String file, int document) throws IOException {
+      in_ = new FileInputStream(file);
+      try {
+        decoder_ = FrontCodedListing.Decoder.open(in_);
+      } catch (IOException exc) {
+        in_.close();
+        throw exc;
+      }
+      document_ = document;
+    }
+
+    @Override
+    boolean next() throws IOException {
+      if (!decoder_.next()) {
+        return false;
+      }
+      line_ = decoder_.getLine();
+      return true;
+    }
+
+    @Override
+    void close() {
+      try {
+        in_.close();
+      } catch (IOException exc) {
+        // nothing was written, so nothing is lost
+      }
+    }
+  }
+
+//----------------------------------------------------------------------
+
+}
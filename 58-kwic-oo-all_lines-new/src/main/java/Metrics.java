@@ -0,0 +1,641 @@
+// -*- Java -*-
+/*
+ * <copyright>
+ *
+ *  Copyright (c) 2026 agent
+ *
+ * </copyright>
+ *
+ * <file>
+ *
+ *  Name:    Metrics.java
+ *
+ *  Purpose: Records what each stage of a KWIC execution costs
+ *
+ *  Created: 17 Oct 2026
+ *
+ *  $Id$
+ *
+ *  Description:
+ *    Records what each stage of a KWIC execution costs
+ * </file>
+*/
+
+
+
+/*
+ * $Log$
+*/
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ *  Metrics records what one execution of the KWIC system costs. For each stage (parse,
+ *  shift, sort, output, ...) it keeps the wall time and the bytes allocated by the
+ *  executing thread; work done in the thread pools of the parallel stages is timed, but
+ *  its allocations are not counted. It also keeps the numbers of lines, words, circular
+ *  shifts and shift comparisons, and an estimate of the peak size of the line storage
+ *  (see Input.LINE_BYTES). A count is -1 where it is not known, e.g., the comparisons
+ *  of a sort strategy that does not compare whole shifts.
+ *  <p>
+ *  A Metrics object is created only if a Listener is registered with the KWIC object,
+ *  so an execution without listeners does not measure anything. The listeners are
+ *  notified after each stage and after the execution. JsonReport writes the metrics to
+ *  a file, and Publisher exposes them as a JMX MXBean.
+ *  @author  agent
+ *  @version $Id$
+*/
+
+public class Metrics {
+
+//----------------------------------------------------------------------
+/**
+ * Fields
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Stage names
+   */
+
+  public static final String PARSE = "parse";
+
+  public static final String SHIFT = "shift";
+
+  public static final String SORT = "sort";
+
+  public static final String OUTPUT = "output";
+
+  public static final String INDEX = "index";
+
+  public static final String EXTERNAL_SORT = "external-sort";
+
+  /**
+   * Measures the bytes allocated by a thread, or null if the JVM cannot
+   */
+
+  private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+  /**
+   * Notified after each stage and after the execution
+   */
+
+  private final List<Listener> listeners_;
+
+  /**
+   * Names of the finished stages
+   */
+
+  private String[] stages_ = new String[4];
+
+  /**
+   * Wall time of each finished stage in nanoseconds
+   */
+
+  private long[] nanos_ = new long[4];
+
+  /**
+   * Bytes allocated by each finished stage, or -1
+   */
+
+  private long[] allocated_ = new long[4];
+
+  /**
+   * Number of finished stages
+   */
+
+  private int stage_count_;
+
+  /**
+   * Stage that is running, or null
+   */
+
+  private String stage_;
+
+  private long start_nanos_;
+
+  private long start_bytes_;
+
+  private long lines_ = -1;
+
+  private long words_ = -1;
+
+  private long shifts_ = -1;
+
+  private long comparisons_ = -1;
+
+  private long storage_bytes_ = -1;
+
+//----------------------------------------------------------------------
+/**
+ * Constructors
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Creates the Metrics of one execution.
+   *
+   * @param listeners notified after each stage and after the execution
+   */
+
+  Metrics(List<Listener> listeners) {
+    listeners_ = listeners;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Methods
+ *
+ */
+//----------------------------------------------------------------------
+
+//----------------------------------------------------------------------
+
+  /**
+   * Starts measuring a stage.
+   *
+   * @param stage stage name
+   */
+
+  void begin(String stage) {
+    stage_ = stage;
+    start_bytes_ = allocatedBytes();
+    start_nanos_ = System.nanoTime();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Stops measuring the running stage and notifies the listeners.
+   */
+
+  void end() {
+    long nanos = System.nanoTime() - start_nanos_;
+    long bytes = allocatedBytes();
+    if (stage_count_ == stages_.length) {
+      stages_ = Arrays.copyOf(stages_, stage_count_ * 2);
+      nanos_ = Arrays.copyOf(nanos_, stage_count_ * 2);
+      allocated_ = Arrays.copyOf(allocated_, stage_count_ * 2);
+    }
+    stages_[stage_count_] = stage_;
+    nanos_[stage_count_] = nanos;
+    allocated_[stage_count_] = (bytes < 0 || start_bytes_ < 0) ? -1 : bytes - start_bytes_;
+    stage_count_++;
+    String stage = stage_;
+    stage_ = null;
+    for (Listener listener : listeners_) {
+      listener.stageFinished(this, stage);
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Notifies the listeners that the execution is finished.
+   */
+
+  void finish() {
+    for (Listener listener : listeners_) {
+      listener.executed(this);
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Counts the lines and words of a line storage and updates the peak
+   * storage size.
+   *
+   * @param lines the line storage
+   */
+
+  void count(LineStorage lines) {
+    long words = 0;
+    long chars = 0;
+    for (int line = 0; line < lines.getLineCount(); ++line) {
+      int count = lines.getWordCount(line);
+      words += count;
+      for (int word = 0; word < count; ++word) {
+        chars += lines.getCharCount(word, line);
+      }
+    }
+    lines_ = lines.getLineCount();
+    words_ = words;
+    long bytes = lines_ * Input.LINE_BYTES + words * Input.WORD_BYTES + chars * Input.CHAR_BYTES;
+    storage_bytes_ = Math.max(storage_bytes_, bytes);
+  }
+
+//----------------------------------------------------------------------
+
+  void setShiftCount(long shifts) {
+    shifts_ = shifts;
+  }
+
+//----------------------------------------------------------------------
+
+  void setComparisonCount(long comparisons) {
+    comparisons_ = comparisons;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the number of finished stages.
+   *
+   * @return int
+   */
+
+  public int getStageCount() {
+    return stage_count_;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the name of a finished stage.
+   *
+   * @param stage stage number, in the order the stages ran
+   * @return String
+   */
+
+  public String getStage(int stage) {
+    return stages_[stage];
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the wall time of a finished stage.
+   *
+   * @param stage stage number
+   * @return nanoseconds
+   */
+
+  public long getNanos(int stage) {
+    return nanos_[stage];
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the bytes allocated by the executing thread during a finished
+   * stage.
+   *
+   * @param stage stage number
+   * @return bytes, or -1 if the JVM cannot measure them
+   */
+
+  public long getAllocatedBytes(int stage) {
+    return allocated_[stage];
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the wall time of all finished stages with the specified name.
+   *
+   * @param stage stage name
+   * @return nanoseconds, or -1 if no such stage has finished
+   */
+
+  public long getNanos(String stage) {
+    long nanos = -1;
+    for (int i = 0; i < stage_count_; ++i) {
+      if (stages_[i].equals(stage)) {
+        nanos = Math.max(nanos, 0) + nanos_[i];
+      }
+    }
+    return nanos;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the wall time of all finished stages.
+   *
+   * @return nanoseconds
+   */
+
+  public long getTotalNanos() {
+    long nanos = 0;
+    for (int i = 0; i < stage_count_; ++i) {
+      nanos += nanos_[i];
+    }
+    return nanos;
+  }
+
+//----------------------------------------------------------------------
+
+  public long getLineCount() {
+    return lines_;
+  }
+
+//----------------------------------------------------------------------
+
+  public long getWordCount() {
+    return words_;
+  }
+
+//----------------------------------------------------------------------
+
+  public long getShiftCount() {
+    return shifts_;
+  }
+
+//----------------------------------------------------------------------
+
+  public long getComparisonCount() {
+    return comparisons_;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the estimated peak size of the line storage.
+   *
+   * @return bytes, or -1 if not known
+   * @see Input#LINE_BYTES
+   */
+
+  public long getPeakStorageBytes() {
+    return storage_bytes_;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the metrics as a JSON object.
+   *
+   * @return String
+   */
+
+  public String toJson() {
+    StringBuilder json = new StringBuilder("{\"stages\":[");
+    for (int i = 0; i < stage_count_; ++i) {
+      json.append((i > 0) ? "," : "")
+          .append("{\"name\":\"").append(stages_[i])
+          .append("\",\"nanos\":").append(nanos_[i])
+          .append(",\"allocatedBytes\":").append(allocated_[i]).append('}');
+    }
+    return json.append("],\"totalNanos\":").append(getTotalNanos())
+               .append(",\"lines\":").append(lines_)
+               .append(",\"words\":").append(words_)
+               .append(",\"shifts\":").append(shifts_)
+               .append(",\"comparisons\":").append(comparisons_)
+               .append(",\"peakStorageBytes\":").append(storage_bytes_)
+               .append('}').toString();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the bytes allocated so far by the current thread.
+   *
+   * @return bytes, or -1 if the JVM cannot measure them
+   */
+
+  private static long allocatedBytes() {
+    return (THREADS != null) ? THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the ThreadMXBean if it can measure allocated bytes.
+   *
+   * @return ThreadMXBean, or null
+   */
+
+  private static com.sun.management.ThreadMXBean threads() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) threads;
+      if (sun.isThreadAllocatedMemorySupported() && sun.isThreadAllocatedMemoryEnabled()) {
+        return sun;
+      }
+    }
+    return null;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Inner classes
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * A Listener is notified of the metrics of KWIC executions.
+   *
+   * @see KWIC#addMetricsListener
+   */
+
+  public interface Listener {
+
+    /**
+     * Called after each stage of an execution.
+     *
+     * @param metrics metrics of the execution so far
+     * @param stage   name of the finished stage
+     */
+
+    default void stageFinished(Metrics metrics, String stage) {
+    }
+
+    /**
+     * Called after an execution.
+     *
+     * @param metrics metrics of the execution
+     */
+
+    void executed(Metrics metrics);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * JsonReport writes the metrics of each execution to a file as a JSON
+   * object, replacing the metrics of the previous execution.
+   */
+
+  public static class JsonReport implements Listener {
+
+    private final String file_;
+
+    /**
+     * Creates a JsonReport.
+     *
+     * @param file name of the report file
+     */
+
+    public JsonReport(String file) {
+      file_ = file;
+    }
+
+    @Override
+    public void executed(Metrics metrics) {
+      try (Writer writer = new FileWriter(file_)) {
+        writer.write(metrics.toJson());
+        writer.write(System.lineSeparator());
+      } catch (IOException exc) {
+        exc.printStackTrace();
+        System.err.println("KWIC Error: Could not write " + file_ + " file.");
+        System.exit(1);
+      }
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * The management interface of a Publisher.
+   */
+
+  public interface PublisherMXBean {
+
+    long getExecutionCount();
+
+    Map<String, Long> getLastStageNanos();
+
+    Map<String, Long> getLastStageAllocatedBytes();
+
+    long getLastTotalNanos();
+
+    long getLastLineCount();
+
+    long getLastWordCount();
+
+    long getLastShiftCount();
+
+    long getLastComparisonCount();
+
+    long getLastPeakStorageBytes();
+
+    String getLastReport();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Publisher exposes the metrics of the last execution as an MXBean named
+   * "KWIC:type=Metrics" on the platform MBean server.
+   */
+
+  public static class Publisher implements Listener, PublisherMXBean {
+
+    /**
+     * Name of the MXBean
+     */
+
+    public static final String NAME = "KWIC:type=Metrics";
+
+    private volatile Metrics last_;
+
+    private volatile long executions_;
+
+    /**
+     * Creates a Publisher and registers it with the platform MBean server,
+     * replacing an MXBean of the same name.
+     */
+
+    public Publisher() {
+      try {
+        ObjectName name = new ObjectName(NAME);
+        if (ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+          ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+      } catch (JMException exc) {
+        throw new IllegalStateException("Could not register " + NAME, exc);
+      }
+    }
+
+    @Override
+    public synchronized void executed(Metrics metrics) {
+      last_ = metrics;
+      executions_++;
+    }
+
+    @Override
+    public long getExecutionCount() {
+      return executions_;
+    }
+
+    @Override
+    public Map<String, Long> getLastStageNanos() {
+      Map<String, Long> stages = new LinkedHashMap<>();
+      Metrics last = last_;
+      for (int i = 0; last != null && i < last.getStageCount(); ++i) {
+        stages.merge(last.getStage(i), last.getNanos(i), Long::sum);
+      }
+      return stages;
+    }
+
+    @Override
+    public Map<String, Long> getLastStageAllocatedBytes() {
+      Map<String, Long> stages = new LinkedHashMap<>();
+      Metrics last = last_;
+      for (int i = 0; last != null && i < last.getStageCount(); ++i) {
+        stages.merge(last.getStage(i), last.getAllocatedBytes(i), Long::sum);
+      }
+      return stages;
+    }
+
+    @Override
+    public long getLastTotalNanos() {
+      Metrics last = last_;
+      return (last != null) ? last.getTotalNanos() : -1;
+    }
+
+    @Override
+    public long getLastLineCount() {
+      Metrics last = last_;
+      return (last != null) ? last.getLineCount() : -1;
+    }
+
+    @Override
+    public long getLastWordCount() {
+      Metrics last = last_;
+      return (last != null) ? last.getWordCount() : -1;
+    }
+
+    @Override
+    public long getLastShiftCount() {
+      Metrics last = last_;
+      return (last != null) ? last.getShiftCount() : -1;
+    }
+
+    @Override
+    public long getLastComparisonCount() {
+      Metrics last = last_;
+      return (last != null) ? last.getComparisonCount() : -1;
+    }
+
+    @Override
+    public long getLastPeakStorageBytes() {
+      Metrics last = last_;
+      return (last != null) ? last.getPeakStorageBytes() : -1;
+    }
+
+    @Override
+    public String getLastReport() {
+      Metrics last = last_;
+      return (last != null) ? last.toJson() : null;
+    }
+  }
+
+//----------------------------------------------------------------------
+
+}
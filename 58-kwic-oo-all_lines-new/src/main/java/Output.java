@@ -29,8 +29,20 @@
  * $Log$
 */
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
 /**
  *  An instance of the Output class prints sorted lines in nice format.
+ *  The lines are encoded in UTF-8 and collected in a buffer, which is written to the sink
+ *  (the standard output, any OutputStream, or any WritableByteChannel) whenever it is full,
+ *  and at the end of each listing. Lines are separated by the line separator of the
+ *  platform. The characters are encoded straight from the words; if the words have ids
+ *  (see WordIds), each distinct word is encoded only once.
  *  @author  dhelic
  *  @version $Id$
 */
@@ -44,6 +56,54 @@ public class Output {
  */
 //----------------------------------------------------------------------
 
+  /**
+   * Size of the output buffer
+   */
+
+  private static final int BUFFER_SIZE = 256 * 1024;
+
+  /**
+   * Encoded line separator
+   */
+
+  private static final byte[] SEPARATOR = encode(System.lineSeparator());
+
+  /**
+   * Buffer holding encoded characters
+   */
+
+  private final byte[] buffer_ = new byte[BUFFER_SIZE];
+
+  /**
+   * Number of bytes in the buffer
+   */
+
+  private int count_;
+
+  /**
+   * Stream sink, or null if the sink is a channel
+   */
+
+  private final OutputStream stream_;
+
+  /**
+   * Channel sink, or null if the sink is a stream
+   */
+
+  private final WritableByteChannel channel_;
+
+  /**
+   * High surrogate waiting for its low surrogate, or 0
+   */
+
+  private char high_surrogate_;
+
+  /**
+   * Encoded words of the current listing indexed by their ids
+   */
+
+  private byte[][] words_ = new byte[0][];
+
 //----------------------------------------------------------------------
 /**
  * Constructors
@@ -51,6 +111,37 @@ public class Output {
  */
 //----------------------------------------------------------------------
 
+  /**
+   * Creates an Output that prints at the standard output.
+   */
+
+  public Output() {
+    this(System.out);
+  }
+
+  /**
+   * Creates an Output that writes to a stream. The stream is flushed, but
+   * not closed.
+   *
+   * @param stream the sink
+   */
+
+  public Output(OutputStream stream) {
+    stream_ = stream;
+    channel_ = null;
+  }
+
+  /**
+   * Creates an Output that writes to a channel. The channel is not closed.
+   *
+   * @param channel the sink
+   */
+
+  public Output(WritableByteChannel channel) {
+    stream_ = null;
+    channel_ = channel;
+  }
+
 //----------------------------------------------------------------------
 /**
  * Methods
@@ -61,14 +152,285 @@ public class Output {
 //----------------------------------------------------------------------
 
   /**
-   * Prints the lines at the standard output.
+   * Prints the lines at the sink and flushes it.
    *
    * @param alphabetizer source of the sorted lines
    */
 
   public void print(Alphabetizer alphabetizer) {
-    for (int i = 0; i < alphabetizer.getLineCount(); i++)
-      System.out.println(alphabetizer.getLineAsString(i));
+    print((Listing) alphabetizer);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Prints the shifts of an index in sorted order at the sink and flushes
+   * it.
+   *
+   * @param index source of the sorted shifts
+   */
+
+  public void print(KWICIndex index) {
+    print((Listing) index);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Prints the lines of a listing at the sink and flushes it. Words with
+   * ids are encoded on first use from getWord, which a MappedLineStorage
+   * answers from its mapped characters; other words are encoded character
+   * by character.
+   *
+   * @param listing source of the sorted lines
+   */
+
+  private void print(Listing listing) {
+    boolean ids = listing.hasWordIds();
+    Arrays.fill(words_, null);
+    for (int i = 0; i < listing.getLineCount(); i++) {
+      int words = listing.getWordCount(i);
+      for (int word = 0; word < words; ++word) {
+        if (word > 0) {
+          write((byte) ' ');
+        }
+        if (ids) {
+          write(getEncodedWord(listing, word, i));
+        } else {
+          int chars = listing.getCharCount(word, i);
+          for (int position = 0; position < chars; ++position) {
+            write(listing.getChar(position, word, i));
+          }
+          endWord();
+        }
+      }
+      write(SEPARATOR);
+    }
+    flush();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Prints a single line at the sink. The line stays in the buffer until
+   * the buffer is full or flush is called.
+   *
+   * @param line the line
+   * @see #flush
+   */
+
+  public void print(String line) {
+    for (int i = 0; i < line.length(); ++i) {
+      write(line.charAt(i));
+    }
+    endWord();
+    write(SEPARATOR);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Prints a single line that is already encoded in UTF-8. The line stays
+   * in the buffer until the buffer is full or flush is called.
+   *
+   * @param line   the encoded line
+   * @param length number of bytes of the line
+   * @see FrontCodedListing#print
+   */
+
+  void print(byte[] line, int length) {
+    for (int i = 0; i < length; ) {
+      if (count_ == buffer_.length) {
+        drain();
+      }
+      int count = Math.min(length - i, buffer_.length - count_);
+      System.arraycopy(line, i, buffer_, count_, count);
+      count_ += count;
+      i += count;
+    }
+    write(SEPARATOR);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Writes the buffered bytes to the sink and flushes it.
+   */
+
+  public void flush() {
+    drain();
+    try {
+      if (stream_ != null) {
+        stream_.flush();
+      }
+    } catch (IOException exc) {
+      exc.printStackTrace();
+      System.err.println("KWIC Error: Could not write output.");
+      System.exit(1);
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Writes the buffered bytes to the sink.
+   */
+
+  private void drain() {
+    send(buffer_, count_);
+    count_ = 0;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Writes bytes to the sink. If an I/O exception occurs, an error message
+   * is shown and program exits.
+   *
+   * @param bytes  the bytes
+   * @param length number of bytes to write
+   */
+
+  private void send(byte[] bytes, int length) {
+    try {
+      if (stream_ != null) {
+        stream_.write(bytes, 0, length);
+      } else {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        while (buffer.hasRemaining()) {
+          channel_.write(buffer);
+        }
+      }
+    } catch (IOException exc) {
+      exc.printStackTrace();
+      System.err.println("KWIC Error: Could not write output.");
+      System.exit(1);
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Encodes a character into the buffer.
+   *
+   * @param c the character
+   */
+
+  private void write(char c) {
+    if (high_surrogate_ != 0) {
+      char high = high_surrogate_;
+      high_surrogate_ = 0;
+      if (Character.isLowSurrogate(c)) {
+        int code = Character.toCodePoint(high, c);
+        write((byte) (0xF0 | (code >> 18)));
+        write((byte) (0x80 | ((code >> 12) & 0x3F)));
+        write((byte) (0x80 | ((code >> 6) & 0x3F)));
+        write((byte) (0x80 | (code & 0x3F)));
+        return;
+      }
+      write((byte) '?');
+    }
+    if (c < 0x80) {
+      write((byte) c);
+    } else if (c < 0x800) {
+      write((byte) (0xC0 | (c >> 6)));
+      write((byte) (0x80 | (c & 0x3F)));
+    } else if (Character.isHighSurrogate(c)) {
+      high_surrogate_ = c;
+    } else if (Character.isLowSurrogate(c)) {
+      write((byte) '?');
+    } else {
+      write((byte) (0xE0 | (c >> 12)));
+      write((byte) (0x80 | ((c >> 6) & 0x3F)));
+      write((byte) (0x80 | (c & 0x3F)));
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Ends a word; a high surrogate without its low surrogate is replaced
+   * by a question mark.
+   */
+
+  private void endWord() {
+    if (high_surrogate_ != 0) {
+      high_surrogate_ = 0;
+      write((byte) '?');
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Writes a byte into the buffer.
+   *
+   * @param b the byte
+   */
+
+  private void write(byte b) {
+    if (count_ == buffer_.length) {
+      drain();
+    }
+    buffer_[count_++] = b;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Writes bytes into the buffer.
+   *
+   * @param bytes the bytes
+   */
+
+  private void write(byte[] bytes) {
+    if (count_ + bytes.length > buffer_.length) {
+      drain();
+    }
+    if (bytes.length > buffer_.length) {
+      send(bytes, bytes.length);
+      return;
+    }
+    System.arraycopy(bytes, 0, buffer_, count_, bytes.length);
+    count_ += bytes.length;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the encoded form of a word with an id, encoding it on first use.
+   *
+   * @param listing source of the word
+   * @param word    word index in the line
+   * @param line    line index
+   * @return byte[]
+   */
+
+  private byte[] getEncodedWord(Listing listing, int word, int line) {
+    int id = listing.getWordId(word, line);
+    if (id >= words_.length) {
+      words_ = Arrays.copyOf(words_, Math.max(id + 1, 2 * words_.length));
+    }
+    byte[] bytes = words_[id];
+    if (bytes == null) {
+      bytes = encode(listing.getWord(word, line));
+      words_[id] = bytes;
+    }
+    return bytes;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Encodes a string in UTF-8. Unpaired surrogates are replaced by a
+   * question mark.
+   *
+   * @param string the string
+   * @return byte[]
+   */
+
+  private static byte[] encode(String string) {
+    return string.getBytes(StandardCharsets.UTF_8);
   }
 
 //----------------------------------------------------------------------
@@ -78,4 +440,24 @@ public class Output {
  */
 //----------------------------------------------------------------------
 
+  /**
+   * Sorted lines that an Output can print: an Alphabetizer or a KWICIndex.
+   */
+
+  interface Listing {
+    int getLineCount();
+
+    int getWordCount(int line);
+
+    int getCharCount(int word, int line);
+
+    char getChar(int position, int word, int line);
+
+    String getWord(int word, int line);
+
+    boolean hasWordIds();
+
+    int getWordId(int word, int line);
+  }
+
 }
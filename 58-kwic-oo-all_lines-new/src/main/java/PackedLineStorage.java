@@ -0,0 +1,719 @@
+// -*- Java -*-
+/*
+ * <copyright>
+ *
+ *  Copyright (c) 2026 agent
+ *
+ * </copyright>
+ *
+ * <file>
+ *
+ *  Name:    PackedLineStorage.java
+ *
+ *  Purpose: LineStorage that packs all characters into a single array
+ *
+ *  Created: 17 Oct 2026
+ *
+ *  $Id$
+ *
+ *  Description:
+ *    LineStorage that packs all characters into a single array
+ * </file>
+*/
+
+
+
+/*
+ * $Log$
+*/
+
+import java.util.Arrays;
+
+/**
+ *  PackedLineStorage provides the same public interface as the LineStorage class,
+ *  but keeps the lines in three primitive arrays instead of one String object per word:
+ *  <ul>
+ *  <li>chars_ holds the characters of all words, word after word and line after line
+ *  <li>word_index_ keeps the index of the first character of each word in chars_
+ *  <li>line_index_ keeps the index of the first word of each line in word_index_
+ *  </ul>
+ *  Both index arrays hold one more entry than there are words, respectively lines,
+ *  so that the end of a word or a line is the start of the next one. The arrays
+ *  grow automatically like the buffer of an ArrayList. Adding words and lines at the
+ *  end is cheap; changing a line in the middle moves all characters behind it.
+ *  @author  agent
+ *  @version $Id$
+*/
+
+public class PackedLineStorage extends LineStorage {
+
+//----------------------------------------------------------------------
+/**
+ * Fields
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Characters of all words
+   */
+
+  private char[] chars_ = new char[256];
+
+  /**
+   * Number of characters in chars_
+   */
+
+  private int char_count_;
+
+  /**
+   * Array that keeps word indices (word index is the index of the first character
+   * of a word in chars_)
+   */
+
+  private int[] word_index_ = new int[64];
+
+  /**
+   * Number of words
+   */
+
+  private int word_count_;
+
+  /**
+   * Array that keeps line indices (line index is the index of the first word
+   * of a line in word_index_)
+   */
+
+  private int[] line_index_ = new int[16];
+
+  /**
+   * Number of lines
+   */
+
+  private int line_count_;
+
+//----------------------------------------------------------------------
+/**
+ * Constructors
+ *
+ */
+//----------------------------------------------------------------------
+
+//----------------------------------------------------------------------
+/**
+ * Methods
+ *
+ */
+//----------------------------------------------------------------------
+
+//----------------------------------------------------------------------
+
+  /**
+   * This method sets a new character on the specified index of
+   * a particular word in a particular line.
+   *
+   * @param c        new character
+   * @param position character index in the word
+   * @param word     word index in the line
+   * @param line     line index
+   * @see #getChar
+   * @see #addChar
+   * @see #deleteChar
+   */
+
+  @Override
+  public void setChar(char c, int position, int word, int line) {
+    chars_[getCharIndex(position, word, line)] = c;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the character from the specified position in the specified word
+   * in a particular line.
+   *
+   * @param position character index in the word
+   * @param word     word index in the line
+   * @param line     line index
+   * @return char
+   * @see #setChar
+   * @see #addChar
+   * @see #deleteChar
+   */
+
+  @Override
+  public char getChar(int position, int word, int line) {
+    return chars_[getCharIndex(position, word, line)];
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Adds a character at the end of the specified word in a particular line.
+   *
+   * @param c    new character
+   * @param word word index in the line
+   * @param line line index
+   * @see #setChar
+   * @see #getChar
+   * @see #deleteChar
+   */
+
+  @Override
+  public void addChar(char c, int word, int line) {
+    int index = getWordIndex(word, line);
+    int end = word_index_[index + 1];
+    moveChars(end, 1, index + 1);
+    chars_[end] = c;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Deletes the character from the specified position in the specified word
+   * in a particular line.
+   *
+   * @param position character index in the word
+   * @param word     word index in the line
+   * @param line     line index
+   * @see #setChar
+   * @see #getChar
+   * @see #addChar
+   */
+
+  @Override
+  public void deleteChar(int position, int word, int line) {
+    int index = getCharIndex(position, word, line);
+    moveChars(index + 1, -1, getWordIndex(word, line) + 1);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the number of characters in this particular word.
+   *
+   * @param word word index in the line
+   * @param line line index
+   * @return int
+   */
+
+  @Override
+  public int getCharCount(int word, int line) {
+    int index = getWordIndex(word, line);
+    return word_index_[index + 1] - word_index_[index];
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * This method sets a new word on the specified index of a particular line.
+   * Character array is taken as an argument for the word.
+   *
+   * @param chars new word
+   * @param word  word index in the line
+   * @param line  line index
+   * @see #getWord
+   * @see #addWord
+   * @see #addEmptyWord
+   * @see #deleteWord
+   */
+
+  @Override
+  public void setWord(char[] chars, int word, int line) {
+    int index = getWordIndex(word, line);
+    int start = word_index_[index];
+    moveChars(word_index_[index + 1], chars.length - (word_index_[index + 1] - start), index + 1);
+    System.arraycopy(chars, 0, chars_, start, chars.length);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * This method sets a new word on the specified index of a particular line.
+   * String is taken as an argument for the word.
+   *
+   * @param chars new word
+   * @param word  word index in the line
+   * @param line  line index
+   * @see #getWord
+   * @see #addWord
+   * @see #addEmptyWord
+   * @see #deleteWord
+   */
+
+  @Override
+  public void setWord(String chars, int word, int line) {
+    setWord(chars.toCharArray(), word, line);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the word from the specified position in a particular line
+   * String representing the word is returned.
+   *
+   * @param word word index in the line
+   * @param line line index
+   * @return String
+   * @see #setWord
+   * @see #addWord
+   * @see #addEmptyWord
+   * @see #deleteWord
+   */
+
+  @Override
+  public String getWord(int word, int line) {
+    int index = getWordIndex(word, line);
+    return new String(chars_, word_index_[index], word_index_[index + 1] - word_index_[index]);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Adds a word at the end of the specified line.
+   * The method takes a character array as an argument.
+   *
+   * @param chars new word
+   * @param line  line index
+   * @see #addEmptyWord
+   * @see #setWord
+   * @see #getWord
+   * @see #deleteWord
+   */
+
+  @Override
+  public void addWord(char[] chars, int line) {
+    addWord(chars, 0, chars.length, line);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Adds a word at the end of the specified line.
+   * The method takes a string as an argument.
+   *
+   * @param chars new word
+   * @param line  line index
+   * @see #addEmptyWord
+   * @see #setWord
+   * @see #getWord
+   * @see #deleteWord
+   */
+
+  @Override
+  public void addWord(String chars, int line) {
+    int start = insertWord(line, chars.length());
+    chars.getChars(0, chars.length(), chars_, start);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Adds a word at the end of the specified line. The word consists of count
+   * characters of the array, starting at offset.
+   *
+   * @param chars  characters of the new word
+   * @param offset index of the first character of the word
+   * @param count  number of characters in the word
+   * @param line   line index
+   * @see #addEmptyWord
+   * @see #setWord
+   * @see #getWord
+   * @see #deleteWord
+   */
+
+  @Override
+  public void addWord(char[] chars, int offset, int count, int line) {
+    int start = insertWord(line, count);
+    System.arraycopy(chars, offset, chars_, start, count);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Adds an empty word at the end of the specified line.
+   *
+   * @param line line index
+   * @see #setWord
+   * @see #getWord
+   * @see #addWord
+   * @see #deleteWord
+   */
+
+  @Override
+  public void addEmptyWord(int line) {
+    insertWord(line, 0);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Deletes the word from the specified position in a particular line.
+   *
+   * @param word word index in the line
+   * @param line line index
+   * @see #setWord
+   * @see #getWord
+   * @see #addWord
+   * @see #addEmptyWord
+   */
+
+  @Override
+  public void deleteWord(int word, int line) {
+    int index = getWordIndex(word, line);
+    deleteWords(index, index + 1, line);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the number of words in this particular line.
+   *
+   * @param line line index
+   * @return int
+   */
+
+  @Override
+  public int getWordCount(int line) {
+    checkLine(line);
+    return line_index_[line + 1] - line_index_[line];
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * This method sets a new line on the specified index.
+   * This method takes two-dimensional character array as an argument
+   * for the line.
+   *
+   * @param words new line
+   * @param line  line index
+   * @see #getLine
+   * @see #getLineAsString
+   * @see #addLine
+   * @see #addEmptyLine
+   * @see #deleteLine
+   */
+
+  @Override
+  public void setLine(char[][] words, int line) {
+    checkLine(line);
+    deleteWords(line_index_[line], line_index_[line + 1], line);
+    for (char[] word : words) {
+      addWord(word, line);
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * This method sets a new line on the specified index.
+   * This method takes a string array as argument
+   *
+   * @param words new line
+   * @param line  line index
+   * @see #getLine
+   * @see #getLineAsString
+   * @see #addLine
+   * @see #addEmptyLine
+   * @see #deleteLine
+   */
+
+  @Override
+  public void setLine(String[] words, int line) {
+    checkLine(line);
+    deleteWords(line_index_[line], line_index_[line + 1], line);
+    for (String word : words) {
+      addWord(word, line);
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the line from the specified position.
+   * String array representing the line is returned.
+   *
+   * @param line line index
+   * @return String[]
+   * @see #setLine
+   * @see #getLineAsString
+   * @see #addLine
+   * @see #addEmptyLine
+   * @see #deleteLine
+   */
+
+  @Override
+  public String[] getLine(int line) {
+    checkLine(line);
+    String[] words = new String[line_index_[line + 1] - line_index_[line]];
+    for (int i = 0; i < words.length; ++i) {
+      int index = line_index_[line] + i;
+      words[i] = new String(chars_, word_index_[index], word_index_[index + 1] - word_index_[index]);
+    }
+    return words;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the line from the specified position.
+   * A single String representing the line is returned.
+   *
+   * @param line line index
+   * @return String
+   * @see #setLine
+   * @see #getLine
+   * @see #addLine
+   * @see #addEmptyLine
+   * @see #deleteLine
+   */
+
+  @Override
+  public String getLineAsString(int line) {
+    checkLine(line);
+    int first = line_index_[line];
+    int last = line_index_[line + 1];
+    if (first == last) {
+      return "";
+    }
+    StringBuilder builder = new StringBuilder(word_index_[last] - word_index_[first] + last - first - 1);
+    for (int index = first; index < last; ++index) {
+      if (index > first) {
+        builder.append(' ');
+      }
+      builder.append(chars_, word_index_[index], word_index_[index + 1] - word_index_[index]);
+    }
+    return builder.toString();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Adds a line at the end of the line array.
+   * Two-dimensional array is the argument for the new line
+   *
+   * @param words new line
+   * @see #addEmptyLine
+   * @see #setLine
+   * @see #getLine
+   * @see #deleteLine
+   */
+
+  @Override
+  public void addLine(char[][] words) {
+    addEmptyLine();
+    for (char[] word : words) {
+      addWord(word, line_count_ - 1);
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Adds a line at the end of the line array.
+   * String array is the argument for the new line
+   *
+   * @param words new line
+   * @see #addEmptyLine
+   * @see #setLine
+   * @see #getLine
+   * @see #deleteLine
+   */
+
+  @Override
+  public void addLine(String[] words) {
+    addEmptyLine();
+    for (String word : words) {
+      addWord(word, line_count_ - 1);
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Adds an empty line at the end of the lines array.
+   *
+   * @see #setLine
+   * @see #getLine
+   * @see #getLineAsString
+   * @see #addLine
+   * @see #deleteLine
+   */
+
+  @Override
+  public void addEmptyLine() {
+    if (line_count_ + 2 > line_index_.length) {
+      line_index_ = Arrays.copyOf(line_index_, line_index_.length * 2);
+    }
+    line_count_++;
+    line_index_[line_count_] = word_count_;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Deletes the line from the specified position.
+   *
+   * @param line line index
+   * @see #setLine
+   * @see #getLine
+   * @see #getLineAsString
+   * @see #addLine
+   * @see #addEmptyLine
+   */
+
+  @Override
+  public void deleteLine(int line) {
+    checkLine(line);
+    deleteWords(line_index_[line], line_index_[line + 1], line);
+    System.arraycopy(line_index_, line + 1, line_index_, line, line_count_ - line);
+    line_count_--;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the number of lines.
+   *
+   * @return int
+   */
+
+  @Override
+  public int getLineCount() {
+    return line_count_;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the index of a word in the word_index_ array.
+   *
+   * @param word word index in the line
+   * @param line line index
+   * @return int
+   */
+
+  private int getWordIndex(int word, int line) {
+    checkLine(line);
+    if (word < 0 || word >= line_index_[line + 1] - line_index_[line]) {
+      throw new IndexOutOfBoundsException("Word: " + word + ", Line: " + line);
+    }
+    return line_index_[line] + word;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the index of a character in the chars_ array.
+   *
+   * @param position character index in the word
+   * @param word     word index in the line
+   * @param line     line index
+   * @return int
+   */
+
+  private int getCharIndex(int position, int word, int line) {
+    int index = getWordIndex(word, line);
+    if (position < 0 || position >= word_index_[index + 1] - word_index_[index]) {
+      throw new StringIndexOutOfBoundsException(position);
+    }
+    return word_index_[index] + position;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Checks that the line index is valid.
+   *
+   * @param line line index
+   */
+
+  private void checkLine(int line) {
+    if (line < 0 || line >= line_count_) {
+      throw new IndexOutOfBoundsException("Line: " + line + ", Lines: " + line_count_);
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Moves all characters from the specified index to the end of chars_ by
+   * delta positions, and updates the word indices from the specified word on.
+   * A positive delta opens a gap, a negative delta removes the characters
+   * in front of the index.
+   *
+   * @param index first character to move
+   * @param delta number of positions
+   * @param word  first word whose index changes
+   */
+
+  private void moveChars(int index, int delta, int word) {
+    if (char_count_ + delta > chars_.length) {
+      chars_ = Arrays.copyOf(chars_, Math.max(chars_.length * 2, char_count_ + delta));
+    }
+    System.arraycopy(chars_, index, chars_, index + delta, char_count_ - index);
+    char_count_ += delta;
+    for (int i = word; i <= word_count_; ++i) {
+      word_index_[i] += delta;
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Inserts a new word at the end of the specified line and makes room for
+   * its characters.
+   *
+   * @param line  line index
+   * @param count number of characters of the new word
+   * @return index of the first character of the new word in chars_
+   */
+
+  private int insertWord(int line, int count) {
+    checkLine(line);
+    if (word_count_ + 2 > word_index_.length) {
+      word_index_ = Arrays.copyOf(word_index_, word_index_.length * 2);
+    }
+    int index = line_index_[line + 1];
+    System.arraycopy(word_index_, index, word_index_, index + 1, word_count_ + 1 - index);
+    word_count_++;
+    for (int i = line + 1; i <= line_count_; ++i) {
+      line_index_[i]++;
+    }
+    int start = word_index_[index];
+    moveChars(start, count, index + 1);
+    return start;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Deletes the words [first, last) of the word_index_ array, together with
+   * their characters. All words must belong to the specified line.
+   *
+   * @param first index of the first word to delete
+   * @param last  index after the last word to delete
+   * @param line  line index
+   */
+
+  private void deleteWords(int first, int last, int line) {
+    if (first == last) {
+      return;
+    }
+    moveChars(word_index_[last], word_index_[first] - word_index_[last], last);
+    System.arraycopy(word_index_, last, word_index_, first, word_count_ + 1 - last);
+    word_count_ -= last - first;
+    for (int i = line + 1; i <= line_count_; ++i) {
+      line_index_[i] -= last - first;
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Inner classes
+ *
+ */
+//----------------------------------------------------------------------
+
+}
@@ -0,0 +1,251 @@
+// -*- Java -*-
+/*
+ * <copyright>
+ *
+ *  Copyright (c) 2026 agent
+ *
+ * </copyright>
+ *
+ * <file>
+ *
+ *  Name:    StopWords.java
+ *
+ *  Purpose: Words that no circular shift should start with
+ *
+ *  Created: 17 Oct 2026
+ *
+ *  $Id$
+ *
+ *  Description:
+ *    Words that no circular shift should start with
+ * </file>
+*/
+
+
+
+/*
+ * $Log$
+*/
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ *  StopWords is a set of words, such as "und", "sie", "the" or "a", that no circular
+ *  shift should start with. The CircularShifter does not produce such shifts at all,
+ *  so they cost neither memory nor sort time; the remaining shifts are the same and
+ *  in the same order as without stop words. Words are matched exactly, i.e., case
+ *  sensitively.
+ *  <p>
+ *  If the lines are kept in a WordDictionary, each stop word is looked up once per
+ *  setup and the words of the lines are then checked by their ids in a boolean array;
+ *  otherwise each word is looked up in the hash table of the stop words.
+ *  @author  agent
+ *  @version $Id$
+*/
+
+public class StopWords {
+
+//----------------------------------------------------------------------
+/**
+ * Fields
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * The stop words
+   */
+
+  private final WordDictionary words_ = new WordDictionary();
+
+//----------------------------------------------------------------------
+/**
+ * Constructors
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Creates an empty set of stop words.
+   */
+
+  public StopWords() {
+  }
+
+  /**
+   * Creates a set of the specified stop words.
+   *
+   * @param words stop words
+   */
+
+  public StopWords(String... words) {
+    for (String word : words) {
+      add(word);
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Methods
+ *
+ */
+//----------------------------------------------------------------------
+
+//----------------------------------------------------------------------
+
+  /**
+   * Adds the stop words from a file in UTF-8. Words are separated by white
+   * space; lines starting with # are comments. If an I/O exception occurs,
+   * an error message is shown and program exits.
+   *
+   * @param file name of the stop word file
+   */
+
+  public void load(String file) {
+    try (BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith("#")) {
+          continue;
+        }
+        for (String word : line.trim().split("\\s+")) {
+          if (!word.isEmpty()) {
+            add(word);
+          }
+        }
+      }
+    } catch (NoSuchFileException exc) {
+      exc.printStackTrace();
+      System.err.println("KWIC Error: Could not open " + file + " file.");
+      System.exit(1);
+    } catch (IOException exc) {
+      exc.printStackTrace();
+      System.err.println("KWIC Error: Could not read " + file + " file.");
+      System.exit(1);
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Adds a stop word.
+   *
+   * @param word the word
+   */
+
+  public void add(String word) {
+    words_.intern(word);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Tells whether a word is a stop word.
+   *
+   * @param word the word
+   * @return boolean
+   */
+
+  public boolean contains(String word) {
+    return words_.lookup(word) >= 0;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the number of stop words.
+   *
+   * @return int
+   */
+
+  public int getWordCount() {
+    return words_.getWordCount();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the CRC-32 checksum of the stop words in String order, which
+   * tells two different sets of stop words apart. An empty set has the
+   * checksum 0.
+   *
+   * @return long
+   */
+
+  public long getChecksum() {
+    if (words_.getWordCount() == 0) {
+      return 0;
+    }
+    String[] words = new String[words_.getWordCount()];
+    for (int id = 0; id < words.length; ++id) {
+      words[id] = words_.getWord(id);
+    }
+    Arrays.sort(words);
+    CRC32 crc = new CRC32();
+    for (String word : words) {
+      crc.update(word.getBytes(StandardCharsets.UTF_8));
+      crc.update('\n');
+    }
+    return crc.getValue();
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets a Filter that finds the stop words among the words of the lines.
+   * The lines must not be changed while the Filter is in use.
+   *
+   * @param lines A set of lines
+   * @return Filter
+   */
+
+  public Filter filter(LineStorage lines) {
+    if (!(lines instanceof WordIds)) {
+      return (word, line) -> contains(lines.getWord(word, line));
+    }
+    WordIds ids = (WordIds) lines;
+    WordDictionary dictionary = ids.getDictionary();
+    boolean[] stop = new boolean[dictionary.getWordCount()];
+    for (int id = 0; id < words_.getWordCount(); ++id) {
+      int word_id = dictionary.lookup(words_.getWord(id));
+      if (word_id >= 0) {
+        stop[word_id] = true;
+      }
+    }
+    return (word, line) -> stop[ids.getWordId(word, line)];
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Inner classes
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Finds the stop words among the words of a set of lines.
+   */
+
+  public interface Filter {
+
+    /**
+     * Tells whether the specified word of a line is a stop word.
+     *
+     * @param word word index in the line
+     * @param line line index
+     * @return boolean
+     */
+
+    boolean isStopWord(int word, int line);
+  }
+
+//----------------------------------------------------------------------
+
+}
@@ -0,0 +1,348 @@
+// -*- Java -*-
+/*
+ * <copyright>
+ *
+ *  Copyright (c) 2026 agent
+ *
+ * </copyright>
+ *
+ * <file>
+ *
+ *  Name:    WordDictionary.java
+ *
+ *  Purpose: Maps distinct words to integer ids
+ *
+ *  Created: 17 Oct 2026
+ *
+ *  $Id$
+ *
+ *  Description:
+ *    Maps distinct words to integer ids
+ * </file>
+*/
+
+
+
+/*
+ * $Log$
+*/
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ *  WordDictionary keeps every distinct word exactly once and assigns it an integer id.
+ *  Ids are handed out in the order in which the words are first seen and never change,
+ *  so that lines stored as id sequences stay valid when new words arrive. Additionally,
+ *  each word has a rank: the ranks of all words are ordered like the words
+ *  themselves (String.compareTo), so that two words can be compared by comparing two
+ *  integers. The ranks are computed on demand, once for all words added so far.
+ *  @author  agent
+ *  @version $Id$
+*/
+
+public class WordDictionary {
+
+//----------------------------------------------------------------------
+/**
+ * Fields
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Words indexed by their ids
+   */
+
+  private String[] words_ = new String[64];
+
+  /**
+   * Number of words
+   */
+
+  private int word_count_;
+
+  /**
+   * Open addressing hash table; each slot holds a word id plus one, or zero if
+   * the slot is empty
+   */
+
+  private int[] table_ = new int[128];
+
+  /**
+   * Ranks of the words indexed by their ids, or null if words have been added
+   * since the ranks were computed
+   */
+
+  private int[] ranks_;
+
+  /**
+   * True as long as no word contains a character less than or equal to
+   * the space character
+   */
+
+  private boolean separator_safe_ = true;
+
+//----------------------------------------------------------------------
+/**
+ * Constructors
+ *
+ */
+//----------------------------------------------------------------------
+
+//----------------------------------------------------------------------
+/**
+ * Methods
+ *
+ */
+//----------------------------------------------------------------------
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the id of the word. If the word is not in the dictionary yet, it is
+   * added with a new id.
+   *
+   * @param word the word
+   * @return int
+   * @see #getWord
+   */
+
+  public synchronized int intern(String word) {
+    int hash = word.hashCode();
+    int mask = table_.length - 1;
+    for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+      int id = table_[slot] - 1;
+      if (id < 0) {
+        return add(word, slot);
+      }
+      if (words_[id].equals(word)) {
+        return id;
+      }
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the id of the word that consists of count characters of the array,
+   * starting at offset. If the word is not in the dictionary yet, it is
+   * added with a new id. No String is created for words that are already
+   * in the dictionary.
+   *
+   * @param chars  characters of the word
+   * @param offset index of the first character of the word
+   * @param count  number of characters in the word
+   * @return int
+   * @see #getWord
+   */
+
+  public synchronized int intern(char[] chars, int offset, int count) {
+    int hash = 0;
+    for (int i = offset; i < offset + count; ++i) {
+      hash = 31 * hash + chars[i];
+    }
+    int mask = table_.length - 1;
+    for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+      int id = table_[slot] - 1;
+      if (id < 0) {
+        return add(new String(chars, offset, count), slot);
+      }
+      if (equals(words_[id], chars, offset, count)) {
+        return id;
+      }
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the id of the word, or -1 if the word is not in the dictionary.
+   *
+   * @param word the word
+   * @return int
+   */
+
+  public synchronized int lookup(String word) {
+    int mask = table_.length - 1;
+    for (int slot = mix(word.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+      int id = table_[slot] - 1;
+      if (id < 0 || words_[id].equals(word)) {
+        return id;
+      }
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the word with the specified id. The same String object is returned
+   * for all occurrences of the word.
+   *
+   * @param id word id
+   * @return String
+   */
+
+  public String getWord(int id) {
+    return words_[id];
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the number of distinct words.
+   *
+   * @return int
+   */
+
+  public int getWordCount() {
+    return word_count_;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the rank of the word with the specified id. For any two words,
+   * getRank(a) &lt; getRank(b) if and only if getWord(a).compareTo(getWord(b)) &lt; 0.
+   *
+   * @param id word id
+   * @return int
+   * @see #getRanks
+   */
+
+  public int getRank(int id) {
+    return getRanks()[id];
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the ranks of all words indexed by their ids. The array must not be
+   * modified. It stays valid until a new word is added to the dictionary.
+   *
+   * @return int[]
+   * @see #getRank
+   */
+
+  public synchronized int[] getRanks() {
+    if (ranks_ == null) {
+      Integer[] ids = new Integer[word_count_];
+      for (int id = 0; id < word_count_; ++id) {
+        ids[id] = id;
+      }
+      Arrays.sort(ids, Comparator.comparing(id -> words_[id]));
+      ranks_ = new int[word_count_];
+      for (int rank = 0; rank < word_count_; ++rank) {
+        ranks_[ids[rank]] = rank;
+      }
+    }
+    return ranks_;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Tells whether lines made of these words can be ordered by comparing the
+   * ranks of their words. This is the case if no word contains a space or a
+   * character that sorts before the space character: then the space that
+   * separates two words in a line never decides a comparison differently
+   * from the words themselves.
+   *
+   * @return boolean
+   */
+
+  public synchronized boolean isSeparatorSafe() {
+    return separator_safe_;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Adds a new word to the dictionary.
+   *
+   * @param word the word
+   * @param slot free slot of the hash table for the word
+   * @return the id of the new word
+   */
+
+  private int add(String word, int slot) {
+    if (word_count_ == words_.length) {
+      words_ = Arrays.copyOf(words_, word_count_ * 2);
+    }
+    int id = word_count_++;
+    words_[id] = word;
+    table_[slot] = id + 1;
+    ranks_ = null;
+    for (int i = 0; i < word.length() && separator_safe_; ++i) {
+      separator_safe_ = word.charAt(i) > ' ';
+    }
+    if (word_count_ * 2 > table_.length) {
+      rehash();
+    }
+    return id;
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Doubles the size of the hash table.
+   */
+
+  private void rehash() {
+    table_ = new int[table_.length * 2];
+    int mask = table_.length - 1;
+    for (int id = 0; id < word_count_; ++id) {
+      int slot = mix(words_[id].hashCode()) & mask;
+      while (table_[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      table_[slot] = id + 1;
+    }
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Spreads the bits of a String hash code over the table index.
+   *
+   * @param hash String hash code
+   * @return int
+   */
+
+  private static int mix(int hash) {
+    hash *= 0x9E3779B9;
+    return hash ^ (hash >>> 16);
+  }
+
+//----------------------------------------------------------------------
+
+  /**
+   * Compares a word with a range of characters.
+   *
+   * @param word   the word
+   * @param chars  characters
+   * @param offset index of the first character
+   * @param count  number of characters
+   * @return boolean
+   */
+
+  private static boolean equals(String word, char[] chars, int offset, int count) {
+    if (word.length() != count) {
+      return false;
+    }
+    for (int i = 0; i < count; ++i) {
+      if (word.charAt(i) != chars[offset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Inner classes
+ *
+ */
+//----------------------------------------------------------------------
+
+}
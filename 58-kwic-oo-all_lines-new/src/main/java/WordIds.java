@@ -0,0 +1,74 @@
+// -*- Java -*-
+/*
+ * <copyright>
+ *
+ *  Copyright (c) 2026 agent
+ *
+ * </copyright>
+ *
+ * <file>
+ *
+ *  Name:    WordIds.java
+ *
+ *  Purpose: Dictionary ids of the words of a LineStorage
+ *
+ *  Created: 17 Oct 2026
+ *
+ *  $Id$
+ *
+ *  Description:
+ *    Dictionary ids of the words of a LineStorage
+ * </file>
+*/
+
+
+
+/*
+ * $Log$
+*/
+
+/**
+ *  WordIds is implemented by the line storages that keep every distinct word once and
+ *  refer to it by an id, so that words can be compared, filtered and encoded by their
+ *  ids instead of their characters. Code that can use the ids checks for this interface
+ *  with instanceof and falls back to the characters of the words otherwise.
+ *  @author  agent
+ *  @version $Id$
+ *  @see DictionaryLineStorage
+ *  @see MappedLineStorage
+*/
+
+public interface WordIds {
+
+//----------------------------------------------------------------------
+/**
+ * Methods
+ *
+ */
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the dictionary id of the word from the specified position in a
+   * particular line.
+   *
+   * @param word word index in the line
+   * @param line line index
+   * @return int
+   * @see #getDictionary
+   */
+
+  int getWordId(int word, int line);
+
+//----------------------------------------------------------------------
+
+  /**
+   * Gets the dictionary holding the words, in which each word has the same
+   * id as in the storage.
+   *
+   * @return WordDictionary
+   * @see #getWordId
+   */
+
+  WordDictionary getDictionary();
+
+}
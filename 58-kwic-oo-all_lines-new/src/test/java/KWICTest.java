@@ -1,5 +1,15 @@
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.PrimitiveIterator;
+import javax.management.ObjectName;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -67,4 +77,881 @@ public class KWICTest {
 		}
 		assertEquals(bytes.toString(), new String(data));
 	}
-}
\ No newline at end of file
+
+	@org.junit.Test
+	public void testEmptyInput() throws IOException {
+		File file = File.createTempFile("kwic", ".txt");
+		try {
+			for (String content : new String[] {"", " \t\n\n  \n"}) {
+				Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+				for (String name : new String[] {"comparison", "radix", "multikey", "prefix", "parallel", "collation"}) {
+					for (String storage : new String[] {"dictionary", "packed", "list"}) {
+						bytes.reset();
+						kwic = new KWIC();
+						kwic.setSortStrategy(Alphabetizer.SortStrategy.forName(name));
+						if (storage.equals("packed")) {
+							kwic.setLineStorage(PackedLineStorage::new);
+						} else if (storage.equals("list")) {
+							kwic.setLineStorage(LineStorage::new);
+						}
+						kwic.execute(file.getPath());
+						assertEquals(name + ", " + storage, "", bytes.toString());
+					}
+				}
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@org.junit.Test
+	public void testSortStrategies() throws IOException {
+		for (String name : new String[] {"comparison", "radix", "multikey", "prefix", "parallel"}) {
+			kwic.setSortStrategy(Alphabetizer.SortStrategy.forName(name));
+			assertListing(name, "Test_Case.txt", "Test_Result.txt");
+		}
+
+		kwic.setSortStrategy(new Alphabetizer.ParallelSort(4));
+		assertListing("parallel, 4 threads", "Test_Case.txt", "Test_Result.txt");
+
+		kwic.setSortStrategy(new Alphabetizer.PrefixKeySort());
+		kwic.setLineStorage(LineStorage::new);
+		assertListing("prefix, list", "Test_Case.txt", "Test_Result.txt");
+	}
+
+	@org.junit.Test
+	public void testLineStorages() throws IOException {
+		kwic.setLineStorage(LineStorage::new);
+		assertListing("list", "Test_Case.txt", "Test_Result.txt");
+
+		kwic.setMappedInput(false);
+		assertListing("list, reader", "Test_Case.txt", "Test_Result.txt");
+
+		kwic.setLineStorage(PackedLineStorage::new);
+		assertListing("packed", "Test_Case.txt", "Test_Result.txt");
+	}
+
+	@org.junit.Test
+	public void testMemoryBudget() throws IOException {
+		kwic.setMemoryBudget(2048);
+		assertListing("budget", "Test_Case.txt", "Test_Result.txt");
+	}
+
+	@org.junit.Test
+	public void testPipeline() throws IOException {
+		kwic.setPipelined(true);
+		kwic.setMemoryBudget(4096);
+		assertListing("pipelined", "Test_Case.txt", "Test_Result.txt");
+	}
+
+	@org.junit.Test
+	public void testPipelineFailure() {
+		int[] storages = new int[1];
+		ExternalSorter sorter = new ExternalSorter(512, () -> {
+			if (++storages[0] == 3) {
+				throw new IllegalStateException("third batch");
+			}
+			return new LineStorage();
+		}, new Alphabetizer.ComparisonSort());
+		sorter.setPipelined(true);
+		try {
+			sorter.sort("Test_Case.txt", new Output());
+			assertTrue("no failure", false);
+		} catch (IllegalStateException exc) {
+			assertEquals("third batch", exc.getMessage());
+		}
+	}
+
+	@org.junit.Test
+	public void testNonAsciiInput() throws IOException {
+		File file = File.createTempFile("kwic", ".txt");
+		try {
+			Files.write(file.toPath(), ("\u00c4pfel und Birnen\nk\u00f6stliche \u00dcbung\n"
+					+ "\u65e5\u672c \ud83d\ude00 caf\u00e9\n").getBytes(StandardCharsets.UTF_8));
+			kwic.execute(file.getPath());
+			byte[] expected = bytes.toByteArray();
+			assertTrue(new String(expected, StandardCharsets.UTF_8).contains("\u00dcbung k\u00f6stliche"));
+
+			long[] budgets = {0, 64, 64};
+			for (int mode = 0; mode < budgets.length; ++mode) {
+				bytes.reset();
+				kwic = new KWIC();
+				kwic.setMappedInput(false);
+				kwic.setMemoryBudget(budgets[mode]);
+				kwic.setPipelined(mode == 2);
+				kwic.execute(file.getPath());
+				assertTrue(Arrays.equals(expected, bytes.toByteArray()));
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@org.junit.Test
+	public void testParallelShifts() throws IOException {
+		kwic.setParallelism(4);
+		assertListing("4 threads", "Test_Case.txt", "Test_Result.txt");
+	}
+
+	@org.junit.Test
+	public void testKeywordQuery() {
+		StringBuilder expected = new StringBuilder();
+
+		try (BufferedReader reader = new BufferedReader(new FileReader("Test_Result.txt"))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("Akte ")) {
+					expected.append(line).append(lineBreak);
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		kwic.query("Test_Case.txt", "Akte");
+		assertEquals(expected.toString(), bytes.toString());
+
+		KWICIndex index = kwic.index("Test_Case.txt");
+		assertEquals(916, index.getLineCount());
+		assertTrue(index.findPrefix("Akte X Season T").hasNext());
+		assertTrue(!index.findKeyword("Akt").hasNext());
+	}
+
+	@org.junit.Test
+	public void testIndexFile() throws IOException {
+		File index = File.createTempFile("kwic", ".index");
+		index.delete();
+		try {
+			kwic.setIndexFile(index.getPath());
+			assertListing("built", "Test_Case.txt", "Test_Result.txt");
+			assertTrue(index.exists());
+
+			assertListing("mapped", "Test_Case.txt", "Test_Result.txt");
+			assertTrue(new IndexFile(index.getPath()).read("Test_Case.txt") != null);
+			assertTrue(new IndexFile(index.getPath()).read("Test_Case2.txt") == null);
+
+			// the checksum is only compared when the modification time changed
+			File source = File.createTempFile("kwic", ".txt");
+			try {
+				byte[] input = Files.readAllBytes(Paths.get("Test_Case.txt"));
+				Files.write(source.toPath(), input);
+				long time = source.lastModified();
+				new IndexFile(index.getPath()).write(new KWICIndex(parse(source.getPath())), source.getPath());
+				byte[] changed = input.clone();
+				changed[0] ^= 1;
+				Files.write(source.toPath(), changed);
+				source.setLastModified(time);
+				assertTrue(new IndexFile(index.getPath()).read(source.getPath()) != null);
+				source.setLastModified(time + 2000);
+				assertTrue(new IndexFile(index.getPath()).read(source.getPath()) == null);
+				Files.write(source.toPath(), input);
+				source.setLastModified(time + 4000);
+				assertTrue(new IndexFile(index.getPath()).read(source.getPath()) != null);
+			} finally {
+				source.delete();
+			}
+		} finally {
+			index.delete();
+		}
+	}
+
+	private static LineStorage parse(String file) {
+		LineStorage lines = new LineStorage();
+		new Input().parse(file, lines);
+		return lines;
+	}
+
+	@org.junit.Test
+	public void testIncrementalIndex() throws IOException {
+		LineStorage lines = new LineStorage();
+		LineStorage first = new LineStorage();
+		LineStorage second = new LineStorage();
+		new Input().parse("Test_Case.txt", first);
+		new Input().parse("Test_Case2.txt", second);
+
+		IncrementalIndex index = new IncrementalIndex(lines);
+		for (int i = 0; i < first.getLineCount(); ++i) {
+			index.addLine(first.getLine(i));
+		}
+		index.print(new Output());
+		assertEquals("added", golden("Test_Result.txt"), bytes.toString());
+
+		bytes.reset();
+		for (int i = 0; i < first.getLineCount(); ++i) {
+			index.deleteLine(i);
+		}
+		for (int i = 0; i < second.getLineCount(); ++i) {
+			index.addLine(second.getLine(i));
+		}
+		index.print(new Output());
+		assertEquals("replaced", golden("Test_Result2.txt"), bytes.toString());
+
+		int line = first.getLineCount();
+		String[] words = index.getLine(line);
+		line = index.setWord(line, 0, "Zz");
+		assertTrue(!index.isLive(first.getLineCount()));
+		bytes.reset();
+		index.query("Zz", new Output());
+		String[] shifted = Arrays.copyOf(words, words.length);
+		shifted[0] = "Zz";
+		assertEquals(String.join(" ", shifted) + lineBreak, bytes.toString());
+	}
+
+	@org.junit.Test
+	public void testStorageEdits() {
+		LineStorage[] storages = {new LineStorage(), new PackedLineStorage(), new DictionaryLineStorage()};
+		String[] words = {"und", "Zz", "a", "der", "Indianer", "m\u00fcde", "x"};
+		java.util.Random random = new java.util.Random(7);
+		for (int step = 0; step < 5000; ++step) {
+			LineStorage reference = storages[0];
+			int lines = reference.getLineCount();
+			int operation = random.nextInt(lines == 0 ? 3 : 16);
+			int line = lines == 0 ? 0 : random.nextInt(lines);
+			int count = lines == 0 ? 0 : reference.getWordCount(line);
+			int word = count == 0 ? -1 : random.nextInt(count);
+			int chars = word < 0 ? 0 : reference.getCharCount(word, line);
+			int position = chars == 0 ? -1 : random.nextInt(chars);
+			String text = words[random.nextInt(words.length)];
+			String[] line_words = {text, words[random.nextInt(words.length)]};
+			char c = text.charAt(0);
+			for (LineStorage storage : storages) {
+				switch (operation) {
+				case 0:
+					storage.addLine(line_words);
+					break;
+				case 1:
+					storage.addLine(new char[][] {text.toCharArray()});
+					break;
+				case 2:
+					storage.addEmptyLine();
+					break;
+				case 3:
+					storage.addWord(text, line);
+					break;
+				case 4:
+					storage.addWord(text.toCharArray(), line);
+					break;
+				case 5:
+					storage.addWord(("<" + text + ">").toCharArray(), 1, text.length(), line);
+					break;
+				case 6:
+					storage.addEmptyWord(line);
+					break;
+				case 7:
+					storage.setLine(line_words, line);
+					break;
+				case 8:
+					storage.setLine(new char[][] {text.toCharArray(), {}}, line);
+					break;
+				case 9:
+					storage.deleteLine(line);
+					break;
+				case 10:
+					if (word >= 0) {
+						storage.setWord(text, word, line);
+					}
+					break;
+				case 11:
+					if (word >= 0) {
+						storage.setWord(text.toCharArray(), word, line);
+					}
+					break;
+				case 12:
+					if (word >= 0) {
+						storage.deleteWord(word, line);
+					}
+					break;
+				case 13:
+					if (word >= 0) {
+						storage.addChar(c, word, line);
+					}
+					break;
+				case 14:
+					if (position >= 0) {
+						storage.setChar(c, position, word, line);
+					}
+					break;
+				default:
+					if (position >= 0) {
+						storage.deleteChar(position, word, line);
+					}
+					break;
+				}
+			}
+
+			for (int i = 1; i < storages.length; ++i) {
+				String name = "step " + step + ", " + storages[i].getClass().getName();
+				assertEquals(name, reference.getLineCount(), storages[i].getLineCount());
+				if (reference.getLineCount() > 0) {
+					int checked = Math.min(line, reference.getLineCount() - 1);
+					assertEquals(name, reference.getLineAsString(checked), storages[i].getLineAsString(checked));
+					assertTrue(name, Arrays.equals(reference.getLine(checked), storages[i].getLine(checked)));
+				}
+			}
+		}
+		for (int i = 1; i < storages.length; ++i) {
+			for (int line = 0; line < storages[0].getLineCount(); ++line) {
+				assertTrue(Arrays.equals(storages[0].getLine(line), storages[i].getLine(line)));
+				for (int word = 0; word < storages[0].getWordCount(line); ++word) {
+					assertEquals(storages[0].getWord(word, line), storages[i].getWord(word, line));
+					for (int position = 0; position < storages[0].getCharCount(word, line); ++position) {
+						assertEquals(storages[0].getChar(position, word, line), storages[i].getChar(position, word, line));
+					}
+				}
+			}
+		}
+	}
+
+	@org.junit.Test
+	public void testIncrementalIndexCompaction() throws IOException {
+		LineStorage first = new LineStorage();
+		LineStorage second = new LineStorage();
+		new Input().parse("Test_Case.txt", first);
+		new Input().parse("Test_Case2.txt", second);
+		String[] vocabulary = {"und", "Zz", "aa", "der", "Indianer", "m\u00fcde"};
+
+		LineStorage lines = new DictionaryLineStorage();
+		java.util.TreeMap<Integer, String[]> live = new java.util.TreeMap<>();
+		java.util.BitSet retired = new java.util.BitSet();
+		for (int i = 0; i < first.getLineCount(); ++i) {
+			lines.addLine(first.getLine(i));
+			live.put(i, first.getLine(i));
+		}
+		IncrementalIndex index = new IncrementalIndex(lines, DictionaryLineStorage::new);
+		java.util.Random random = new java.util.Random(42);
+		for (int step = 1; step <= 3000; ++step) {
+			Integer[] ids = live.keySet().toArray(new Integer[0]);
+			int line = ids[random.nextInt(ids.length)];
+			String[] words = live.get(line);
+			switch (random.nextInt(5)) {
+			case 0:
+				String[] added = second.getLine(random.nextInt(second.getLineCount()));
+				live.put(index.addLine(added), added);
+				break;
+			case 1:
+				if (live.size() > 10) {
+					index.deleteLine(line);
+					live.remove(line);
+				retired.set(line);
+				}
+				break;
+			case 2:
+				int word = random.nextInt(words.length);
+				String[] changed = Arrays.copyOf(words, words.length);
+				changed[word] = vocabulary[random.nextInt(vocabulary.length)];
+				live.remove(line);
+				retired.set(line);
+				live.put(index.setWord(line, word, changed[word]), changed);
+				break;
+			case 3:
+				if (words.length > 1) {
+					List<String> shorter = new java.util.ArrayList<>(Arrays.asList(words));
+					int deleted = random.nextInt(words.length);
+					shorter.remove(deleted);
+					live.remove(line);
+				retired.set(line);
+					live.put(index.deleteWord(line, deleted), shorter.toArray(new String[0]));
+				}
+				break;
+			default:
+				String[] replaced = second.getLine(random.nextInt(second.getLineCount()));
+				live.remove(line);
+				retired.set(line);
+				live.put(index.setLine(line, replaced), replaced);
+				break;
+			}
+			if (step == 1500) {
+				index.compact();
+			}
+			if (step % 500 != 0) {
+				continue;
+			}
+
+			// ids survive the compactions, retired ids stay retired
+			for (java.util.Map.Entry<Integer, String[]> entry : live.entrySet()) {
+				assertTrue(Arrays.equals(entry.getValue(), index.getLine(entry.getKey())));
+			}
+			for (int id = retired.nextSetBit(0); id >= 0; id = retired.nextSetBit(id + 1)) {
+				assertTrue(!index.isLive(id));
+			}
+
+			// compare with an index built from the live lines
+			LineStorage rebuilt = new LineStorage();
+			for (String[] live_words : live.values()) {
+				rebuilt.addLine(live_words);
+			}
+			KWICIndex expected = new KWICIndex(rebuilt);
+			assertEquals("step " + step, expected.getLineCount(), index.getShiftCount());
+			bytes.reset();
+			new Output().print(expected);
+			String listing = bytes.toString();
+			bytes.reset();
+			index.print(new Output());
+			assertEquals("step " + step, listing, bytes.toString());
+			for (String keyword : vocabulary) {
+				bytes.reset();
+				Output output = new Output();
+				PrimitiveIterator.OfInt matches = expected.findKeyword(keyword);
+				while (matches.hasNext()) {
+					output.print(expected.getLineAsString(matches.nextInt()));
+				}
+				output.flush();
+				String found = bytes.toString();
+				bytes.reset();
+				index.query(keyword, new Output());
+				assertEquals("step " + step + ", " + keyword, found, bytes.toString());
+			}
+		}
+	}
+
+	@org.junit.Test
+	public void testMetrics() throws Exception {
+		Metrics[] last = new Metrics[1];
+		kwic.addMetricsListener(metrics -> last[0] = metrics);
+		Metrics.Publisher publisher = new Metrics.Publisher();
+		kwic.addMetricsListener(publisher);
+		assertListing("metrics", "Test_Case.txt", "Test_Result.txt");
+
+		Metrics metrics = last[0];
+		assertEquals(4, metrics.getStageCount());
+		assertEquals(Metrics.PARSE, metrics.getStage(0));
+		assertEquals(Metrics.OUTPUT, metrics.getStage(3));
+		assertEquals(916, metrics.getShiftCount());
+		assertEquals(916, metrics.getWordCount());
+		assertTrue(metrics.getComparisonCount() > 916);
+		assertTrue(metrics.getNanos(Metrics.SORT) >= 0);
+		assertTrue(metrics.toJson().contains("\"shifts\":916"));
+
+		ObjectName name = new ObjectName(Metrics.Publisher.NAME);
+		assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "ExecutionCount"));
+		assertEquals(916L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "LastShiftCount"));
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+	}
+
+	@org.junit.Test
+	public void testPage() throws IOException {
+		String[] expected = golden("Test_Result.txt").split(lineBreak);
+		int[][] pages = {{0, 50}, {10, 20}, {500, 400}, {900, 100}, {1000, 10}, {0, 0}};
+
+		// in memory, in one batch, in many batches and pipelined
+		long[] budgets = {0, 1L << 30, 4096, 0};
+		for (int mode = 0; mode < budgets.length; ++mode) {
+			kwic.setMemoryBudget(budgets[mode]);
+			kwic.setPipelined(mode == 3);
+			for (int[] page : pages) {
+				bytes.reset();
+				kwic.setPage(page[0], page[1]);
+				kwic.execute("Test_Case.txt");
+				StringBuilder lines = new StringBuilder();
+				for (int i = page[0]; i < Math.min(expected.length, page[0] + page[1]); ++i) {
+					lines.append(expected[i]).append(lineBreak);
+				}
+				assertEquals("mode " + mode + ", page " + page[0], lines.toString(), bytes.toString());
+			}
+		}
+	}
+
+	@org.junit.Test
+	public void testStopWords() throws IOException {
+		StringBuilder expected = new StringBuilder();
+		for (String line : Files.readAllLines(Paths.get("Test_Result.txt"))) {
+			String first = line.split(" ")[0];
+			if (!first.equals("und") && !first.equals("die") && !first.equals("der")) {
+				expected.append(line).append(lineBreak);
+			}
+		}
+
+		File file = File.createTempFile("kwic", ".stop");
+		try {
+			Files.write(file.toPath(), Arrays.asList("# German", "und die", "der", "\u00fcber"),
+					StandardCharsets.UTF_8);
+			StopWords stop_words = new StopWords();
+			stop_words.load(file.getPath());
+			assertEquals(4, stop_words.getWordCount());
+			assertTrue(stop_words.contains("\u00fcber"));
+			kwic.setStopWords(stop_words);
+		} finally {
+			file.delete();
+		}
+
+		kwic.execute("Test_Case.txt");
+		assertEquals("dictionary", expected.toString(), bytes.toString());
+
+		bytes.reset();
+		kwic.setLineStorage(LineStorage::new);
+		kwic.setParallelism(4);
+		kwic.execute("Test_Case.txt");
+		assertEquals("list", expected.toString(), bytes.toString());
+
+		File index = File.createTempFile("kwic", ".kwx");
+		index.delete();
+		try {
+			kwic.setIndexFile(index.getPath());
+			for (String mode : new String[] {"index, built", "index, read"}) {
+				bytes.reset();
+				kwic.execute("Test_Case.txt");
+				assertEquals(mode, expected.toString(), bytes.toString());
+			}
+			bytes.reset();
+			kwic.query("Test_Case.txt", "und");
+			assertEquals("query", "", bytes.toString());
+
+			// an index built with other stop words is not used
+			kwic.setStopWords(null);
+			assertListing("index, no stop words", "Test_Case.txt", "Test_Result.txt");
+		} finally {
+			index.delete();
+		}
+	}
+
+	@org.junit.Test
+	public void testBatch() throws IOException {
+		List<String> files = Arrays.asList("Test_Case.txt", "Test_Case2.txt", "Test_Case.txt");
+		File all = File.createTempFile("kwic", ".txt");
+		File directory = Files.createTempDirectory("kwic").toFile();
+		try {
+			for (String file : files) {
+				Files.write(all.toPath(), Files.readAllBytes(Paths.get(file)), StandardOpenOption.APPEND);
+				Files.write(all.toPath(), lineBreak.getBytes(), StandardOpenOption.APPEND);
+			}
+			kwic.execute(all.getPath());
+			String expected = bytes.toString();
+
+			bytes.reset();
+			kwic.executeAll(files, 2, null);
+			assertEquals("merged", expected, bytes.toString());
+
+			kwic.executeAll(files.subList(0, 2), 2, directory.getPath());
+			assertEquals(golden("Test_Result.txt"),
+					new String(Files.readAllBytes(new File(directory, "Test_Case.txt.kwic").toPath())));
+			assertEquals(golden("Test_Result2.txt"),
+					new String(Files.readAllBytes(new File(directory, "Test_Case2.txt.kwic").toPath())));
+		} finally {
+			all.delete();
+			for (File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+
+	@org.junit.Test
+	public void testBatchDirectories() throws IOException {
+		File input = Files.createTempDirectory("kwic").toFile();
+		File directory = Files.createTempDirectory("kwic").toFile();
+		try {
+			new File(input, "d1").mkdir();
+			new File(input, "d2").mkdir();
+			Files.copy(Paths.get("Test_Case.txt"), new File(input, "d1/doc.txt").toPath());
+			Files.copy(Paths.get("Test_Case2.txt"), new File(input, "d2/doc.txt").toPath());
+			List<String> files = Arrays.asList(new File(input, "d1/doc.txt").getPath(),
+					new File(input, "d2/doc.txt").getPath());
+			kwic.executeAll(files, 2, directory.getPath());
+			assertEquals(golden("Test_Result.txt"),
+					new String(Files.readAllBytes(new File(directory, "d1/doc.txt.kwic").toPath())));
+			assertEquals(golden("Test_Result2.txt"),
+					new String(Files.readAllBytes(new File(directory, "d2/doc.txt.kwic").toPath())));
+
+			try {
+				kwic.executeAll(Arrays.asList(files.get(0), files.get(0)), 2, directory.getPath());
+				org.junit.Assert.fail("file named twice");
+			} catch (IllegalArgumentException exc) {
+				// expected
+			}
+
+			// more files than the merge reads at once
+			File all = new File(input, "all.txt");
+			List<String> many = new java.util.ArrayList<>();
+			for (int i = 0; i < 70; ++i) {
+				String file = (i % 3 == 0) ? "Test_Case2.txt" : "Test_Case.txt";
+				many.add(file);
+				Files.write(all.toPath(), Files.readAllBytes(Paths.get(file)), StandardOpenOption.CREATE,
+						StandardOpenOption.APPEND);
+				Files.write(all.toPath(), lineBreak.getBytes(), StandardOpenOption.APPEND);
+			}
+			kwic.execute(all.getPath());
+			String expected = bytes.toString();
+			bytes.reset();
+			kwic.executeAll(many, 4, null);
+			assertEquals(expected, bytes.toString());
+		} finally {
+			for (File root : new File[] {input, directory}) {
+				Files.walk(root.toPath()).sorted(java.util.Comparator.reverseOrder()).map(Path::toFile)
+						.forEach(File::delete);
+			}
+		}
+	}
+
+	@org.junit.Test
+	public void testMergedListing() throws IOException {
+		String[] files = {"Test_Case.txt", "Test_Case2.txt"};
+		File all = File.createTempFile("kwic", ".txt");
+		File merged = File.createTempFile("kwic", ".kwm");
+		try {
+			for (String file : files) {
+				Files.write(all.toPath(), Files.readAllBytes(Paths.get(file)), StandardOpenOption.APPEND);
+				Files.write(all.toPath(), lineBreak.getBytes(), StandardOpenOption.APPEND);
+			}
+			Files.write(all.toPath(), Files.readAllBytes(Paths.get("Test_Case.txt")), StandardOpenOption.APPEND);
+			kwic.execute(all.getPath());
+			String expected = bytes.toString();
+
+			MergedListing listing = new MergedListing();
+			for (String file : files) {
+				LineStorage lines = new LineStorage();
+				new Input().parse(file, lines);
+				CircularShifter shifter = new CircularShifter();
+				shifter.setup(lines);
+				Alphabetizer alphabetizer = new Alphabetizer();
+				alphabetizer.alpha(shifter);
+				listing.add(alphabetizer);
+			}
+			listing.save(merged.getPath());
+
+			listing = new MergedListing();
+			assertEquals(0, listing.addMerged(merged.getPath()));
+			assertEquals(2, listing.add("Test_Result.txt"));
+			int[] counts = new int[listing.getDocumentCount()];
+			listing.merge((document, line) -> counts[document]++);
+			assertEquals(916, counts[0]);
+			assertEquals(916, counts[2]);
+
+			bytes.reset();
+			listing.print(new Output());
+			assertEquals(expected, bytes.toString());
+		} finally {
+			all.delete();
+			merged.delete();
+		}
+	}
+
+	@org.junit.Test
+	public void testFrontCoding() throws IOException {
+		String expected = golden("Test_Result.txt");
+		String[] lines = expected.split(lineBreak);
+		File coded = File.createTempFile("kwic", ".kwf");
+		try {
+			try (OutputStream stream = new FileOutputStream(coded)) {
+				FrontCodedListing.Encoder encoder = new FrontCodedListing.Encoder(stream, 4);
+				kwic.setOutput(new Output(encoder));
+				kwic.execute("Test_Case.txt");
+				encoder.finish();
+			}
+			assertTrue(FrontCodedListing.isFrontCoded(coded.getPath()));
+			assertTrue(coded.length() < expected.length());
+
+			FrontCodedListing.print(coded.getPath(), new Output());
+			assertEquals(expected, bytes.toString());
+
+			try (FrontCodedListing listing = new FrontCodedListing(coded.getPath())) {
+				assertEquals(lines.length, listing.getLineCount());
+				for (int line : new int[] {lines.length - 1, 0, 5, 4, 3, 700, 701}) {
+					assertEquals(lines[line], listing.getLine(line));
+				}
+			}
+
+			MergedListing merged = new MergedListing();
+			merged.add(coded.getPath());
+			bytes.reset();
+			merged.print(new Output());
+			assertEquals(expected, bytes.toString());
+		} finally {
+			coded.delete();
+		}
+	}
+
+	@org.junit.Test
+	public void testCollation() throws IOException {
+		File file = File.createTempFile("kwic", ".txt");
+		try {
+			Files.write(file.toPath(), Arrays.asList("Indianer bar", "\u00c4pfel apfel", "Zebra \u00dcber"),
+					StandardCharsets.UTF_8);
+			kwic.setSortStrategy(new Alphabetizer.CollationSort(Locale.GERMANY));
+			kwic.execute(file.getPath());
+			assertEquals(String.join(lineBreak, "apfel \u00c4pfel", "\u00c4pfel apfel", "bar Indianer",
+					"Indianer bar", "\u00dcber Zebra", "Zebra \u00dcber") + lineBreak,
+					new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+
+
+			// words that collate equally under an option are put in input order
+			Files.write(file.toPath(), Arrays.asList("\u00c4pfel", "apfel", "\u00e4pfel", "Apfel"),
+					StandardCharsets.UTF_8);
+			String[][] orders = {
+				{"apfel", "Apfel", "\u00e4pfel", "\u00c4pfel"},  // nothing ignored
+				{"apfel", "Apfel", "\u00c4pfel", "\u00e4pfel"},  // case ignored
+				{"apfel", "\u00e4pfel", "\u00c4pfel", "Apfel"},  // accents ignored
+				{"\u00c4pfel", "apfel", "\u00e4pfel", "Apfel"}}; // case and accents ignored
+			for (int option = 0; option < orders.length; ++option) {
+				for (boolean list : new boolean[] {false, true}) {
+					bytes.reset();
+					kwic = new KWIC();
+					if (list) {
+						kwic.setLineStorage(LineStorage::new);
+					}
+					kwic.setSortStrategy(new Alphabetizer.CollationSort(Locale.GERMANY, option % 2 == 1, option >= 2));
+					kwic.execute(file.getPath());
+					assertEquals("option " + option + ", list " + list, String.join(lineBreak, orders[option]) + lineBreak,
+							new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+				}
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@org.junit.Test
+	public void testCompressedInput() throws IOException {
+		byte[] input = Files.readAllBytes(Paths.get("Test_Case.txt"));
+		File gzip = File.createTempFile("kwic", ".txt.gz");
+		File zlib = File.createTempFile("kwic", ".txt.zz");
+		try {
+			try (OutputStream stream = new FileOutputStream(gzip)) {
+				for (int offset = 0; offset < input.length; offset += 300) {
+					java.util.zip.GZIPOutputStream member = new java.util.zip.GZIPOutputStream(stream);
+					member.write(input, offset, Math.min(300, input.length - offset));
+					member.finish();
+				}
+			}
+			try (OutputStream stream = new java.util.zip.DeflaterOutputStream(new FileOutputStream(zlib))) {
+				stream.write(input);
+			}
+			assertTrue(CompressedInput.isCompressed(gzip.getPath()));
+			assertTrue(CompressedInput.isCompressed(zlib.getPath()));
+			assertTrue(!CompressedInput.isCompressed("Test_Case.txt"));
+
+			for (int threads : new int[] {0, 1, 4}) {
+				ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+				try (InputStream in = CompressedInput.open(gzip.getPath(), threads)) {
+					byte[] buffer = new byte[1000];
+					for (int n; (n = in.read(buffer)) > 0; ) {
+						decoded.write(buffer, 0, n);
+					}
+				}
+				assertTrue(Arrays.equals(input, decoded.toByteArray()));
+			}
+
+			for (File file : new File[] {gzip, zlib}) {
+				for (boolean mapped : new boolean[] {true, false}) {
+					kwic = new KWIC();
+					kwic.setMappedInput(mapped);
+					assertListing(file.getName() + ", mapped " + mapped, file.getPath(), "Test_Result.txt");
+				}
+			}
+		} finally {
+			gzip.delete();
+			zlib.delete();
+		}
+	}
+
+	@org.junit.Test
+	public void testAbandonedReadAhead() throws IOException {
+		// the stored first member holds a member that inflates to megabytes, which
+		// a worker still decodes ahead when the first member ends
+		ByteArrayOutputStream embedded = new ByteArrayOutputStream();
+		try (OutputStream member = new java.util.zip.GZIPOutputStream(embedded)) {
+			member.write(new byte[7 * 1024 * 1024]);
+		}
+		ByteArrayOutputStream stored = new ByteArrayOutputStream();
+		try (OutputStream member = storedGzip(stored)) {
+			member.write(embedded.toByteArray());
+		}
+		byte[] nested = stored.toByteArray();
+		byte[] input = Files.readAllBytes(Paths.get("Test_Case.txt"));
+		File gzip = File.createTempFile("kwic", ".txt.gz");
+		try {
+			try (OutputStream stream = new FileOutputStream(gzip)) {
+				stream.write(nested);
+				java.util.zip.GZIPOutputStream member = new java.util.zip.GZIPOutputStream(stream);
+				member.write(input);
+				member.finish();
+			}
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			expected.write(embedded.toByteArray());
+			expected.write(input);
+
+			for (int round = 0; round < 5; ++round) {
+				for (int threads : new int[] {1, 4}) {
+					ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+					try (InputStream in = CompressedInput.open(gzip.getPath(), threads)) {
+						byte[] buffer = new byte[4096];
+						for (int n; (n = in.read(buffer)) > 0; ) {
+							decoded.write(buffer, 0, n);
+						}
+					}
+					assertTrue(Arrays.equals(expected.toByteArray(), decoded.toByteArray()));
+				}
+			}
+		} finally {
+			gzip.delete();
+		}
+	}
+
+	private static java.util.zip.GZIPOutputStream storedGzip(OutputStream stream) throws IOException {
+		return new java.util.zip.GZIPOutputStream(stream) {
+			{
+				def.setLevel(java.util.zip.Deflater.NO_COMPRESSION);
+			}
+		};
+	}
+
+	@org.junit.Test
+	public void testZlibHeaderText() throws IOException {
+		// "hb", "x " and "80" are valid zlib headers, but plain text
+		String[][] cases = {
+			{"hbar foo", "foo hbar", "hbar foo"},
+			{"x ar foo", "ar foo x", "foo x ar", "x ar foo"},
+			{"80ar foo", "80ar foo", "foo 80ar"}};
+		for (String[] lines : cases) {
+			StringBuilder expected = new StringBuilder();
+			for (int i = 1; i < lines.length; ++i) {
+				expected.append(lines[i]).append(lineBreak);
+			}
+			for (String suffix : new String[] {".txt", ".zz"}) {
+				File file = File.createTempFile("kwic", suffix);
+				try {
+					Files.write(file.toPath(), (lines[0] + "\n").getBytes(StandardCharsets.UTF_8));
+					assertTrue(!CompressedInput.isCompressed(file.getPath()));
+					for (boolean mapped : new boolean[] {true, false}) {
+						bytes.reset();
+						kwic = new KWIC();
+						kwic.setMappedInput(mapped);
+						kwic.execute(file.getPath());
+						assertEquals(expected.toString(), bytes.toString());
+					}
+				} finally {
+					file.delete();
+				}
+			}
+		}
+
+		File truncated = File.createTempFile("kwic", ".zz");
+		try {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			try (OutputStream stream = new java.util.zip.DeflaterOutputStream(compressed)) {
+				stream.write(Files.readAllBytes(Paths.get("Test_Case.txt")));
+			}
+			Files.write(truncated.toPath(), Arrays.copyOf(compressed.toByteArray(), compressed.size() / 2));
+			assertTrue(CompressedInput.isCompressed(truncated.getPath()));
+			try (InputStream in = CompressedInput.open(truncated.getPath())) {
+				byte[] buffer = new byte[1000];
+				while (in.read(buffer) > 0) {
+					// read until the error
+				}
+				org.junit.Assert.fail("truncated zlib stream read without error");
+			} catch (EOFException exc) {
+				// expected
+			}
+		} finally {
+			truncated.delete();
+		}
+	}
+
+	private static String golden(String file) throws IOException {
+		return new String(Files.readAllBytes(Paths.get(file)));
+	}
+
+	private void assertListing(String message, String input, String golden) throws IOException {
+		bytes.reset();
+		kwic.execute(input);
+		assertEquals(message, golden(golden), bytes.toString());
+	}
+}